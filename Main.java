@@ -1,51 +1,553 @@
 import syntaxtree.*;
 import visitor.*;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import components.helpers.CompilationCache;
+import components.helpers.CompilationCache.ClassSource;
+import components.helpers.Diagnostics;
+import components.helpers.ErrorCode;
+import components.helpers.IRWriter;
+import components.helpers.LatencyStats;
+import components.helpers.Options;
+import components.helpers.SemanticException;
+import components.helpers.SourceReader;
 import components.helpers.SymbolTable;
+import components.ir.Function;
+import components.ir.IRPrinter;
+import components.ir.Module;
+import components.passes.BoundsCheckElimination;
+import components.passes.CallSite;
+import components.passes.ClassHierarchy;
+import components.passes.ConstantFolding;
+import components.passes.DeadCodeElimination;
+import components.passes.Devirtualization;
+import components.passes.FieldForwarding;
+import components.passes.FieldLayout;
+import components.passes.LoopInvariantCodeMotion;
+import components.passes.Mem2Reg;
+import components.prototypes.Class;
+import components.prototypes.Method;
 import components.visitors.SymbolTableVisitor;
 import components.visitors.TypeCheckVisitor;
 import components.visitors.LLVMVisitor;
 
 public class Main {
     public static void main (String [] args) throws Exception {
-        FileInputStream fis = null;
-        try{
-            for (String file : args) {
-                // Parsing
-                System.out.println("----- " + file + " -----");
-                fis = new FileInputStream(file);
-                MiniJavaParser parser = new MiniJavaParser(fis);
-                Goal root = parser.Goal();
-                System.out.println("Program parsed successfully.");
-                // Semantic checking
-                SymbolTable symbolTable = new SymbolTable();
-                SymbolTableVisitor stVisitor = new SymbolTableVisitor(symbolTable);
-                root.accept(stVisitor,null);
-                TypeCheckVisitor tcVisitor = new TypeCheckVisitor(symbolTable);
-                root.accept(tcVisitor,null);
-                System.out.println("Program semantically checked successfully.");
-                symbolTable.printOffsetTables();
-                // IR Generation
-                LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable,file.replace(".java", ".ll"));
-                root.accept(llvmVisitor,null);
-                System.out.println("LLVM IR Generated");
-                if(fis != null) fis.close();
-            }
-        }
-        catch(ParseException ex){
-            System.out.println(ex.getMessage());
-        }
-        catch(FileNotFoundException ex){
+        Options options;
+        try {
+            options = new Options(args);
+        } catch (Exception ex) {
+            // Invalid command line
             System.err.println(ex.getMessage());
+            System.err.println("Usage: java Main [options] [file1] [file2] ... [fileN] (the options are described in README.md)");
+            System.exit(1);
+            return;
         }
-        finally{
+        if (options.server()) {
+            if (options.getSocketPath() != null) {
+                serveSocket(options.getSocketPath());
+            } else {
+                serve(new BufferedReader(new InputStreamReader(System.in)), System.out, new LatencyStats());
+            }
+            return;
+        }
+        if (options.getJobs() > 0) {
+            compileParallel(options);
+            return;
+        }
+        // A file with errors does not stop the compilation of the next files
+        int failed = 0;
+        for (String file : options.getFiles()) {
             try{
-                if(fis != null) fis.close();
+                if (!compile(file, options, System.out)) {
+                    failed++;
+                }
+            }
+            catch(ParseException | SemanticException | TokenMgrError ex){
+                System.out.println(ex.getMessage());
+                failed++;
             }
             catch(IOException ex){
                 System.err.println(ex.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Runs the whole pipeline for a single file. Every object used here is created per call (the parser is
+    // generated with STATIC = false and the visitors only keep state in their own instances), so different
+    // files can be compiled concurrently. Stops at the first error, or with -all-errors prints every error of the file
+    // and returns false.
+    private static boolean compile(String file, Options options, PrintStream out) throws Exception {
+        out.println("----- " + file + " -----");
+        Diagnostics diagnostics = options.allErrors() ? new Diagnostics(file) : null;
+        // Inlining copies the code of other classes, which the cache does not track
+        if (options.getCacheDir() != null && !options.inline()) {
+            String source = SourceReader.read(file).toString();
+            ArrayList<ClassSource> classes = CompilationCache.split(source);
+            if (classes != null) {
+                return compileIncremental(file, classes, options, diagnostics, out);
+            }
+        }
+        // Parsing. The file is read and decoded at once and the parser reads the characters from memory
+        MiniJavaParser parser = new MiniJavaParser(lexer(SourceReader.read(file), 1, 1, options));
+        Goal root;
+        try {
+            root = parser.Goal();
+        } catch (ParseException | TokenMgrError ex) {
+            if (diagnostics == null) {
+                throw ex;
+            }
+            reportSyntaxError(diagnostics, ex);
+            diagnostics.print(out);
+            return false;
+        }
+        out.println("Program parsed successfully.");
+        // Semantic checking
+        SymbolTable symbolTable = new SymbolTable();
+        SymbolTableVisitor stVisitor = new SymbolTableVisitor(symbolTable, diagnostics);
+        root.accept(stVisitor,null);
+        TypeCheckVisitor tcVisitor = new TypeCheckVisitor(symbolTable, diagnostics);
+        root.accept(tcVisitor,null);
+        if (diagnostics != null && diagnostics.hasErrors()) {
+            diagnostics.print(out);
+            return false;
+        }
+        out.println("Program semantically checked successfully.");
+        layoutFields(symbolTable, options, out);
+        symbolTable.printOffsetTables(out);
+        // IR Generation
+        long emitStart = System.nanoTime();
+        LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable, options.packBooleans(), options.arena(), options.gc(), options.fold());
+        root.accept(llvmVisitor,null);
+        Module module = llvmVisitor.getModule();
+        optimize(module, symbolTable, llvmVisitor.getCallSites(), true, options, out);
+        IRWriter irWriter = new IRWriter(file.replace(".java", ".ll"));
+        new IRPrinter(irWriter).print(module);
+        irWriter.close();
+        long emitTime = System.nanoTime() - emitStart;
+        out.println("LLVM IR Generated");
+        if (options.emitStats()) {
+            long bytes = irWriter.getBytesWritten();
+            out.printf("IR: %d bytes in %.2f ms (%.2f MB/s)%n", bytes, emitTime / 1e6, bytes / (emitTime / 1e9) / (1 << 20));
+        }
+        return true;
+    }
+
+    // Reports a parse or lexical error at the position given in its message
+    private static void reportSyntaxError(Diagnostics diagnostics, Throwable ex) {
+        String[] lines = ex.getMessage().split("\n");
+        Matcher position = Pattern.compile(" ?at line (\\d+), column (\\d+)\\.").matcher(lines[0]);
+        int line = 0;
+        int column = 0;
+        String message = lines[0];
+        if (position.find()) {
+            line = Integer.parseInt(position.group(1));
+            column = Integer.parseInt(position.group(2));
+            message = message.substring(0, position.start()) + message.substring(position.end());
+        }
+        // The tokens the parser expected are listed on the next lines, one per line
+        ArrayList<String> expected = new ArrayList<String>();
+        for (int i = 1; i < lines.length; i++) {
+            String token = lines[i].trim();
+            if (!token.isEmpty() && !token.startsWith("Was expecting")) {
+                expected.add(token.endsWith(" ...") ? token.substring(0, token.length() - 4) : token);
+            }
+        }
+        if (!expected.isEmpty()) {
+            message += ", was expecting " + String.join(" or ", expected);
+        }
+        diagnostics.report(line, column, ErrorCode.SYNTAX, message.replaceAll("\\s+", " ").trim());
+    }
+
+    // Compiles a file with the classes of its previous compilation kept in the cache directory. Only the classes whose
+    // text changed are parsed, and only those and the classes that depend on a class whose declarations changed
+    // (its fields, its method signatures or those of its parents) are type checked and generated again
+    private static boolean compileIncremental(String file, ArrayList<ClassSource> classes, Options options, Diagnostics diagnostics, PrintStream out) throws Exception {
+        CompilationCache cache = new CompilationCache(options.getCacheDir(), file);
+        // Parsing. When errors are collected, a class with a syntax error does not stop the parsing of the next classes
+        Node[] roots = new Node[classes.size()];
+        for (int i = 0; i < classes.size(); i++) {
+            if (!cache.hasDeclarations(classes.get(i), i == 0)) {
+                try {
+                    roots[i] = parseClass(classes.get(i), i == 0, options);
+                } catch (ParseException | TokenMgrError ex) {
+                    if (diagnostics == null) {
+                        throw ex;
+                    }
+                    reportSyntaxError(diagnostics, ex);
+                }
+            }
+        }
+        if (diagnostics != null && diagnostics.hasErrors()) {
+            diagnostics.print(out);
+            return false;
+        }
+        out.println("Program parsed successfully.");
+        // Semantic checking
+        SymbolTable symbolTable = new SymbolTable();
+        SymbolTableVisitor stVisitor = new SymbolTableVisitor(symbolTable, diagnostics);
+        for (int i = 0; i < classes.size(); i++) {
+            if (roots[i] != null) {
+                roots[i].accept(stVisitor,null);
+            } else {
+                cache.replay(classes.get(i), symbolTable);
+            }
+        }
+        symbolTable.freeze();
+        cache.computeInterfaces(symbolTable);
+        String key = "mem2reg=" + options.mem2reg() + " bce=" + options.bce() + " devirt=" + options.devirt() + " pack=" + options.packFields() + " bits=" + options.packBooleans() + " arena=" + options.arena() + " gc=" + options.gc() + " fold=" + options.fold() + " licm=" + options.licm() + " forward=" + options.forward();
+        if (options.devirt()) {
+            key += " " + CompilationCache.hierarchyHash(symbolTable);
+        }
+        TypeCheckVisitor tcVisitor = new TypeCheckVisitor(symbolTable, diagnostics);
+        ArrayList<Set<Class>> dependencies = new ArrayList<Set<Class>>();
+        for (int i = 0; i < classes.size(); i++) {
+            Set<Class> classDependencies = null;
+            if (!cache.isUpToDate(classes.get(i), key)) {
+                if (roots[i] == null) {
+                    roots[i] = parseClass(classes.get(i), i == 0, options);
+                }
+                classDependencies = new HashSet<Class>();
+                classDependencies.add(symbolTable.getClassList().get(i));
+                symbolTable.collectDependencies(classDependencies);
+                roots[i].accept(tcVisitor,null);
+                symbolTable.collectDependencies(null);
+            }
+            dependencies.add(classDependencies);
+        }
+        if (diagnostics != null && diagnostics.hasErrors()) {
+            diagnostics.print(out);
+            return false;
+        }
+        out.println("Program semantically checked successfully.");
+        layoutFields(symbolTable, options, out);
+        symbolTable.printOffsetTables(out);
+        // IR Generation
+        long emitStart = System.nanoTime();
+        LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable, options.packBooleans(), options.arena(), options.gc(), options.fold());
+        Module module = llvmVisitor.getModule();
+        Map<Function,String> bodies = new HashMap<Function,String>();
+        for (int i = 0; i < classes.size(); i++) {
+            if (dependencies.get(i) != null) {
+                roots[i].accept(llvmVisitor,null);
+            } else {
+                for (Map.Entry<String,String> function : cache.reuse(classes.get(i)).entrySet()) {
+                    bodies.put(module.getFunction(function.getKey()), function.getValue());
+                }
+            }
+        }
+        // The code reused from the cache is only text, so the calls it makes are unknown and every method is kept
+        optimize(module, symbolTable, llvmVisitor.getCallSites(), false, options, out);
+        // Keep the code of the classes generated now for the next compilation
+        for (int i = 0; i < classes.size(); i++) {
+            if (dependencies.get(i) == null) {
+                continue;
+            }
+            Class cl = symbolTable.getClassList().get(i);
+            ArrayList<String> names = new ArrayList<String>();
+            if (cl.isMainClass()) {
+                names.add("main");
+            }
+            for (Method method : cl.getMethodsList()) {
+                names.add(cl.getName() + "." + method.getName());
+            }
+            Map<String,String> functions = new LinkedHashMap<String,String>();
+            for (String name : names) {
+                Function function = module.getFunction(name);
+                IRWriter text = new IRWriter();
+                new IRPrinter(text).printFunction(function);
+                functions.put(name, text.toString());
+                bodies.put(function, text.toString());
+            }
+            cache.update(cl, classes.get(i), key, dependencies.get(i), functions);
+        }
+        IRWriter irWriter = new IRWriter(file.replace(".java", ".ll"));
+        new IRPrinter(irWriter).print(module, bodies);
+        irWriter.close();
+        cache.save();
+        long emitTime = System.nanoTime() - emitStart;
+        out.println("LLVM IR Generated");
+        if (options.emitStats()) {
+            long bytes = irWriter.getBytesWritten();
+            out.printf("IR: %d bytes in %.2f ms (%.2f MB/s)%n", bytes, emitTime / 1e6, bytes / (emitTime / 1e9) / (1 << 20));
+            out.println("cache: " + cache.getReusedCount() + "/" + classes.size() + " classes reused");
+        }
+        return true;
+    }
+
+    // Parses the main class or another class declaration of the file
+    private static Node parseClass(ClassSource source, boolean isMainClass, Options options) throws ParseException {
+        MiniJavaParser parser = new MiniJavaParser(lexer(CharBuffer.wrap(source.getText()), source.getLine(), source.getColumn(), options));
+        return isMainClass ? parser.MainClass() : parser.TypeDeclaration();
+    }
+
+    // Lexer of the text, whose first character is at the given line and column: MiniJavaLexer, or the token manager
+    // generated by JavaCC with -generated-lexer
+    private static MiniJavaParserTokenManager lexer(CharBuffer text, int line, int column, Options options) {
+        if (options.generatedLexer()) {
+            return new MiniJavaParserTokenManager(SourceCharStream.open(text, line, column));
+        }
+        return MiniJavaLexer.open(text, line, column);
+    }
+
+    // Reorders the fields of the classes when asked to, before their offsets are printed and used by the generated code
+    private static void layoutFields(SymbolTable symbolTable, Options options, PrintStream out) {
+        if (options.packFields()) {
+            FieldLayout layout = new FieldLayout();
+            layout.run(symbolTable);
+            if (options.layoutReport()) {
+                layout.printReport(out);
+            }
+        }
+    }
+
+    // Runs the enabled optimization passes on the generated module. Dead code elimination needs the code of the whole program
+    private static void optimize(Module module, SymbolTable symbolTable, ArrayList<CallSite> callSites, boolean wholeProgram, Options options, PrintStream out) {
+        if (options.dce() && wholeProgram) {
+            DeadCodeElimination dce = new DeadCodeElimination(module, symbolTable, callSites);
+            dce.run();
+            if (options.dceReport()) {
+                dce.printReport(out);
+            }
+            if (options.emitStats()) {
+                out.println("dce: " + dce.getInstructionsBefore() + " -> " + dce.getInstructionsAfter() + " instructions");
+            }
+        }
+        if (options.mem2reg()) {
+            int before = module.instructionCount();
+            Mem2Reg mem2reg = new Mem2Reg();
+            mem2reg.run(module);
+            if (options.emitStats()) {
+                out.println("mem2reg: " + mem2reg.getPromotedCount() + " slots promoted, " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+        if (options.devirt()) {
+            int before = module.instructionCount();
+            Devirtualization devirtualization = new Devirtualization(module, new ClassHierarchy(symbolTable), options.inline());
+            devirtualization.run(callSites);
+            if (options.devirtReport()) {
+                devirtualization.printReport(out);
+            }
+            if (options.emitStats()) {
+                out.println("devirt: " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+        if (options.forward()) {
+            int before = module.instructionCount();
+            FieldForwarding forwarding = new FieldForwarding(module, symbolTable);
+            forwarding.run(module);
+            if (options.forwardReport()) {
+                forwarding.printReport(out);
+            }
+            if (options.emitStats()) {
+                out.println("forward: " + forwarding.getRemovedCount() + " field accesses forwarded, " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+        if (options.fold()) {
+            int before = module.instructionCount();
+            ConstantFolding folding = new ConstantFolding();
+            folding.run(module);
+            if (options.emitStats()) {
+                out.println("fold: " + folding.getFoldedCount() + " folded, " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+        if (options.bce()) {
+            int before = module.instructionCount();
+            BoundsCheckElimination bce = new BoundsCheckElimination(module);
+            bce.run(module);
+            if (options.bceReport()) {
+                bce.printReport(out);
+            }
+            if (options.emitStats()) {
+                out.println("bce: " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+        if (options.licm()) {
+            int before = module.instructionCount();
+            LoopInvariantCodeMotion licm = new LoopInvariantCodeMotion(module);
+            licm.run(module);
+            if (options.licmReport()) {
+                licm.printReport(out);
+            }
+            if (options.emitStats()) {
+                out.println("licm: " + before + " -> " + module.instructionCount() + " instructions");
+            }
+        }
+    }
+
+    // Result of compiling one file on a worker thread
+    private static class CompilationResult {
+        private String log;
+        private boolean success;
+        private long cpuTime;
+
+        private CompilationResult(String log,boolean success,long cpuTime) {
+            this.log = log;
+            this.success = success;
+            this.cpuTime = cpuTime;
+        }
+    }
+
+    private static CompilationResult compileCollecting(String file,Options options) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long cpuStart = threadBean.getCurrentThreadCpuTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer);
+        boolean success = true;
+        try {
+            success = compile(file, options, out);
+        } catch (Exception | TokenMgrError | StackOverflowError ex) {
+            // Report the failure in the file's own log and keep compiling the rest
+            out.println(ex instanceof StackOverflowError ? "The program is nested too deeply (stack overflow)" : ex.getMessage());
+            success = false;
+        }
+        out.flush();
+        return new CompilationResult(buffer.toString(), success, threadBean.getCurrentThreadCpuTime() - cpuStart);
+    }
+
+    // Compiles the given files on a pool of workers. Logs are printed in the order the files were given.
+    private static void compileParallel(Options options) throws Exception {
+        List<String> files = options.getFiles();
+        int jobs = options.getJobs();
+        long wallStart = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<CompilationResult>> futures = new ArrayList<Future<CompilationResult>>();
+        for (String file : files) {
+            futures.add(pool.submit(() -> compileCollecting(file, options)));
+        }
+        long cpuTime = 0;
+        int failed = 0;
+        try {
+            for (Future<CompilationResult> future : futures) {
+                CompilationResult result = future.get();
+                System.out.print(result.log);
+                cpuTime += result.cpuTime;
+                if (!result.success) {
+                    failed++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long wallTime = System.nanoTime() - wallStart;
+        System.out.println("----- " + files.size() + " files, " + failed + " failed, " + jobs + " jobs -----");
+        System.out.printf("Wall time: %.2f ms, CPU time: %.2f ms (%.2fx)%n", wallTime / 1e6, cpuTime / 1e6, wallTime > 0 ? (double)cpuTime / wallTime : 0.0);
+        // Same exit status as the sequential compilation
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Compiles the requests read from in until it is closed or a shutdown request arrives. Every request is a line with
+    // the same options and files as the command line and gets back the log of every file ("log" lines), the result of
+    // every file ("ok <file> <ll file> <ms>" or "error <file> <ms>") and an "end <ms>" line with the latency of the
+    // request. A "stats" request returns the latency statistics of the server. Returns whether shutdown was requested
+    private static boolean serve(BufferedReader in, PrintStream out, LatencyStats stats) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals("shutdown")) {
+                out.println("end 0.00");
+                out.flush();
+                return true;
+            }
+            if (line.equals("stats")) {
+                out.println("log " + stats);
+                out.println("end 0.00");
+                out.flush();
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                Options options = new Options(line.split("\\s+"));
+                for (String file : options.getFiles()) {
+                    long fileStart = System.nanoTime();
+                    CompilationResult result = compileCollecting(file, options);
+                    for (String logLine : result.log.split("\n")) {
+                        out.println("log " + logLine);
+                    }
+                    double fileTime = (System.nanoTime() - fileStart) / 1e6;
+                    if (result.success) {
+                        out.printf("ok %s %s %.2f%n", file, file.replace(".java", ".ll"), fileTime);
+                    } else {
+                        out.printf("error %s %.2f%n", file, fileTime);
+                    }
+                }
+            } catch (Exception ex) {
+                // Bad options
+                out.println("log " + ex.getMessage());
+            }
+            double time = (System.nanoTime() - start) / 1e6;
+            stats.record(time);
+            out.printf("end %.2f%n", time);
+            out.flush();
+        }
+        return false;
+    }
+
+    // Serves every client of the unix domain socket on its own thread, with the protocol of serve
+    private static void serveSocket(String path) throws Exception {
+        Path socketPath = Path.of(path);
+        // A socket file left by a server that did not shut down cleanly
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        LatencyStats stats = new LatencyStats();
+        try {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException ex) {
+                    // Closed by a shutdown request
+                    break;
+                }
+                new Thread(() -> {
+                    try (SocketChannel channel = client) {
+                        BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+                        PrintStream out = new PrintStream(Channels.newOutputStream(channel), false, "UTF-8");
+                        if (serve(in, out, stats)) {
+                            server.close();
+                        }
+                    } catch (IOException ex) {
+                        System.err.println(ex.getMessage());
+                    }
+                }).start();
             }
+        } finally {
+            server.close();
+            Files.deleteIfExists(socketPath);
         }
     }
 }
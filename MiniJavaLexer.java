@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import components.helpers.SourceReader;
+
+// Lexer of MiniJava written for its few tokens, in place of the token manager that JavaCC generates from the grammar,
+// which runs a general automaton over a character stream and makes a string for the image of every token. It reads the
+// characters of the source from their array and:
+// - finds the keywords with a perfect hash of their first and last character and their length
+// - interns the names and the integer literals, so a name or a number that appears again does not allocate its image
+// - takes the image of the other tokens from the grammar's literal images
+// - keeps the line and column of the characters it goes through, the way JavaCharStream counts them
+// The comments are skipped without making special tokens, which the tree built by JTB does not keep.
+// At a character that does not start a token the generated token manager goes on from the start of the token, so that
+// the lexical errors are the same. Sources with a backslash, which may start a unicode escape, are lexed by it too
+public class MiniJavaLexer extends MiniJavaParserTokenManager {
+    private static final String PRINT_SUFFIX = ".out.println";
+    private static final int[] SINGLE_KINDS = new int[128]; // Kind of the token of the character, 0 if there is none
+    private static final String[] KEYWORDS = new String[64];
+    private static final int[] KEYWORD_KINDS = new int[64];
+
+    static {
+        for (int kind = 0; kind < jjstrLiteralImages.length; kind++) {
+            String image = jjstrLiteralImages[kind];
+            if (image == null || image.isEmpty()) {
+                continue;
+            }
+            if (image.length() == 1) {
+                SINGLE_KINDS[image.charAt(0)] = kind;
+            } else if (Character.isLetter(image.charAt(0)) && kind != PRINT) {
+                int hash = keywordHash(image.charAt(0), image.charAt(image.length() - 1), image.length());
+                if (KEYWORDS[hash] != null) {
+                    throw new Error("The keywords " + KEYWORDS[hash] + " and " + image + " have the same hash");
+                }
+                KEYWORDS[hash] = image;
+                KEYWORD_KINDS[hash] = kind;
+            }
+        }
+    }
+
+    private SourceCharStream stream;
+    private char[] chars;
+    private int position; // Index of the next character
+    private int end;
+    // Position of the last character, counted like JavaCharStream.UpdateLineColumn does
+    private int line;
+    private int column;
+    private boolean prevCharIsCR;
+    private boolean prevCharIsLF;
+    // Interned names and integer literals: open addressing hash table of their images
+    private String[] names;
+    private int nameCount;
+
+    private MiniJavaLexer(SourceCharStream stream, int startLine, int startColumn) {
+        super(stream);
+        this.stream = stream;
+        this.chars = stream.chars;
+        this.position = stream.begin;
+        this.end = stream.end;
+        this.line = startLine;
+        this.column = startColumn - 1;
+        this.names = new String[1024];
+        this.nameCount = 0;
+    }
+
+    public static MiniJavaParserTokenManager open(String file) throws IOException {
+        return open(SourceReader.read(file), 1, 1);
+    }
+
+    // The first character of the text is at the given line and column
+    public static MiniJavaParserTokenManager open(CharBuffer text, int startLine, int startColumn) {
+        JavaCharStream stream = SourceCharStream.open(text, startLine, startColumn);
+        if (stream instanceof SourceCharStream) {
+            return new MiniJavaLexer((SourceCharStream)stream, startLine, startColumn);
+        }
+        return new MiniJavaParserTokenManager(stream);
+    }
+
+    private static int keywordHash(char first, char last, int length) {
+        return (first + 3 * last + length) & 63;
+    }
+
+    public Token getNextToken() {
+        char[] chars = this.chars;
+        for (;;) {
+            if (this.position == this.end) {
+                // The end of file is at the last character
+                return this.token(EOF, jjstrLiteralImages[EOF], this.line, this.column, this.column);
+            }
+            char c = chars[this.position];
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                this.advance(c);
+                this.position++;
+            } else if (c == '/' && this.position + 1 < this.end && chars[this.position + 1] == '/') {
+                // A single line comment ends with its line, which it must end
+                int i = this.position + 2;
+                while (i < this.end && chars[i] != '\n' && chars[i] != '\r') {
+                    i++;
+                }
+                if (i == this.end) {
+                    return this.error();
+                }
+                if (chars[i] == '\r' && i + 1 < this.end && chars[i + 1] == '\n') {
+                    i++;
+                }
+                this.skip(i + 1);
+            } else if (c == '/' && this.position + 1 < this.end && chars[this.position + 1] == '*') {
+                // The grammar takes the longest match, so a comment that starts with "/**" is a formal comment, whose
+                // "*/" starts after the second '*': "/**/" goes on to the next "*/", or is a comment by itself if there
+                // is none
+                int i = this.position + 2;
+                boolean formal = i < this.end && chars[i] == '*';
+                if (formal) {
+                    i++;
+                }
+                while (i + 1 < this.end && (chars[i] != '*' || chars[i + 1] != '/')) {
+                    i++;
+                }
+                if (i + 1 < this.end) {
+                    this.skip(i + 2);
+                } else if (formal && this.position + 3 < this.end && chars[this.position + 3] == '/') {
+                    this.skip(this.position + 4);
+                } else {
+                    return this.error();
+                }
+            } else {
+                break;
+            }
+        }
+        int start = this.position;
+        char c = chars[start];
+        int kind;
+        String image;
+        if (c < 128 && SINGLE_KINDS[c] != 0) {
+            kind = SINGLE_KINDS[c];
+            image = jjstrLiteralImages[kind];
+        } else if (c == '&' && start + 1 < this.end && chars[start + 1] == '&') {
+            kind = AND;
+            image = jjstrLiteralImages[kind];
+        } else if (c >= '0' && c <= '9') {
+            // "0" or a number that does not start with 0
+            int i = start + 1;
+            int hash = c;
+            if (c != '0') {
+                while (i < this.end && chars[i] >= '0' && chars[i] <= '9') {
+                    hash = 31 * hash + chars[i];
+                    i++;
+                }
+            }
+            kind = INTEGER_LITERAL;
+            image = this.intern(start, i - start, hash);
+        } else if (isLetter(c)) {
+            int i = start + 1;
+            int hash = c;
+            while (i < this.end && (isLetter(chars[i]) || isDigit(chars[i]))) {
+                hash = 31 * hash + chars[i];
+                i++;
+            }
+            int length = i - start;
+            int keyword = keywordHash(c, chars[i - 1], length);
+            if (KEYWORDS[keyword] != null && KEYWORDS[keyword].length() == length && this.matches(start, KEYWORDS[keyword])) {
+                kind = KEYWORD_KINDS[keyword];
+                image = KEYWORDS[keyword];
+            } else if (length == 6 && this.matches(start, "System") && this.matches(i, PRINT_SUFFIX)) {
+                kind = PRINT;
+                image = jjstrLiteralImages[kind];
+            } else {
+                kind = IDENTIFIER;
+                image = this.intern(start, length, hash);
+            }
+        } else {
+            return this.error();
+        }
+        // A token does not have tabs or line ends, so only its first character can move to another line
+        this.advance(c);
+        int beginColumn = this.column;
+        this.column += image.length() - 1;
+        this.position = start + image.length();
+        return this.token(kind, image, this.line, beginColumn, this.column);
+    }
+
+    private Token token(int kind, String image, int line, int beginColumn, int endColumn) {
+        Token token = Token.newToken(kind, image);
+        token.beginLine = token.endLine = line;
+        token.beginColumn = beginColumn;
+        token.endColumn = endColumn;
+        return token;
+    }
+
+    // The generated token manager reports the error, going on from the current position
+    private Token error() {
+        this.advance(this.chars[this.position]);
+        this.stream.restart(this.position, this.line, this.column);
+        return super.getNextToken();
+    }
+
+    // Goes through the characters up to the index
+    private void skip(int index) {
+        while (this.position < index) {
+            this.advance(this.chars[this.position++]);
+        }
+    }
+
+    private void advance(char c) {
+        this.column++;
+        if (this.prevCharIsLF) {
+            this.prevCharIsLF = false;
+            this.line += (this.column = 1);
+        } else if (this.prevCharIsCR) {
+            this.prevCharIsCR = false;
+            if (c == '\n') {
+                this.prevCharIsLF = true;
+            } else {
+                this.line += (this.column = 1);
+            }
+        }
+        if (c == '\r') {
+            this.prevCharIsCR = true;
+        } else if (c == '\n') {
+            this.prevCharIsLF = true;
+        } else if (c == '\t') {
+            this.column--;
+            this.column += 8 - (this.column % 8);
+        }
+    }
+
+    private boolean matches(int start, String text) {
+        if (start + text.length() > this.end) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (this.chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The image of the characters, which have the given String hash code, made only the first time they appear
+    private String intern(int start, int length, int hash) {
+        int mask = this.names.length - 1;
+        int i = (hash ^ (hash >>> 16)) & mask;
+        String name;
+        while ((name = this.names[i]) != null) {
+            if (name.hashCode() == hash && name.length() == length && this.matches(start, name)) {
+                return name;
+            }
+            i = (i + 1) & mask;
+        }
+        name = new String(this.chars, start, length);
+        this.names[i] = name;
+        if (2 * ++this.nameCount > this.names.length) {
+            String[] names = this.names;
+            this.names = new String[names.length * 2];
+            for (String old : names) {
+                if (old != null) {
+                    int j = (old.hashCode() ^ (old.hashCode() >>> 16)) & (this.names.length - 1);
+                    while (this.names[j] != null) {
+                        j = (j + 1) & (this.names.length - 1);
+                    }
+                    this.names[j] = old;
+                }
+            }
+        }
+        return name;
+    }
+
+    // The letters and digits of the grammar
+    private static boolean isLetter(char c) {
+        if (c < 128) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+        }
+        return (c >= '\u00c0' && c <= '\u00d6') || (c >= '\u00d8' && c <= '\u00f6') || (c >= '\u00f8' && c <= '\u00ff')
+            || (c >= '\u0100' && c <= '\u1fff') || (c >= '\u3040' && c <= '\u318f') || (c >= '\u3300' && c <= '\u337f')
+            || (c >= '\u3400' && c <= '\u3d2d') || (c >= '\u4e00' && c <= '\u9fff') || (c >= '\uf900' && c <= '\ufaff');
+    }
+
+    private static boolean isDigit(char c) {
+        if (c < 128) {
+            return c >= '0' && c <= '9';
+        }
+        return (c >= '\u0660' && c <= '\u0669') || (c >= '\u06f0' && c <= '\u06f9') || (c >= '\u0966' && c <= '\u096f')
+            || (c >= '\u09e6' && c <= '\u09ef') || (c >= '\u0a66' && c <= '\u0a6f') || (c >= '\u0ae6' && c <= '\u0aef')
+            || (c >= '\u0b66' && c <= '\u0b6f') || (c >= '\u0be7' && c <= '\u0bef') || (c >= '\u0c66' && c <= '\u0c6f')
+            || (c >= '\u0ce6' && c <= '\u0cef') || (c >= '\u0d66' && c <= '\u0d6f') || (c >= '\u0e50' && c <= '\u0e59')
+            || (c >= '\u0ed0' && c <= '\u0ed9') || (c >= '\u1040' && c <= '\u1049');
+    }
+}
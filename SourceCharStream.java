@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import components.helpers.SourceReader;
+
+// Character stream of the token manager over a source that is already in memory. JavaCharStream copies every
+// character from its reader to a circular buffer and records the line and column of each one as it reads it;
+// this stream instead reads the characters from their array and computes the line and column of a character only
+// when the token manager asks for the position of a token, going on from the last position it computed since the
+// tokens are asked in order. The positions are the same as those of JavaCharStream (it is the one that computes them).
+// A source with a backslash, which may start a unicode escape, is read by JavaCharStream itself
+public class SourceCharStream extends JavaCharStream {
+    char[] chars;
+    int begin;
+    int end;
+    private int current; // Index of the last character read
+    private int start; // Index of the first character of the token
+    private int located; // Index of the last character whose position was computed
+    private int startLine;
+    private int startColumn;
+
+    private SourceCharStream(char[] chars, int begin, int end, int startLine, int startColumn) {
+        super((Reader)null, startLine, startColumn, 1);
+        this.chars = chars;
+        this.begin = begin;
+        this.end = end;
+        this.current = this.start = this.located = begin - 1;
+        this.startLine = startLine;
+        this.startColumn = startColumn;
+        // The position of every character is computed in the single entry of the arrays of JavaCharStream
+        this.bufpos = 0;
+    }
+
+    public static JavaCharStream open(String file) throws IOException {
+        return open(SourceReader.read(file), 1, 1);
+    }
+
+    // The first character of the text is at the given line and column
+    public static JavaCharStream open(CharBuffer text, int startLine, int startColumn) {
+        if (!text.hasArray()) {
+            text = CharBuffer.wrap(text.toString().toCharArray());
+        }
+        char[] chars = text.array();
+        int begin = text.arrayOffset() + text.position();
+        int end = begin + text.remaining();
+        for (int i = begin; i < end; i++) {
+            if (chars[i] == '\\') {
+                return new JavaCharStream(new SourceReader(text), startLine, startColumn);
+            }
+        }
+        return new SourceCharStream(chars, begin, end, startLine, startColumn);
+    }
+
+    public char BeginToken() throws IOException {
+        this.start = this.current + 1;
+        if (this.start == this.end) {
+            // The end of file is at the last character
+            this.start = this.current;
+            throw new IOException();
+        }
+        return this.chars[++this.current];
+    }
+
+    public char readChar() throws IOException {
+        if (this.current + 1 == this.end) {
+            throw new IOException();
+        }
+        return this.chars[++this.current];
+    }
+
+    public void backup(int amount) {
+        this.current -= amount;
+    }
+
+    public String GetImage() {
+        return new String(this.chars, this.start, this.current - this.start + 1);
+    }
+
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(this.chars, this.current - len + 1, suffix, 0, len);
+        return suffix;
+    }
+
+    public int getBeginLine() {
+        this.locate(this.start);
+        return this.line;
+    }
+
+    public int getBeginColumn() {
+        this.locate(this.start);
+        return this.column;
+    }
+
+    public int getEndLine() {
+        this.locate(this.current);
+        return this.line;
+    }
+
+    public int getEndColumn() {
+        this.locate(this.current);
+        return this.column;
+    }
+
+    public void Done() {
+        this.chars = null;
+    }
+
+    // Goes on reading from the character at the index, which is at the given line and column
+    void restart(int index, int line, int column) {
+        this.current = this.start = this.located = index - 1;
+        this.line = line;
+        this.column = column - 1;
+        this.prevCharIsCR = this.prevCharIsLF = false;
+    }
+
+    // Leaves the line and column of the character at the index in the fields of JavaCharStream
+    private void locate(int index) {
+        if (index < this.located) {
+            // Only if a position before the last one is asked, start again from the beginning
+            this.located = this.begin - 1;
+            this.line = this.startLine;
+            this.column = this.startColumn - 1;
+            this.prevCharIsCR = this.prevCharIsLF = false;
+        }
+        while (this.located < index) {
+            this.UpdateLineColumn(this.chars[++this.located]);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import syntaxtree.*;
+import java.io.*;
+
+import components.helpers.IRWriter;
+import components.helpers.SymbolTable;
+import components.ir.IRPrinter;
+import components.ir.Module;
+import components.passes.DeadCodeElimination;
+import components.passes.Mem2Reg;
+import components.visitors.LLVMVisitor;
+import components.visitors.SymbolTableVisitor;
+import components.visitors.TypeCheckVisitor;
+
+// Measures what dead code elimination saves on a generated program where main only uses some of the classes, like the
+// programs that include a large library and call a small part of it. For the IR with and without the dead methods and
+// vtables it prints the functions, instructions and bytes, and when clang is found in the PATH also the time clang takes
+// to compile it at -O0 and -O2 (the best of the given number of runs).
+// Usage: java -cp .:benchmarks DeadCodeBenchmark [classes] [used classes] [runs]
+public class DeadCodeBenchmark {
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int used = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        boolean canRun = hasClang();
+        String source = generate(classes, used);
+        System.out.printf("%-8s %10s %14s %12s %12s %12s%n", "DCE", "functions", "instructions", "IR bytes", "clang -O0", "clang -O2");
+        for (boolean dce : new boolean[] { false, true }) {
+            Module module = compile(source, dce);
+            IRWriter text = new IRWriter();
+            new IRPrinter(text).print(module);
+            String o0 = "-";
+            String o2 = "-";
+            if (canRun) {
+                String ll = "dead_" + (dce ? "dce" : "all") + ".ll";
+                try (Writer out = new FileWriter(ll)) {
+                    out.write(text.toString());
+                }
+                o0 = String.format("%.1f ms", clang(ll, "-O0", runs) / 1e6);
+                o2 = String.format("%.1f ms", clang(ll, "-O2", runs) / 1e6);
+            }
+            System.out.printf("%-8s %10d %14d %12d %12s %12s%n", dce ? "on" : "off", module.getFunctions().size(), module.instructionCount(), text.toString().length(), o0, o2);
+        }
+        if (!canRun) {
+            System.out.println("clang was not found, the programs were not compiled");
+        }
+    }
+
+    private static Module compile(String source, boolean dce) throws Exception {
+        Goal root = new MiniJavaParser(new StringReader(source)).Goal();
+        SymbolTable symbolTable = new SymbolTable();
+        root.accept(new SymbolTableVisitor(symbolTable), null);
+        root.accept(new TypeCheckVisitor(symbolTable), null);
+        LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable);
+        root.accept(llvmVisitor, null);
+        Module module = llvmVisitor.getModule();
+        if (dce) {
+            new DeadCodeElimination(module, symbolTable, llvmVisitor.getCallSites()).run();
+        }
+        new Mem2Reg().run(module);
+        return module;
+    }
+
+    private static boolean hasClang() {
+        for (String dir : System.getenv("PATH").split(File.pathSeparator)) {
+            if (new File(dir, "clang").canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the best time in nanoseconds of compiling the file to an object file
+    private static long clang(String ll, String level, int runs) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder("clang", level, "-w", "-c", "-o", ll.replace(".ll", ".o"), ll).inheritIO().start();
+            if (process.waitFor() != 0) {
+                throw new Exception("clang " + level + " " + ll + " failed");
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // Classes in inheritance chains of 5 with a few methods each that call each other. main allocates one class out of
+    // every classes / used and calls its first method, so the other classes and the methods they override are dead
+    private static String generate(int classes, int used) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Dead {\n  public static void main(String[] a) {\n    int s;\n    s = 0;\n");
+        for (int c = 0; c < classes; c += Math.max(1, classes / used)) {
+            sb.append("    s = s + (new L").append(c).append("().m0(").append(c).append("));\n");
+        }
+        sb.append("    System.out.println(s);\n  }\n}\n");
+        for (int c = 0; c < classes; c++) {
+            sb.append("class L").append(c);
+            if (c % 5 != 0) {
+                sb.append(" extends L").append(c - 1);
+            }
+            sb.append(" {\n  int f").append(c).append(";\n");
+            for (int m = 0; m < 4; m++) {
+                sb.append("  public int m").append(m).append("(int x) {\n    int i;\n    int t;\n    int[] a;\n");
+                sb.append("    a = new int[10];\n    i = 0;\n    t = x;\n");
+                sb.append("    while (i < (a.length)) {\n      a[i] = (t * i) + ").append(c).append(";\n      t = t + (a[i]);\n      i = i + 1;\n    }\n");
+                if (m < 2) {
+                    sb.append("    t = t - (this.m").append(m + 1).append("(t));\n");
+                }
+                sb.append("    return t;\n  }\n");
+            }
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+}
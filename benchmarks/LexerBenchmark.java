@@ -0,0 +1,121 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import components.helpers.SourceReader;
+
+// Measures the throughput of lexing a source file, from opening it to the last token, with the ways the compiler can
+// read its input: "stream" is the token manager reading a FileInputStream through its own decoder, as Main did before,
+// "reader" is JavaCharStream reading the file mapped or read at once and decoded by SourceReader, "buffer" is
+// SourceCharStream reading the same characters from their array, as Main does with -generated-lexer, and "lexer" is
+// MiniJavaLexer, which Main uses, lexing them instead of the token manager.
+// The inputs are generated programs of a few megabytes written to temporary files, or the given files.
+// For every input and path the throughput in MB of source and in tokens per second and the bytes allocated per token
+// are printed.
+// Usage: java -cp .:benchmarks LexerBenchmark [-runs <runs>] [-path stream|reader|buffer|lexer] [files...]
+public class LexerBenchmark {
+    private static final String[] PATHS = { "stream", "reader", "buffer", "lexer" };
+
+    public static void main(String[] args) throws Exception {
+        int runs = 20;
+        String pathFilter = null;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-path":
+                    pathFilter = args[++i];
+                    break;
+                default:
+                    files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            files.add(write("classes", generate(500)));
+            files.add(write("classes", generate(5000)));
+        }
+        System.out.printf("%-24s %-8s %10s %10s %12s %14s %12s%n", "Input", "Path", "MB", "MB/s", "best MB/s", "tokens/s", "alloc B/tok");
+        for (File file : files) {
+            for (String path : PATHS) {
+                if (pathFilter != null && !pathFilter.equals(path)) {
+                    continue;
+                }
+                // The first runs only warm up the JIT
+                for (int i = 0; i < runs / 4 + 1; i++) {
+                    lex(file.getPath(), path);
+                }
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+                long thread = Thread.currentThread().getId();
+                long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+                long total = 0;
+                long best = Long.MAX_VALUE;
+                long tokens = 0;
+                for (int i = 0; i < runs; i++) {
+                    long start = System.nanoTime();
+                    tokens += lex(file.getPath(), path);
+                    long time = System.nanoTime() - start;
+                    total += time;
+                    best = Math.min(best, time);
+                }
+                long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                double megabytes = file.length() / (double)(1 << 20);
+                System.out.printf("%-24s %-8s %10.2f %10.2f %12.2f %14.0f %12.1f%n", file.getName(), path, megabytes,
+                    megabytes * runs / (total / 1e9), megabytes / (best / 1e9), tokens / (total / 1e9), (double)allocated / tokens);
+            }
+        }
+    }
+
+    // Returns the number of tokens of the file
+    private static int lex(String file, String path) throws IOException {
+        if (path.equals("stream")) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                return count(new MiniJavaParserTokenManager(new JavaCharStream(in)));
+            }
+        } else if (path.equals("reader")) {
+            return count(new MiniJavaParserTokenManager(new JavaCharStream(new SourceReader(SourceReader.read(file)))));
+        } else if (path.equals("buffer")) {
+            return count(new MiniJavaParserTokenManager(SourceCharStream.open(file)));
+        } else {
+            return count(MiniJavaLexer.open(file));
+        }
+    }
+
+    private static int count(MiniJavaParserTokenManager tokenManager) {
+        int count = 0;
+        while (tokenManager.getNextToken().kind != MiniJavaParserConstants.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    private static File write(String name, String source) throws IOException {
+        File file = File.createTempFile(name + "-", ".java");
+        file.deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            out.write(source);
+        }
+        return file;
+    }
+
+    // Classes with fields and methods with loops, array accesses, conditions and calls
+    private static String generate(int classes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Big {\n  public static void main(String[] a) {\n    System.out.println(new C0().m0(1));\n  }\n}\n");
+        for (int c = 0; c < classes; c++) {
+            sb.append("class C").append(c).append(" {\n  int f").append(c).append(";\n  boolean[] g").append(c).append(";\n");
+            for (int m = 0; m < 10; m++) {
+                sb.append("  // Method ").append(m).append(" of class ").append(c).append("\n");
+                sb.append("  public int m").append(m).append("(int x) {\n    int i;\n    int[] a;\n    C").append(c).append(" o;\n");
+                sb.append("    a = new int[").append(10 + m).append("];\n    i = 0;\n    o = this;\n");
+                sb.append("    while ((i < (a.length)) && !(x < 0)) {\n      a[i] = (x * i) - ").append(12345 + m).append(";\n");
+                sb.append("      if (i < 5) f").append(c).append(" = f").append(c).append(" + (o.m").append(m).append("(i - 1)); else x = x + (a[i]);\n");
+                sb.append("      i = i + 1;\n    }\n    /* the result */\n    return x;\n  }\n");
+            }
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+import syntaxtree.*;
+import java.io.StringReader;
+
+import components.helpers.SymbolTable;
+import components.ir.BasicBlock;
+import components.ir.CallInstruction;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.Instruction;
+import components.ir.Module;
+import components.ir.Value;
+import components.visitors.LLVMVisitor;
+import components.visitors.SymbolTableVisitor;
+import components.visitors.TypeCheckVisitor;
+
+// Compiles a generated call with hundreds of arguments whose arguments contain the same call, nested many levels deep,
+// and checks that every call of the generated IR received its own arguments in order.
+// Usage: java -cp .:benchmarks NestedCallsStress [arguments] [depth]
+public class NestedCallsStress {
+    public static void main(String[] args) throws Exception {
+        int argc = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Goal root = new MiniJavaParser(new StringReader(generate(argc, depth))).Goal();
+        long start = System.nanoTime();
+        SymbolTable symbolTable = new SymbolTable();
+        root.accept(new SymbolTableVisitor(symbolTable), null);
+        root.accept(new TypeCheckVisitor(symbolTable), null);
+        long typeCheckTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable);
+        root.accept(llvmVisitor, null);
+        long emitTime = System.nanoTime() - start;
+        int calls = verify(llvmVisitor.getModule(), argc);
+        if (calls != depth) {
+            throw new Exception("Expected " + depth + " calls of A.f but found " + calls);
+        }
+        System.out.printf("%d nested calls with %d arguments: type check %.2f ms, IR generation %.2f ms%n", depth, argc, typeCheckTime / 1e6, emitTime / 1e6);
+    }
+
+    // Argument i of every call is the literal i, except for argument 0 that is the receiver object
+    // and the argument that holds the nested call. Returns the number of checked calls
+    private static int verify(Module module, int argc) throws Exception {
+        int calls = 0;
+        Function main = module.getFunction("main");
+        for (BasicBlock block : main.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (!(instruction instanceof CallInstruction) || ((CallInstruction)instruction).argc() != argc + 1) {
+                    continue;
+                }
+                CallInstruction call = (CallInstruction)instruction;
+                int nested = 0;
+                // Argument 0 of the call is the receiver
+                for (int i = 1; i < argc; i++) {
+                    Value arg = call.getArgument(i + 1);
+                    if (arg instanceof CallInstruction) {
+                        nested++;
+                    } else if (!(arg instanceof ConstantInt) || ((ConstantInt)arg).getValue() != i) {
+                        throw new Exception("Argument " + i + " of call " + call.getName() + " is " + arg.getName());
+                    }
+                }
+                if (nested > 1) {
+                    throw new Exception("Call " + call.getName() + " has " + nested + " nested calls in its arguments");
+                }
+                calls++;
+            }
+        }
+        return calls;
+    }
+
+    // a.f(a, 1, ..., a.f(a, 1, ..., a.f(...), ...), ..., argc - 1) where the nested call of every level is at a different position
+    private static String generate(int argc, int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main {\n  public static void main(String[] args) {\n    A a;\n    a = new A();\n");
+        sb.append("    System.out.println(");
+        appendCall(sb, argc, depth, 0);
+        sb.append(");\n  }\n}\n");
+        sb.append("class A {\n  public int f(A a");
+        for (int i = 1; i < argc; i++) {
+            sb.append(", int a").append(i);
+        }
+        sb.append(") {\n    return a1;\n  }\n}\n");
+        return sb.toString();
+    }
+
+    private static void appendCall(StringBuilder sb, int argc, int depth, int level) {
+        sb.append("a.f(a");
+        int nestedPosition = 1 + level % (argc - 1);
+        for (int i = 1; i < argc; i++) {
+            sb.append(", ");
+            if (i == nestedPosition && level + 1 < depth) {
+                appendCall(sb, argc, depth, level + 1);
+            } else {
+                sb.append(i);
+            }
+        }
+        sb.append(")");
+    }
+}
@@ -0,0 +1,258 @@
+import syntaxtree.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import components.helpers.SymbolTable;
+import components.visitors.LLVMVisitor;
+import components.visitors.SymbolTableVisitor;
+import components.visitors.TypeCheckVisitor;
+
+// Measures every phase of the front end on its own: parsing, building the symbol table, type checking and
+// generating the IR. The inputs are the programs of llvm-examples and generated large programs.
+// Every benchmark runs a number of warmup iterations and then the measured iterations, each one repeating the phase
+// for a fixed time. Only the phase itself is timed: the input it needs (the tree, a fresh or checked symbol table)
+// is prepared outside of the timed region. For every phase the throughput and the bytes allocated by it are printed.
+// Usage: java -Xss64m -cp .:benchmarks PipelineBenchmark [-wi <warmup iterations>] [-i <iterations>] [-t <ms per iteration>]
+//        [-phase parse|symbols|typecheck|llvm] [-csv <file>] [input names...]
+public class PipelineBenchmark {
+    private static final String[] PHASES = { "parse", "symbols", "typecheck", "llvm" };
+
+    private static Object sink; // Keeps the results of the phases alive so that they are not optimized away
+
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = 3;
+        int iterations = 5;
+        int iterationTime = 1000;
+        String phaseFilter = null;
+        String csvFile = null;
+        List<String> inputFilter = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    iterationTime = Integer.parseInt(args[++i]);
+                    break;
+                case "-phase":
+                    phaseFilter = args[++i];
+                    break;
+                case "-csv":
+                    csvFile = args[++i];
+                    break;
+                default:
+                    inputFilter.add(args[i]);
+            }
+        }
+        PrintStream csv = csvFile != null ? new PrintStream(new FileOutputStream(csvFile)) : null;
+        if (csv != null) {
+            csv.println("input,phase,ops_per_s,error_ops_per_s,ms_per_op,alloc_mb_per_s,alloc_bytes_per_op");
+        }
+        System.out.printf("%-12s %-10s %14s %12s %12s %14s %16s%n", "Input", "Phase", "ops/s", "error", "ms/op", "alloc MB/s", "alloc B/op");
+        for (Input input : inputs()) {
+            if (!inputFilter.isEmpty() && !inputFilter.contains(input.name)) {
+                continue;
+            }
+            for (String phase : PHASES) {
+                if (phaseFilter != null && !phaseFilter.equals(phase)) {
+                    continue;
+                }
+                Result result = run(input, phase, warmupIterations, iterations, iterationTime);
+                System.out.printf("%-12s %-10s %14.2f %12.2f %12.4f %14.2f %16.0f%n", input.name, phase,
+                    result.throughput, result.error, 1e3 / result.throughput, result.allocationRate, result.bytesPerOp);
+                if (csv != null) {
+                    csv.printf("%s,%s,%.2f,%.2f,%.4f,%.2f,%.0f%n", input.name, phase,
+                        result.throughput, result.error, 1e3 / result.throughput, result.allocationRate, result.bytesPerOp);
+                }
+            }
+        }
+        if (csv != null) {
+            csv.close();
+        }
+    }
+
+    private static class Input {
+        String name;
+        String source;
+        Goal root; // Parsed once for the phases after parsing
+
+        Input(String name, String source) throws Exception {
+            this.name = name;
+            this.source = source;
+            this.root = new MiniJavaParser(new StringReader(source)).Goal();
+        }
+    }
+
+    private static class Result {
+        double throughput;     // Operations per second (mean of the measured iterations)
+        double error;          // Standard deviation of the throughput of the measured iterations
+        double allocationRate; // MB allocated per second spent in the phase
+        double bytesPerOp;
+    }
+
+    private static List<Input> inputs() throws Exception {
+        List<Input> inputs = new ArrayList<Input>();
+        File[] dirs = new File("llvm-examples").listFiles();
+        if (dirs != null) {
+            Arrays.sort(dirs);
+            for (File dir : dirs) {
+                File[] files = dir.listFiles((d, name) -> name.endsWith(".java"));
+                if (files == null) {
+                    continue;
+                }
+                Arrays.sort(files);
+                for (File file : files) {
+                    inputs.add(new Input(file.getName().replace(".java", ""), new String(Files.readAllBytes(file.toPath()))));
+                }
+            }
+        }
+        inputs.add(new Input("classes", generateClasses(2000, 10)));
+        inputs.add(new Input("nesting", generateNesting(300)));
+        return inputs;
+    }
+
+    private static Result run(Input input, String phase, int warmupIterations, int iterations, int iterationTime) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] throughputs = new double[iterations];
+        long measuredOps = 0;
+        long measuredTime = 0;
+        long measuredBytes = 0;
+        for (int iteration = -warmupIterations; iteration < iterations; iteration++) {
+            long ops = 0;
+            long phaseTime = 0;
+            long bytes = 0;
+            long end = System.nanoTime() + iterationTime * 1000000L;
+            while (ops == 0 || System.nanoTime() < end) {
+                SymbolTable symbolTable = prepare(input, phase);
+                long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                runPhase(input, phase, symbolTable);
+                phaseTime += System.nanoTime() - start;
+                bytes += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                ops++;
+            }
+            if (iteration >= 0) {
+                throughputs[iteration] = ops / (phaseTime / 1e9);
+                measuredOps += ops;
+                measuredTime += phaseTime;
+                measuredBytes += bytes;
+            }
+        }
+        Result result = new Result();
+        for (double throughput : throughputs) {
+            result.throughput += throughput / iterations;
+        }
+        for (double throughput : throughputs) {
+            result.error += (throughput - result.throughput) * (throughput - result.throughput) / Math.max(1, iterations - 1);
+        }
+        result.error = Math.sqrt(result.error);
+        result.allocationRate = measuredBytes / (measuredTime / 1e9) / (1 << 20);
+        result.bytesPerOp = (double)measuredBytes / measuredOps;
+        return result;
+    }
+
+    // Builds what the phase needs before it can run: nothing for parsing, an empty symbol table for building it,
+    // a filled symbol table for type checking and a checked one for generating the IR
+    private static SymbolTable prepare(Input input, String phase) throws Exception {
+        if (phase.equals("parse")) {
+            return null;
+        }
+        SymbolTable symbolTable = new SymbolTable();
+        if (phase.equals("symbols")) {
+            return symbolTable;
+        }
+        input.root.accept(new SymbolTableVisitor(symbolTable), null);
+        if (phase.equals("llvm")) {
+            input.root.accept(new TypeCheckVisitor(symbolTable), null);
+        }
+        return symbolTable;
+    }
+
+    private static void runPhase(Input input, String phase, SymbolTable symbolTable) throws Exception {
+        switch (phase) {
+            case "parse":
+                sink = new MiniJavaParser(MiniJavaLexer.open(CharBuffer.wrap(input.source), 1, 1)).Goal();
+                break;
+            case "symbols":
+                input.root.accept(new SymbolTableVisitor(symbolTable), null);
+                sink = symbolTable;
+                break;
+            case "typecheck":
+                input.root.accept(new TypeCheckVisitor(symbolTable), null);
+                sink = symbolTable;
+                break;
+            case "llvm":
+                LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable);
+                input.root.accept(llvmVisitor, null);
+                sink = llvmVisitor.getModule();
+                break;
+        }
+    }
+
+    // Classes in inheritance chains of 5, each one with fields and methods with loops, array accesses and conditions
+    private static String generateClasses(int classes, int methods) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Big {\n  public static void main(String[] a) {\n    int s;\n    s = 0;\n");
+        for (int c = 0; c < classes; c += Math.max(1, classes / 20)) {
+            sb.append("    s = s + (new C").append(c).append("().m0(").append(c).append("));\n");
+        }
+        sb.append("    System.out.println(s);\n  }\n}\n");
+        for (int c = 0; c < classes; c++) {
+            sb.append("class C").append(c);
+            if (c % 5 != 0) {
+                sb.append(" extends C").append(c - 1);
+            }
+            sb.append(" {\n  int f").append(c).append(";\n  boolean g").append(c).append(";\n  int[] arr").append(c).append(";\n");
+            for (int m = 0; m < methods; m++) {
+                sb.append("  public int m").append(m).append("(int x) {\n    int i;\n    int t;\n    boolean b;\n    int[] a;\n");
+                sb.append("    a = new int[10];\n    i = 0;\n    t = x;\n    b = true;\n");
+                sb.append("    while (i < (a.length)) {\n      a[i] = (t * i) + ").append(m).append(";\n      t = t + (a[i]);\n");
+                sb.append("      if ((i < 5) && b) b = !b; else f").append(c).append(" = f").append(c).append(" + 1;\n      i = i + 1;\n    }\n");
+                if (m + 1 < methods) {
+                    sb.append("    t = t - (this.m").append(m + 1).append("(t));\n");
+                }
+                sb.append("    return t;\n  }\n");
+            }
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+
+    // Arithmetic expressions, conditions and calls nested the given number of levels. The parser's syntactic lookahead
+    // scans a bracketed left operand once for every alternative of Expression, so the time to parse left nested
+    // arithmetic grows exponentially with the depth; that case is kept at a small fixed depth
+    private static String generateNesting(int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Nesting {\n  public static void main(String[] a) {\n    System.out.println(new N().run(1));\n  }\n}\n");
+        sb.append("class N {\n  public int id(int x) {\n    return x;\n  }\n  public int run(int x) {\n    int y;\n    boolean b;\n");
+        String[] operators = { " + ", " - ", " * " };
+        String arithmetic = "x";
+        String leftArithmetic = "x";
+        String condition = "(x < 1)";
+        String calls = "x";
+        for (int i = 0; i < depth; i++) {
+            String operand = i % 2 == 0 ? "x" : String.valueOf(i);
+            arithmetic = operand + operators[i % operators.length] + "(" + arithmetic + ")";
+            if (i < 8) {
+                leftArithmetic = "(" + leftArithmetic + ")" + operators[i % operators.length] + operand;
+            }
+            condition = "(" + condition + ") && (x < " + i + ")";
+            calls = "this.id(" + calls + ")";
+        }
+        sb.append("    y = ").append(arithmetic).append(";\n");
+        sb.append("    y = ").append(leftArithmetic).append(";\n");
+        sb.append("    b = ").append(condition).append(";\n");
+        sb.append("    y = ").append(calls).append(";\n");
+        sb.append("    return y;\n  }\n}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+import syntaxtree.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import components.helpers.IRWriter;
+import components.helpers.SymbolTable;
+import components.ir.IRPrinter;
+import components.ir.Module;
+import components.passes.BoundsCheckElimination;
+import components.passes.Mem2Reg;
+import components.visitors.LLVMVisitor;
+import components.visitors.SymbolTableVisitor;
+import components.visitors.TypeCheckVisitor;
+
+// Compares boolean arrays of one byte per element with arrays packed in bits (-pack-booleans) on a sieve of Eratosthenes
+// that counts the primes below n. For both layouts it prints the bytes of the array and the instructions of the sieve's
+// IR, and when clang is found in the PATH it also builds the programs and prints their run time and peak resident memory.
+// Usage: java -cp .:benchmarks SieveBenchmark [n] [runs]
+public class SieveBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        boolean canRun = hasClang();
+        System.out.printf("%-8s %14s %14s %12s %14s%n", "Layout", "array bytes", "instructions", "ms/run", "peak RSS KB");
+        for (boolean packBooleans : new boolean[] { false, true }) {
+            String name = packBooleans ? "bits" : "bytes";
+            Module module = compile(generate(n), packBooleans);
+            long arrayBytes = packBooleans ? 8L * (1 + (n + 63L) / 64) : n + 4L;
+            int instructions = module.getFunction("S.run").instructionCount();
+            String time = "-";
+            String rss = "-";
+            if (canRun) {
+                String ll = "sieve_" + name + ".ll";
+                IRWriter irWriter = new IRWriter(ll);
+                new IRPrinter(irWriter).print(module);
+                irWriter.close();
+                run("clang", "-O2", "-w", "-o", "sieve_" + name, ll);
+                long best = Long.MAX_VALUE;
+                long peak = 0;
+                for (int i = 0; i < runs; i++) {
+                    long start = System.nanoTime();
+                    peak = Math.max(peak, run("./sieve_" + name));
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                time = String.format("%.1f", best / 1e6);
+                rss = String.valueOf(peak);
+            }
+            System.out.printf("%-8s %14d %14d %12s %14s%n", name, arrayBytes, instructions, time, rss);
+        }
+        if (!canRun) {
+            System.out.println("clang was not found, the programs were not run");
+        }
+    }
+
+    private static Module compile(String source, boolean packBooleans) throws Exception {
+        Goal root = new MiniJavaParser(new StringReader(source)).Goal();
+        SymbolTable symbolTable = new SymbolTable();
+        root.accept(new SymbolTableVisitor(symbolTable), null);
+        root.accept(new TypeCheckVisitor(symbolTable), null);
+        LLVMVisitor llvmVisitor = new LLVMVisitor(symbolTable, packBooleans, false, false, true);
+        root.accept(llvmVisitor, null);
+        Module module = llvmVisitor.getModule();
+        new Mem2Reg().run(module);
+        new BoundsCheckElimination(module).run(module);
+        return module;
+    }
+
+    private static boolean hasClang() {
+        for (String dir : System.getenv("PATH").split(File.pathSeparator)) {
+            if (new File(dir, "clang").canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs a command and returns the highest resident memory (VmHWM, in KB) seen while it was running
+    private static long run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        long peak = 0;
+        while (process.isAlive()) {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/" + process.pid() + "/status"))) {
+                    if (line.startsWith("VmHWM:")) {
+                        peak = Math.max(peak, Long.parseLong(line.replaceAll("[^0-9]", "")));
+                    }
+                }
+            } catch (IOException ex) {
+                // The process exited between the checks
+            }
+            Thread.sleep(1);
+        }
+        if (process.waitFor() != 0) {
+            throw new Exception(String.join(" ", command) + " failed");
+        }
+        return peak;
+    }
+
+    private static String generate(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Sieve {\n  public static void main(String[] a) {\n    System.out.println(new S().run(").append(n).append("));\n  }\n}\n");
+        sb.append("class S {\n  public int run(int n) {\n    boolean[] composite;\n    int i;\n    int j;\n    int count;\n");
+        sb.append("    composite = new boolean[n];\n    i = 2;\n    count = 0;\n");
+        sb.append("    while (i < (composite.length)) {\n      if (!(composite[i])) {\n        count = count + 1;\n        j = i + i;\n");
+        sb.append("        while (j < (composite.length)) {\n          composite[j] = true;\n          j = j + i;\n        }\n");
+        sb.append("      } else {}\n      i = i + 1;\n    }\n    return count;\n  }\n}\n");
+        return sb.toString();
+    }
+}
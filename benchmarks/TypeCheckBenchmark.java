@@ -0,0 +1,58 @@
+import syntaxtree.*;
+import java.io.StringReader;
+
+import components.helpers.SymbolTable;
+import components.visitors.SymbolTableVisitor;
+import components.visitors.TypeCheckVisitor;
+
+// Measures the throughput of the type checker on a synthetic program with a single deep inheritance chain.
+// Every class of the chain assigns objects of its own type to variables of the root type and passes them
+// as arguments of the root type, so each of these checks has to relate a class to its furthest ancestor.
+// Usage: java -cp .:benchmarks TypeCheckBenchmark [depth] [runs]
+public class TypeCheckBenchmark {
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String source = generate(depth);
+        Goal root = new MiniJavaParser(new StringReader(source)).Goal();
+        // The first runs only warm up the JIT
+        for (int i = 0; i < runs / 4 + 1; i++) {
+            typeCheck(root);
+        }
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long time = typeCheck(root);
+            total += time;
+            best = Math.min(best, time);
+        }
+        System.out.printf("depth %d: %.3f ms per type check (best %.3f ms), %.0f classes/s%n",
+            depth, total / 1e6 / runs, best / 1e6, (double)depth * runs / (total / 1e9));
+    }
+
+    // Returns the nanoseconds spent in the type checker (the symbol table is built again for every run)
+    private static long typeCheck(Goal root) throws Exception {
+        SymbolTable symbolTable = new SymbolTable();
+        root.accept(new SymbolTableVisitor(symbolTable), null);
+        long start = System.nanoTime();
+        root.accept(new TypeCheckVisitor(symbolTable), null);
+        return System.nanoTime() - start;
+    }
+
+    // C0 <- C1 <- ... <- C(depth-1)
+    private static String generate(int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main {\n  public static void main(String[] a) {\n");
+        sb.append("    System.out.println(new C").append(depth - 1).append("().m0(new C").append(depth - 1).append("()));\n  }\n}\n");
+        sb.append("class C0 {\n  public int m0(C0 p) { return 0; }\n}\n");
+        for (int i = 1; i < depth; i++) {
+            sb.append("class C").append(i).append(" extends C").append(i - 1).append(" {\n");
+            sb.append("  public int m").append(i).append("(C0 p, C").append(i).append(" q) {\n");
+            sb.append("    C0 r;\n    int x;\n");
+            sb.append("    r = q;\n    r = this;\n");
+            sb.append("    x = p.m0(q);\n    x = q.m0(this);\n");
+            sb.append("    return x;\n  }\n}\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package components.helpers;
+
+import java.util.Arrays;
+
+import components.prototypes.Method;
+import components.prototypes.Variable;
+import components.types.Type;
+import syntaxtree.NodeToken;
+
+// What the type checker resolved for the nodes of the syntax tree, so that the IR generation does not look it up again:
+// the variable of every identifier used in an expression or assigned to, the method of every call and the type of the
+// expression that an array access, a length or a call applies to (annotated on its "[" or "." token).
+// A node is identified by the position of its token, which is unique in a file, so the table has a row for every line:
+// the columns of its annotated tokens in increasing order and their annotations, in two arrays. The rows are allocated
+// in the order the lines are checked and the IR generation reads them in about the same order, which keeps the searches
+// in the cache, and a line with a long expression is searched by bisection
+public class Annotations {
+  private int[][] columns;
+  private Object[][] values;
+  private int[] counts;
+
+  public Annotations() {
+    this.columns = new int[256][];
+    this.values = new Object[256][];
+    this.counts = new int[256];
+  }
+
+  private void put(NodeToken token,Object value) {
+    int line = token.beginLine;
+    if (line >= this.counts.length) {
+      int length = Math.max(line + 1, this.counts.length * 2);
+      this.columns = Arrays.copyOf(this.columns, length);
+      this.values = Arrays.copyOf(this.values, length);
+      this.counts = Arrays.copyOf(this.counts, length);
+    }
+    int count = this.counts[line];
+    if (this.columns[line] == null) {
+      this.columns[line] = new int[4];
+      this.values[line] = new Object[4];
+    }
+    int i = Arrays.binarySearch(this.columns[line], 0, count, token.beginColumn);
+    // A token annotated again keeps only its last annotation
+    if (i >= 0) {
+      this.values[line][i] = value;
+      return;
+    }
+    if (count == this.columns[line].length) {
+      this.columns[line] = Arrays.copyOf(this.columns[line], count * 2);
+      this.values[line] = Arrays.copyOf(this.values[line], count * 2);
+    }
+    // Insert it at its place, which is usually the end since the tokens are mostly checked from left to right
+    i = -i - 1;
+    System.arraycopy(this.columns[line], i, this.columns[line], i + 1, count - i);
+    System.arraycopy(this.values[line], i, this.values[line], i + 1, count - i);
+    this.columns[line][i] = token.beginColumn;
+    this.values[line][i] = value;
+    this.counts[line]++;
+  }
+
+  // Returns null if the token was not annotated
+  private Object get(NodeToken token) {
+    int line = token.beginLine;
+    if (line >= this.counts.length || this.counts[line] == 0) {
+      return null;
+    }
+    int i = Arrays.binarySearch(this.columns[line], 0, this.counts[line], token.beginColumn);
+    return i >= 0 ? this.values[line][i] : null;
+  }
+
+  public void setVariable(NodeToken identifier,Variable variable) {
+    this.put(identifier, variable);
+  }
+
+  public Variable getVariable(NodeToken identifier) {
+    return (Variable)this.get(identifier);
+  }
+
+  public void setMethod(NodeToken name,Method method) {
+    this.put(name, method);
+  }
+
+  public Method getMethod(NodeToken name) {
+    return (Method)this.get(name);
+  }
+
+  public void setType(NodeToken operator,Type type) {
+    this.put(operator, type);
+  }
+
+  public Type getType(NodeToken operator) {
+    return (Type)this.get(operator);
+  }
+}
@@ -0,0 +1,465 @@
+package components.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import components.prototypes.Class;
+import components.prototypes.Method;
+import components.prototypes.Scope;
+import components.prototypes.Variable;
+
+// On disk cache of the compiled classes of a source file, so that compiling it again only compiles what changed.
+// The source is split in its class declarations and the cache keeps for every class the hash of its text, the
+// declarations that rebuild its symbol table entry (and so its offsets and vtable), the classes its code depends on
+// with the hashes of their declarations, and its generated functions. A class whose text did not change is not parsed,
+// and if none of the classes it depends on changed either it is not type checked and its functions are reused.
+public class CompilationCache {
+  private static final int VERSION = 1;
+
+  // The text of one class declaration of the source file
+  public static class ClassSource {
+    private String name;
+    private String text;
+    private int line;
+    private int column;
+    private String hash;
+
+    private ClassSource(String name,String text,int line,int column) {
+      this.name = name;
+      this.text = text;
+      this.line = line;
+      this.column = column;
+      this.hash = CompilationCache.hash(text);
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public String getText() {
+      return this.text;
+    }
+
+    // Position of the text in the file, so that parse errors report the right line and column
+    public int getLine() {
+      return this.line;
+    }
+
+    public int getColumn() {
+      return this.column;
+    }
+  }
+
+  // What is kept for every class
+  private static class Entry {
+    private String textHash;
+    private String key; // Options the functions were generated with
+    private ArrayList<String[]> declarations; // In the order the SymbolTableVisitor makes them
+    private Map<String,String> dependencies; // Class name -> hash of its declarations
+    private Map<String,String> functions; // Function name -> IR text
+
+    private Entry(String textHash,String key) {
+      this.textHash = textHash;
+      this.key = key;
+      this.declarations = new ArrayList<String[]>();
+      this.dependencies = new LinkedHashMap<String,String>();
+      this.functions = new LinkedHashMap<String,String>();
+    }
+  }
+
+  private Path file;
+  private Map<String,Entry> entries; // Of the previous compilation
+  private Map<String,Entry> newEntries; // Of this compilation, written by save
+  private Map<String,String> interfaceHashes;
+  private int reused;
+
+  public CompilationCache(String dir,String sourceFile) throws IOException {
+    Path directory = Path.of(dir);
+    Files.createDirectories(directory);
+    this.file = directory.resolve(hash(Path.of(sourceFile).toAbsolutePath().normalize().toString()).substring(0, 16) + ".cache");
+    this.entries = new HashMap<String,Entry>();
+    this.newEntries = new LinkedHashMap<String,Entry>();
+    this.interfaceHashes = new HashMap<String,String>();
+    this.reused = 0;
+    if (Files.exists(this.file)) {
+      try {
+        this.load();
+      } catch (IOException | RuntimeException ex) {
+        // Written by another version or damaged: everything is compiled again
+        this.entries.clear();
+      }
+    }
+  }
+
+  // Splits the source in its class declarations. Returns null if there is anything else than classes and comments
+  // outside of them, so that the parser of the whole file reports the error
+  public static ArrayList<ClassSource> split(String source) {
+    ArrayList<ClassSource> classes = new ArrayList<ClassSource>();
+    int length = source.length();
+    int i = 0;
+    Position position = new Position(source);
+    while (true) {
+      // Whitespace and comments between the classes
+      while (i < length) {
+        int end = skipComment(source, i);
+        if (end == i && !Character.isWhitespace(source.charAt(i))) {
+          break;
+        }
+        i = Math.max(end, i + 1);
+      }
+      if (i == length) {
+        break;
+      }
+      if (!source.startsWith("class", i) || i + 5 == length || Character.isJavaIdentifierPart(source.charAt(i + 5))) {
+        return null;
+      }
+      int start = i;
+      position.locate(start);
+      // The name follows the keyword
+      int nameStart = i + 5;
+      while (nameStart < length && Character.isWhitespace(source.charAt(nameStart))) {
+        nameStart++;
+      }
+      int nameEnd = nameStart;
+      while (nameEnd < length && Character.isJavaIdentifierPart(source.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      if (nameEnd == nameStart) {
+        return null;
+      }
+      // The body ends at the brace that closes the first one
+      int depth = 0;
+      boolean opened = false;
+      while (i < length && !(opened && depth == 0)) {
+        int end = skipComment(source, i);
+        if (end == i) {
+          char c = source.charAt(i);
+          if (c == '{') {
+            depth++;
+            opened = true;
+          } else if (c == '}') {
+            depth--;
+          }
+          end = i + 1;
+        }
+        i = end;
+      }
+      if (!opened || depth != 0) {
+        return null;
+      }
+      classes.add(new ClassSource(source.substring(nameStart, nameEnd), source.substring(start, i), position.line, position.column));
+    }
+    return classes.isEmpty() ? null : classes;
+  }
+
+  // Returns the index after the comment that starts at i, or i if no comment starts there
+  private static int skipComment(String source,int i) {
+    if (source.charAt(i) != '/') {
+      return i;
+    } else if (source.startsWith("//", i)) {
+      int end = i + 2;
+      while (end < source.length() && source.charAt(end) != '\n' && source.charAt(end) != '\r') {
+        end++;
+      }
+      return end;
+    } else if (source.startsWith("/*", i)) {
+      // As in the grammar, "/**/" starts a comment that goes on to the next "*/" if there is one
+      int end = source.indexOf("*/", source.startsWith("/**", i) ? i + 3 : i + 2);
+      if (end < 0 && source.startsWith("/**/", i)) {
+        return i + 4;
+      }
+      return end < 0 ? source.length() : end + 2;
+    }
+    return i;
+  }
+
+  // Line and column of the characters of a source, counted like JavaCharStream.UpdateLineColumn counts them: "\r",
+  // "\n" and "\r\n" end a line and a tab moves to the next multiple of 8
+  private static class Position {
+    private String source;
+    private int located; // Index of the last character whose position is in line and column
+    private int line;
+    private int column;
+    private boolean prevCharIsCR;
+    private boolean prevCharIsLF;
+
+    private Position(String source) {
+      this.source = source;
+      this.located = -1;
+      this.line = 1;
+      this.column = 0;
+      this.prevCharIsCR = this.prevCharIsLF = false;
+    }
+
+    // Goes on to the character at the index, which is not before the last one located
+    private void locate(int index) {
+      while (this.located < index) {
+        char c = this.source.charAt(++this.located);
+        this.column++;
+        if (this.prevCharIsLF) {
+          this.prevCharIsLF = false;
+          this.line += (this.column = 1);
+        } else if (this.prevCharIsCR) {
+          this.prevCharIsCR = false;
+          if (c == '\n') {
+            this.prevCharIsLF = true;
+          } else {
+            this.line += (this.column = 1);
+          }
+        }
+        if (c == '\r') {
+          this.prevCharIsCR = true;
+        } else if (c == '\n') {
+          this.prevCharIsLF = true;
+        } else if (c == '\t') {
+          this.column--;
+          this.column += 8 - (this.column % 8);
+        }
+      }
+    }
+  }
+
+  // Whether the declarations of the class can be taken from the cache instead of parsing it
+  public boolean hasDeclarations(ClassSource source,boolean isMainClass) {
+    Entry entry = this.entries.get(source.getName());
+    return entry != null && entry.textHash.equals(source.hash) && entry.declarations.get(0)[0].equals(isMainClass ? "main" : "class");
+  }
+
+  // Inserts the class in the symbol table with the same calls as the SymbolTableVisitor
+  public void replay(ClassSource source,SymbolTable symbolTable) throws Exception {
+    Scope classScope = null;
+    Scope scope = null;
+    for (String[] declaration : this.entries.get(source.getName()).declarations) {
+      switch (declaration[0]) {
+        case "main":
+          symbolTable.insertClass(declaration[1], true);
+          classScope = scope = symbolTable.getClass(declaration[1]).getScope();
+          break;
+        case "class":
+          if (declaration.length == 3) {
+            symbolTable.insertClass(declaration[1], declaration[2], false);
+          } else {
+            symbolTable.insertClass(declaration[1], false);
+          }
+          classScope = scope = symbolTable.getClass(declaration[1]).getScope();
+          break;
+        case "var":
+          symbolTable.varDeclaration(declaration[1], declaration[2], scope);
+          break;
+        case "param":
+          symbolTable.formalParameterDeclaration(declaration[1], declaration[2]);
+          break;
+        case "method":
+          scope = symbolTable.methodDeclaration(declaration[1], declaration[2], classScope);
+          break;
+      }
+    }
+  }
+
+  private static ArrayList<String[]> declarations(Class cl) {
+    ArrayList<String[]> declarations = new ArrayList<String[]>();
+    if (cl.isMainClass()) {
+      declarations.add(new String[] { "main", cl.getName() });
+    } else if (cl.getParentClass() != null) {
+      declarations.add(new String[] { "class", cl.getName(), cl.getParentClass().getName() });
+    } else {
+      declarations.add(new String[] { "class", cl.getName() });
+    }
+    for (Variable var : cl.getVariablesList()) {
+      declarations.add(new String[] { "var", var.getType(), var.getName() });
+    }
+    for (Method method : cl.getMethodsList()) {
+      for (int i = 0;i < method.argc();i++) {
+        declarations.add(new String[] { "param", method.getNthArgument(i).getType(), method.getNthArgument(i).getName() });
+      }
+      declarations.add(new String[] { "method", method.getReturnType(), method.getName() });
+      for (Variable var : method.getVariablesList()) {
+        declarations.add(new String[] { "var", var.getType(), var.getName() });
+      }
+    }
+    return declarations;
+  }
+
+  // Hashes what the code of other classes can see of every class: its fields, the signatures of its methods and
+  // the same of its parent classes. The locals of the methods are not part of it
+  public void computeInterfaces(SymbolTable symbolTable) {
+    for (Class cl : symbolTable.getClassList()) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(cl.isMainClass() ? "main " : "class ").append(cl.getName());
+      if (cl.getParentClass() != null) {
+        sb.append(" extends ").append(this.interfaceHashes.get(cl.getParentClass().getName()));
+      }
+      sb.append('\n');
+      for (Variable var : cl.getVariablesList()) {
+        sb.append(var.getType()).append(' ').append(var.getName()).append('\n');
+      }
+      for (Method method : cl.getMethodsList()) {
+        sb.append(method.getReturnType()).append(' ').append(method.getName()).append('(');
+        for (int i = 0;i < method.argc();i++) {
+          sb.append(method.getNthArgument(i).getType()).append(',');
+        }
+        sb.append(")\n");
+      }
+      this.interfaceHashes.put(cl.getName(), hash(sb.toString()));
+    }
+  }
+
+  // Hashes the parent of every class and the class of every vtable entry, which decide the targets of virtual calls
+  public static String hierarchyHash(SymbolTable symbolTable) {
+    StringBuilder sb = new StringBuilder();
+    for (Class cl : symbolTable.getClassList()) {
+      sb.append(cl.getName()).append(' ').append(cl.getParentClass() != null ? cl.getParentClass().getName() : "");
+      for (Method method : cl.getVtable()) {
+        sb.append(' ').append(method.getOwnClass().getName()).append('.').append(method.getName());
+      }
+      sb.append('\n');
+    }
+    return hash(sb.toString());
+  }
+
+  // Whether the functions of the class in the cache were generated from the same text, with the same options (key)
+  // and with the same declarations of every class they depend on. computeInterfaces must be called first
+  public boolean isUpToDate(ClassSource source,String key) {
+    Entry entry = this.entries.get(source.getName());
+    if (entry == null || !entry.textHash.equals(source.hash) || !entry.key.equals(key)) {
+      return false;
+    }
+    for (Map.Entry<String,String> dependency : entry.dependencies.entrySet()) {
+      if (!dependency.getValue().equals(this.interfaceHashes.get(dependency.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Keeps the entry of an up to date class and returns its functions by name
+  public Map<String,String> reuse(ClassSource source) {
+    Entry entry = this.entries.get(source.getName());
+    this.newEntries.put(source.getName(), entry);
+    this.reused++;
+    return entry.functions;
+  }
+
+  // Stores a class compiled again with the classes its code used and its functions by name
+  public void update(Class cl,ClassSource source,String key,Set<Class> dependencies,Map<String,String> functions) {
+    Entry entry = new Entry(source.hash, key);
+    entry.declarations = declarations(cl);
+    for (Class dependency : dependencies) {
+      entry.dependencies.put(dependency.getName(), this.interfaceHashes.get(dependency.getName()));
+    }
+    entry.functions = functions;
+    this.newEntries.put(cl.getName(), entry);
+  }
+
+  // Number of classes reused by this compilation
+  public int getReusedCount() {
+    return this.reused;
+  }
+
+  // Replaces the cache file with the entries of this compilation
+  public void save() throws IOException {
+    Path tmp = this.file.resolveSibling(this.file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(VERSION);
+      out.writeInt(this.newEntries.size());
+      for (Map.Entry<String,Entry> named : this.newEntries.entrySet()) {
+        Entry entry = named.getValue();
+        writeString(out, named.getKey());
+        writeString(out, entry.textHash);
+        writeString(out, entry.key);
+        out.writeInt(entry.declarations.size());
+        for (String[] declaration : entry.declarations) {
+          out.writeInt(declaration.length);
+          for (String part : declaration) {
+            writeString(out, part);
+          }
+        }
+        writeMap(out, entry.dependencies);
+        writeMap(out, entry.functions);
+      }
+    }
+    // Readers never see a partly written file
+    Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void load() throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+      if (in.readInt() != VERSION) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0;i < count;i++) {
+        String name = readString(in);
+        Entry entry = new Entry(readString(in), readString(in));
+        int declarations = in.readInt();
+        for (int j = 0;j < declarations;j++) {
+          String[] declaration = new String[in.readInt()];
+          for (int k = 0;k < declaration.length;k++) {
+            declaration[k] = readString(in);
+          }
+          entry.declarations.add(declaration);
+        }
+        readMap(in, entry.dependencies);
+        readMap(in, entry.functions);
+        this.entries.put(name, entry);
+      }
+    }
+  }
+
+  // Strings are written as their length and their UTF-8 bytes (writeUTF is limited to 64KB)
+  private static void writeString(DataOutputStream out,String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeMap(DataOutputStream out,Map<String,String> map) throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<String,String> entry : map.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  private static void readMap(DataInputStream in,Map<String,String> map) throws IOException {
+    int size = in.readInt();
+    for (int i = 0;i < size;i++) {
+      map.put(readString(in), readString(in));
+    }
+  }
+
+  // Hex SHA-256 of the text
+  private static String hash(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException ex) {
+      // Every Java platform supports SHA-256
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package components.helpers;
+
+// An error of a program at a position of its source file
+public class Diagnostic {
+  private String file;
+  private int line;
+  private int column;
+  private ErrorCode code;
+  private String message;
+
+  public Diagnostic(String file,int line,int column,ErrorCode code,String message) {
+    this.file = file;
+    this.line = line;
+    this.column = column;
+    this.code = code;
+    this.message = message;
+  }
+
+  public int getLine() {
+    return this.line;
+  }
+
+  public int getColumn() {
+    return this.column;
+  }
+
+  // For example "And.java:12:5: error[TYPE_MISMATCH]: Assignment type mismatch: cannot convert from boolean to int"
+  public String toString() {
+    return this.file + ":" + this.line + ":" + this.column + ": error[" + this.code + "]: " + this.message;
+  }
+}
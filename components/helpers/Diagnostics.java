@@ -0,0 +1,56 @@
+package components.helpers;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import syntaxtree.Node;
+import syntaxtree.NodeToken;
+
+// Collects the errors of a file, so that the visitors report an error and go on checking the rest of the program
+// instead of stopping at the first one
+public class Diagnostics {
+  private String file;
+  private ArrayList<Diagnostic> errors;
+  private Set<Node> rejected; // Declarations left out of the symbol table because of an error
+
+  public Diagnostics(String file) {
+    this.file = file;
+    this.errors = new ArrayList<Diagnostic>();
+    this.rejected = new HashSet<Node>();
+  }
+
+  public void report(int line,int column,ErrorCode code,String message) {
+    this.errors.add(new Diagnostic(this.file, line, column, code, message));
+  }
+
+  // Reports an error at the position of the token
+  public void report(NodeToken token,ErrorCode code,String message) {
+    this.report(token.beginLine, token.beginColumn, code, message);
+  }
+
+  // The type checker does not check the body of a rejected declaration, since its names are not in the symbol table
+  public void reject(Node declaration) {
+    this.rejected.add(declaration);
+  }
+
+  public boolean isRejected(Node declaration) {
+    return this.rejected.contains(declaration);
+  }
+
+  public boolean hasErrors() {
+    return !this.errors.isEmpty();
+  }
+
+  // Prints the errors in the order of their position in the file, followed by their number
+  public void print(PrintStream out) {
+    ArrayList<Diagnostic> sorted = new ArrayList<Diagnostic>(this.errors);
+    sorted.sort(Comparator.comparingInt(Diagnostic::getLine).thenComparingInt(Diagnostic::getColumn));
+    for (Diagnostic error : sorted) {
+      out.println(error);
+    }
+    out.println(sorted.size() + (sorted.size() == 1 ? " error" : " errors"));
+  }
+}
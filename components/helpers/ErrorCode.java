@@ -0,0 +1,24 @@
+package components.helpers;
+
+// Kinds of the errors found in a program. Every diagnostic is printed with the name of its kind
+public enum ErrorCode {
+  SYNTAX,
+  DUPLICATE_CLASS,
+  UNDEFINED_TYPE,
+  DUPLICATE_VARIABLE,
+  DUPLICATE_METHOD,
+  INCOMPATIBLE_OVERRIDE,
+  UNDEFINED_VARIABLE,
+  UNDEFINED_METHOD,
+  NOT_AN_OBJECT,
+  ARGUMENT_MISMATCH,
+  TYPE_MISMATCH,
+  RETURN_MISMATCH,
+  CONDITION_TYPE,
+  PRINT_TYPE,
+  OPERAND_TYPE,
+  NOT_AN_ARRAY,
+  INDEX_TYPE,
+  ARRAY_SIZE_TYPE,
+  INVALID_LITERAL
+}
@@ -0,0 +1,106 @@
+package components.helpers;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+// Output sink for the generated LLVM IR. Code is appended piece by piece to a chunk buffer
+// which is encoded and written to the output file's channel whenever it grows past the flush size.
+public class IRWriter {
+  public static final int DEFAULT_FLUSH_SIZE = 1 << 16;
+
+  private FileChannel channel;
+  private StringBuilder chunk;
+  private ByteBuffer bytes;
+  private CharsetEncoder encoder;
+  private int flushSize;
+  private long bytesWritten;
+
+  public IRWriter(String outFileName) throws IOException {
+    this(outFileName, DEFAULT_FLUSH_SIZE);
+  }
+
+  // Keeps the code in memory, see toString
+  public IRWriter() {
+    this.channel = null;
+    this.flushSize = Integer.MAX_VALUE;
+    this.chunk = new StringBuilder();
+    this.bytesWritten = 0;
+  }
+
+  public IRWriter(String outFileName,int flushSize) throws IOException {
+    this.channel = new FileOutputStream(outFileName).getChannel();
+    this.flushSize = flushSize;
+    this.chunk = new StringBuilder(flushSize + 256);
+    this.bytes = ByteBuffer.allocate(flushSize + 256);
+    this.encoder = StandardCharsets.UTF_8.newEncoder();
+    this.bytesWritten = 0;
+  }
+
+  public IRWriter append(String code) {
+    this.chunk.append(code);
+    return this;
+  }
+
+  public IRWriter append(int value) {
+    this.chunk.append(value);
+    return this;
+  }
+
+  public IRWriter append(char c) {
+    this.chunk.append(c);
+    return this;
+  }
+
+  // Ends the current line. Chunks are only flushed at line ends so that a character is never split between two writes
+  public IRWriter newline() throws IOException {
+    this.chunk.append('\n');
+    if (this.chunk.length() >= this.flushSize) {
+      this.flush();
+    }
+    return this;
+  }
+
+  public void flush() throws IOException {
+    if (this.channel == null) {
+      return;
+    }
+    CharBuffer chars = CharBuffer.wrap(this.chunk);
+    this.encoder.reset();
+    CoderResult result;
+    do {
+      result = this.encoder.encode(chars, this.bytes, true);
+      if (!result.isOverflow()) {
+        this.encoder.flush(this.bytes);
+      }
+      this.bytes.flip();
+      while (this.bytes.hasRemaining()) {
+        this.bytesWritten += this.channel.write(this.bytes);
+      }
+      this.bytes.clear();
+    } while (result.isOverflow());
+    this.chunk.setLength(0);
+  }
+
+  // Number of bytes written to the output file so far
+  public long getBytesWritten() {
+    return this.bytesWritten;
+  }
+
+  public void close() throws IOException {
+    this.flush();
+    if (this.channel != null) {
+      this.channel.close();
+    }
+  }
+
+  // The code written to a writer that keeps it in memory
+  public String toString() {
+    return this.chunk.toString();
+  }
+}
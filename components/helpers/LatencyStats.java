@@ -0,0 +1,44 @@
+package components.helpers;
+
+import java.util.Arrays;
+
+// Latencies of the requests handled by the compile server. Shared by all the connections of the server.
+// The count, mean and maximum cover every request, the percentiles the last WINDOW requests, so that a server that
+// runs for days keeps a fixed amount of memory and a stats request sorts at most WINDOW latencies
+public class LatencyStats {
+  public static final int WINDOW = 1024;
+
+  private long count;
+  private double total;
+  private double max;
+  private double[] recent; // Ring buffer of the latest latencies, the next one is written at count % WINDOW
+
+  public LatencyStats() {
+    this.count = 0;
+    this.total = 0;
+    this.max = 0;
+    this.recent = new double[WINDOW];
+  }
+
+  public synchronized void record(double millis) {
+    this.recent[(int)(this.count % WINDOW)] = millis;
+    this.count++;
+    this.total += millis;
+    this.max = Math.max(this.max, millis);
+  }
+
+  public synchronized String toString() {
+    if (this.count == 0) {
+      return "requests 0";
+    }
+    double[] sorted = Arrays.copyOf(this.recent, (int)Math.min(this.count, WINDOW));
+    Arrays.sort(sorted);
+    return String.format("requests %d, mean %.2f ms, p50 %.2f ms, p95 %.2f ms, max %.2f ms", this.count, this.total / this.count,
+      percentile(sorted, 50), percentile(sorted, 95), this.max);
+  }
+
+  private static double percentile(double[] sorted,int percent) {
+    int index = (int)Math.ceil(percent / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+}
@@ -0,0 +1,293 @@
+package components.helpers;
+
+import java.util.ArrayList;
+
+// Command line options of the compiler. Everything that is not an option is a file to compile.
+public class Options {
+  private ArrayList<String> files;
+  private int jobs;
+  private boolean emitStats;
+  private boolean fold;
+  private boolean dce;
+  private boolean dceReport;
+  private boolean mem2reg;
+  private boolean bce;
+  private boolean bceReport;
+  private boolean licm;
+  private boolean licmReport;
+  private boolean forward;
+  private boolean forwardReport;
+  private boolean devirt;
+  private boolean inline;
+  private boolean devirtReport;
+  private boolean packFields;
+  private boolean layoutReport;
+  private boolean packBooleans;
+  private boolean arena;
+  private boolean gc;
+  private boolean server;
+  private String socketPath;
+  private String cacheDir;
+  private boolean allErrors;
+  private boolean generatedLexer;
+
+  public Options(String[] args) throws Exception {
+    this.files = new ArrayList<String>();
+    this.jobs = 0;
+    this.emitStats = false;
+    this.fold = true;
+    this.dce = true;
+    this.dceReport = false;
+    this.mem2reg = true;
+    this.bce = true;
+    this.bceReport = false;
+    this.licm = true;
+    this.licmReport = false;
+    this.forward = true;
+    this.forwardReport = false;
+    this.devirt = true;
+    this.inline = false;
+    this.devirtReport = false;
+    this.packFields = false;
+    this.layoutReport = false;
+    this.packBooleans = false;
+    this.arena = false;
+    this.gc = false;
+    this.server = false;
+    this.socketPath = null;
+    this.cacheDir = null;
+    this.allErrors = false;
+    this.generatedLexer = false;
+    for (int i = 0;i < args.length;i++) {
+      switch (args[i]) {
+        case "-j":
+          if (i + 1 == args.length) {
+            throw new Exception("Missing number of jobs after -j");
+          }
+          try {
+            this.jobs = Integer.parseInt(args[++i]);
+          } catch (NumberFormatException ex) {
+            throw new Exception("Invalid number of jobs after -j: " + args[i]);
+          }
+          if (this.jobs < 1) {
+            throw new Exception("The number of jobs after -j must be at least 1: " + args[i]);
+          }
+          break;
+        case "-emit-stats":
+          this.emitStats = true;
+          break;
+        case "-no-fold":
+          this.fold = false;
+          break;
+        case "-no-dce":
+          this.dce = false;
+          break;
+        case "-dce-report":
+          this.dceReport = true;
+          break;
+        case "-no-mem2reg":
+          this.mem2reg = false;
+          break;
+        case "-no-bce":
+          this.bce = false;
+          break;
+        case "-bce-report":
+          this.bceReport = true;
+          break;
+        case "-no-licm":
+          this.licm = false;
+          break;
+        case "-licm-report":
+          this.licmReport = true;
+          break;
+        case "-no-forward":
+          this.forward = false;
+          break;
+        case "-forward-report":
+          this.forwardReport = true;
+          break;
+        case "-no-devirt":
+          this.devirt = false;
+          break;
+        case "-inline":
+          this.inline = true;
+          break;
+        case "-devirt-report":
+          this.devirtReport = true;
+          break;
+        case "-pack-fields":
+          this.packFields = true;
+          break;
+        case "-layout-report":
+          this.layoutReport = true;
+          break;
+        case "-pack-booleans":
+          this.packBooleans = true;
+          break;
+        case "-arena":
+          this.arena = true;
+          break;
+        case "-gc":
+          this.gc = true;
+          break;
+        case "-server":
+          this.server = true;
+          break;
+        case "-socket":
+          if (i + 1 == args.length) {
+            throw new Exception("Missing socket path after -socket");
+          }
+          this.server = true;
+          this.socketPath = args[++i];
+          break;
+        case "-cache":
+          if (i + 1 == args.length) {
+            throw new Exception("Missing cache directory after -cache");
+          }
+          this.cacheDir = args[++i];
+          break;
+        case "-all-errors":
+          this.allErrors = true;
+          break;
+        case "-generated-lexer":
+          this.generatedLexer = true;
+          break;
+        default:
+          this.files.add(args[i]);
+          break;
+      }
+    }
+    if (this.gc && this.arena) {
+      throw new Exception("-gc can not be used with -arena");
+    }
+  }
+
+  public ArrayList<String> getFiles() {
+    return this.files;
+  }
+
+  // Number of worker threads (0 means compile sequentially on the main thread)
+  public int getJobs() {
+    return this.jobs;
+  }
+
+  // Print the size and throughput of the emitted IR
+  public boolean emitStats() {
+    return this.emitStats;
+  }
+
+  // Evaluate the expressions and conditions that are known at compile time instead of emitting them
+  public boolean fold() {
+    return this.fold;
+  }
+
+  // Remove the methods that are never called and the vtables of the classes that are never allocated
+  public boolean dce() {
+    return this.dce;
+  }
+
+  // Print how many methods and vtables were removed
+  public boolean dceReport() {
+    return this.dceReport;
+  }
+
+  // Promote the stack slots of locals and arguments to registers
+  public boolean mem2reg() {
+    return this.mem2reg;
+  }
+
+  // Remove the array bounds checks that can be proven redundant
+  public boolean bce() {
+    return this.bce;
+  }
+
+  // Print how many bounds checks were removed in every method
+  public boolean bceReport() {
+    return this.bceReport;
+  }
+
+  // Move the computations that are the same in every iteration of a loop before the loop
+  public boolean licm() {
+    return this.licm;
+  }
+
+  // Print what was moved out of every loop
+  public boolean licmReport() {
+    return this.licmReport;
+  }
+
+  // Keep the fields of this that a method uses more than once in registers
+  public boolean forward() {
+    return this.forward;
+  }
+
+  // Print the fields kept in registers in every method
+  public boolean forwardReport() {
+    return this.forwardReport;
+  }
+
+  // Turn virtual calls that can only reach one method into direct calls
+  public boolean devirt() {
+    return this.devirt;
+  }
+
+  // Inline the direct calls of small leaf methods
+  public boolean inline() {
+    return this.inline;
+  }
+
+  // Print how many call sites were devirtualized and inlined
+  public boolean devirtReport() {
+    return this.devirtReport;
+  }
+
+  // Reorder the fields of every class to align them and make its objects smaller
+  public boolean packFields() {
+    return this.packFields;
+  }
+
+  // Print the size of the objects of every class before and after reordering their fields
+  public boolean layoutReport() {
+    return this.layoutReport;
+  }
+
+  // Store the elements of boolean arrays as bits instead of bytes
+  public boolean packBooleans() {
+    return this.packBooleans;
+  }
+
+  // Allocate objects and arrays from large arenas with a bump pointer instead of a calloc call for each one
+  public boolean arena() {
+    return this.arena;
+  }
+
+  // Free the objects and arrays that are no longer reachable with a mark-sweep garbage collector
+  public boolean gc() {
+    return this.gc;
+  }
+
+  // Keep running and compile the requests read from stdin or from the socket
+  public boolean server() {
+    return this.server;
+  }
+
+  // Path of the unix domain socket of the server (null means stdin and stdout)
+  public String getSocketPath() {
+    return this.socketPath;
+  }
+
+  // Directory of the incremental compilation cache (null means every file is compiled from scratch)
+  public String getCacheDir() {
+    return this.cacheDir;
+  }
+
+  // Report every error of a file instead of stopping at the first one
+  public boolean allErrors() {
+    return this.allErrors;
+  }
+
+  // Lex with the token manager that JavaCC generates instead of MiniJavaLexer
+  public boolean generatedLexer() {
+    return this.generatedLexer;
+  }
+}
@@ -0,0 +1,17 @@
+package components.helpers;
+
+// Error of a program found by the symbol table or the type checker, with the kind of the error
+public class SemanticException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private ErrorCode code;
+
+  public SemanticException(ErrorCode code,String message) {
+    super(message);
+    this.code = code;
+  }
+
+  public ErrorCode getCode() {
+    return this.code;
+  }
+}
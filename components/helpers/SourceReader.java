@@ -0,0 +1,72 @@
+package components.helpers;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Input of the parser. The whole source file is read at once, memory mapped if it is large, and decoded in one pass
+// to a buffer of characters, which the parser then reads from memory instead of decoding the bytes of a stream in
+// small reads
+public class SourceReader extends Reader {
+  public static final int MAP_THRESHOLD = 1 << 16; // Smaller files are read, mapping them costs more than it saves
+
+  private CharBuffer chars;
+
+  public SourceReader(CharBuffer chars) {
+    this.chars = chars;
+  }
+
+  // Characters of the file, decoded as UTF-8. A file that cannot be opened is reported like FileInputStream does
+  public static CharBuffer read(String file) throws IOException {
+    if (Files.isDirectory(Paths.get(file))) {
+      throw new FileNotFoundException(file + " (Is a directory)");
+    }
+    FileChannel opened;
+    try {
+      opened = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+    } catch (NoSuchFileException ex) {
+      throw new FileNotFoundException(file + " (No such file or directory)");
+    } catch (AccessDeniedException ex) {
+      throw new FileNotFoundException(file + " (Permission denied)");
+    }
+    try (FileChannel channel = opened) {
+      long size = channel.size();
+      ByteBuffer bytes = ByteBuffer.allocate((int)size);
+      if (size >= MAP_THRESHOLD) {
+        // Copied at once from the mapping: the decoder reads a direct buffer a byte at a time, which is much slower
+        bytes.put(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      } else {
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+        }
+      }
+      bytes.flip();
+      return StandardCharsets.UTF_8.decode(bytes);
+    }
+  }
+
+  public int read(char[] buffer,int offset,int length) {
+    if (!this.chars.hasRemaining()) {
+      return -1;
+    }
+    length = Math.min(length, this.chars.remaining());
+    this.chars.get(buffer, offset, length);
+    return length;
+  }
+
+  public int read() {
+    return this.chars.hasRemaining() ? this.chars.get() : -1;
+  }
+
+  // Nothing to release, the characters are in memory
+  public void close() {
+  }
+}
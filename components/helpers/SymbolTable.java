@@ -1,22 +1,35 @@
 package components.helpers;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import components.prototypes.Class;
 import components.prototypes.Method;
+import components.prototypes.Scope;
 import components.prototypes.Variable;
+import components.types.ClassType;
+import components.types.Type;
 
 public class SymbolTable {
   private Map<String,Class> classes;
   private ArrayList<Class> classesList; // To print classes in declared order
   private ArrayList<Variable> lastParameList;
+  private Set<Class> dependencies; // Classes used by the code being checked (null if they are not collected)
+  private Annotations annotations; // Filled by the type checker for the IR generation
 
   public SymbolTable() {
     this.classes = new HashMap<String,Class>();
     this.classesList = new ArrayList<Class>();
     this.lastParameList = new ArrayList<Variable>();
+    this.dependencies = null;
+    this.annotations = new Annotations();
+  }
+
+  public Annotations getAnnotations() {
+    return this.annotations;
   }
 
   public Class getClass(String className) {
@@ -27,15 +40,27 @@ public class SymbolTable {
     return this.classesList;
   }
 
+  // Adds to the given set every class whose type or methods are looked up from now on. null stops collecting
+  public void collectDependencies(Set<Class> dependencies) {
+    this.dependencies = dependencies;
+  }
+
+  private void addDependency(Class cl) {
+    if (this.dependencies != null && cl != null) {
+      this.dependencies.add(cl);
+    }
+  }
+
   // Inserts single class
   public void insertClass(String className,boolean isMainClass) throws Exception{
     // Check if new class was previously defined
     if (!this.classes.containsKey(className)) {
       Class newClass = new Class(className,isMainClass);
+      newClass.setId(this.classesList.size());
       this.classes.put(className, newClass);
       this.classesList.add(newClass);
     } else {
-      throw new Exception("The type " + className + " is already defined");
+      throw new SemanticException(ErrorCode.DUPLICATE_CLASS, "The type " + className + " is already defined");
     }
   }
 
@@ -47,172 +72,171 @@ public class SymbolTable {
       // Check if new class was previously defined
       if (!this.classes.containsKey(className)) {
         Class newClass = new Class(className,parentClass,isMainClass);
+        newClass.setId(this.classesList.size());
         this.classes.put(className, newClass);
         this.classesList.add(newClass);
       } else {
-        throw new Exception("The type " + className + " is already defined");
+        throw new SemanticException(ErrorCode.DUPLICATE_CLASS, "The type " + className + " is already defined");
       }
     } else {
       // Implicit declaration of parent class
-      throw new Exception(parentClassName + " cannot be resolved to a type");
+      throw new SemanticException(ErrorCode.UNDEFINED_TYPE, parentClassName + " cannot be resolved to a type");
     }
   }
 
-  // Inserts variable in last declared class
-  public void varDeclaration(String type,String name,String scope) throws Exception {
-    String[] scopeArgs = scope.split(":");
-    // Get scope type
-    if (scopeArgs.length == 2) {
-      // Method
-      String className = scopeArgs[0];
-      String methodName = scopeArgs[1];
-      if (this.classes.containsKey(className)) {
-        Class classObj = this.classes.get(className);
-        Method method = classObj.getMethod(methodName);
-        if (method != null) {
-          method.insertVariable(new Variable(type, name));
-        } 
-      } 
-    } else if (scopeArgs.length == 1) {
-      // Class
-      String className = scopeArgs[0];
-      if (this.classes.containsKey(className)) {
-        this.classes.get(className).insertVariable(type, name);
-      } 
-    } 
-  }
-
-  // Insert method in last declared class
-  public void methodDeclaration(String returnType,String name,String className) throws Exception{
-    // Get class obj from name
-    if (this.classes.containsKey(className)) {
-      Class classObj = this.classes.get(className);
-      classObj.insertMethod(returnType, name, this.lastParameList);
-      this.lastParameList.clear();
-    } 
+  // Inserts variable in the method or the class of the scope
+  public void varDeclaration(String type,String name,Scope scope) throws Exception {
+    if (scope.getMethod() != null) {
+      scope.getMethod().insertVariable(new Variable(type, name));
+    } else {
+      scope.getOwnClass().insertVariable(type, name);
+    }
+  }
+
+  // Insert method in the class of the scope and return the scope of its body
+  public Scope methodDeclaration(String returnType,String name,Scope scope) throws Exception{
+    Class classObj = scope.getOwnClass();
+    // The parameters belong to this method even if it is rejected
+    ArrayList<Variable> args = new ArrayList<Variable>(this.lastParameList);
+    this.lastParameList.clear();
+    classObj.insertMethod(returnType, name, args);
+    return classObj.getMethod(name).getScope();
   }
 
   public void formalParameterDeclaration(String type,String name) {
     this.lastParameList.add(new Variable(type, name));
   }
 
-  public void checkVarDeclaration(String scope) throws Exception {
-    String[] scopeArgs = scope.split(":");
-    Variable var;
-    if (scopeArgs.length == 3) {
-      // Variable's scope is inside method(local variable)
-      String className = scopeArgs[0];
-      String methodName = scopeArgs[1];
-      String variableName = scopeArgs[2];
-      var = this.classes.get(className).getMethod(methodName).getVariable(variableName);
-    } else if (scopeArgs.length == 2) {
-      // Variable's scope is inside class(field)
-      String className = scopeArgs[0];
-      String fieldName = scopeArgs[1];
-      var = this.classes.get(className).getVariable(fieldName);
-    } else {
-      return;
-    }
-    // Class type not defined
-    if (!Utils.isPrimitiveType(var.getType()) && !this.classes.containsKey(var.getType())) {
-      throw new Exception(scope + " cannot be resolved to a type");
+  public void checkVarDeclaration(String name,Scope scope) throws Exception {
+    // Local variable if the scope is a method, field otherwise
+    Variable var = scope.getMethod() != null ? scope.getMethod().getVariable(name) : scope.getOwnClass().getVariable(name);
+    // Class type not defined. The uses of the variable are not reported again when errors are collected
+    if (this.resolveType(var) == Type.ERROR) {
+      throw new SemanticException(ErrorCode.UNDEFINED_TYPE, scope + ":" + name + " cannot be resolved to a type");
     }
   }
 
-  // Return values:int,boolean,int[],boolean[],<class name>,null
-  public String getExpressionType(String expr,String scope) throws Exception {
-    // Primitive or class type
-    if (Utils.isPrimitiveType(expr) || this.classes.containsKey(expr)) {
-      return expr;
-    }
-    // true or false is boolean
-    if (expr.equals("true") || expr.equals("false")) {
-      return "boolean";
-    }
-    // Numbers are int
-    if (Utils.isNumericType(expr)) {
-      return "int";
+  // Returns the type with the given name or null if no such type is declared
+  public Type getType(String name) {
+    switch (name) {
+      case "int":
+        return Type.INT;
+      case "boolean":
+        return Type.BOOLEAN;
+      case "int[]":
+        return Type.INT_ARRAY;
+      case "boolean[]":
+        return Type.BOOLEAN_ARRAY;
+      case "String[]":
+        return Type.STRING_ARRAY;
+      default:
+        Class cl = this.classes.get(name);
+        this.addDependency(cl);
+        return cl != null ? cl.getType() : null;
     }
-    // this literal is scope's class type
-    if (expr.equals("this")) {
-      String scopeClass = scope.split(":")[0];
-      return scopeClass;
-    }
-    // If expression is identifier(variable) search the symbol table to find it's type
-    String scopeArgs[] = scope.split(":");
-    Variable var = null;
-    String scopeClass = scopeArgs[0];
-    if (scopeArgs.length == 2) {
-      // Expression's scope is inside method
-      String scopeMethod = scopeArgs[1]; 
-      // Search method first
-      if (this.classes.containsKey(scopeClass)) {
-        var = this.classes.get(scopeClass).getMethod(scopeMethod).getVariable(expr);
-      }
-    }
-    // Otherwise search class and it's parent classes (Class::getVariable(String) does that)
-    if (var == null) {
-      var = this.classes.containsKey(scopeClass) ? this.classes.get(scopeClass).getVariable(expr) : null;
+  }
+
+  // Type of a variable, Type.ERROR if its class is not declared. It is looked up once and then kept in the variable
+  public Type resolveType(Variable var) {
+    if (var.getResolvedType() == null) {
+      Type type = this.getType(var.getType());
+      var.setResolvedType(type != null ? type : Type.ERROR);
+    } else if (var.getResolvedType() instanceof ClassType) {
+      this.addDependency(((ClassType)var.getResolvedType()).getClassObj());
     }
+    return var.getResolvedType();
+  }
+
+  // Variable with the given name: searches the method first and then the class and it's parent classes
+  public Variable getVariable(String name,Scope scope) throws Exception {
+    Variable var = scope.lookup(name);
     if (var == null) {
-      throw new Exception(expr + " field in scope " + scope + " cannot be resolved to a variable");
+      throw new SemanticException(ErrorCode.UNDEFINED_VARIABLE, name + " field in scope " + scope + " cannot be resolved to a variable");
     }
-    return var.getType();
+    return var;
   }
 
   // type1: male (sender) type2:female (receiver)
-  public boolean checkTypeMatch(String type1,String type2) {
-    if (!Utils.isPrimitiveType(type1)) {
-      Class type1Class = this.classes.get(type1);
-      return type1Class.checkType(type2);
-    } else {
-      return type1.equals(type2);
-    }
+  public boolean checkTypeMatch(Type type1,Type type2) {
+    return type1 == Type.ERROR || type2 == Type.ERROR || type1.isSubtypeOf(type2);
   }
 
-  public String checkMessageSend(String obj,String methodName,String args,String scope) throws Exception{
-    String objType = this.getExpressionType(obj, scope);
+  // Method called by a message send. obj is the text of the receiver expression and args the types of the arguments.
+  // Returns null if the type of the receiver has an error that was already reported
+  public Method checkMessageSend(Type objType,String obj,String methodName,ArrayList<Type> args,Scope scope) throws Exception{
     // Check if obj is class type
     Method method;
-    if (!Utils.isPrimitiveType(objType)) {
-      Class objClass = this.classes.get(objType);
-      // Check if obj class has the wanted method
-      method = objClass.getMethod(methodName);
-      if (method == null) {
-        method = objClass.getMethodRecursively(methodName);
-      }
+    if (objType == Type.ERROR) {
+      return null;
+    } else if (objType instanceof ClassType) {
+      Class objClass = ((ClassType)objType).getClassObj();
+      this.addDependency(objClass);
+      // Check if obj class or one of its parents has the wanted method
+      method = objClass.getMethodRecursively(methodName);
       if (method != null) {
         // Check if # of arguments in both methods is the same
-        String[] argsArr = args != null ? args.split(",") : new String[0];
-        if (argsArr.length == method.argc()) {
+        if (args.size() == method.argc()) {
           // Typecheck method's arguments
           for (int i = 0;i < method.argc();i++) {
-            if (!this.checkTypeMatch(this.getExpressionType(argsArr[i], scope), method.getNthArgument(i).getType())) {
-              throw new Exception("Call arguments in method call " + obj + "." + methodName + " in scope " + scope + " do not match it's declared arguments");
+            if (!this.checkTypeMatch(args.get(i), this.resolveType(method.getNthArgument(i)))) {
+              throw new SemanticException(ErrorCode.ARGUMENT_MISMATCH, "Call arguments in method call " + obj + "." + methodName + " in scope " + scope + " do not match it's declared arguments");
             }
           }
         } else {
-          throw new Exception("Call arguments in method call " + obj + "." + methodName + " in scope " + scope + " do not match it's declared arguments");
+          throw new SemanticException(ErrorCode.ARGUMENT_MISMATCH, "Call arguments in method call " + obj + "." + methodName + " in scope " + scope + " do not match it's declared arguments");
         }
       } else {
-        throw new Exception(obj + " does not have any method with name " + methodName);
+        throw new SemanticException(ErrorCode.UNDEFINED_METHOD, obj + " does not have any method with name " + methodName);
       }
     } else {
-      throw new Exception(objType + " type does not have any properties or methods");
+      throw new SemanticException(ErrorCode.NOT_AN_OBJECT, objType + " type does not have any properties or methods");
+    }
+    return method;
+  }
+
+  // Type of the value a method returns, Type.ERROR if its class is not declared (reported at the method's declaration,
+  // which may not be checked yet). It is looked up once and then kept in the method
+  public Type getReturnType(Method method) {
+    if (method.getResolvedReturnType() == null) {
+      Type type = this.getType(method.getReturnType());
+      method.setResolvedReturnType(type != null ? type : Type.ERROR);
+    } else if (method.getResolvedReturnType() instanceof ClassType) {
+      this.addDependency(((ClassType)method.getResolvedReturnType()).getClassObj());
+    }
+    return method.getResolvedReturnType();
+  }
+
+  // The return type and the types of the arguments of the method must be declared
+  public void checkReturnType(Method method) throws Exception {
+    if (this.getReturnType(method) == Type.ERROR) {
+      throw new SemanticException(ErrorCode.UNDEFINED_TYPE, method.getReturnType() + " cannot be resolved to a type");
+    }
+  }
+
+  public void checkArgumentDeclaration(Variable arg) throws Exception {
+    if (this.resolveType(arg) == Type.ERROR) {
+      throw new SemanticException(ErrorCode.UNDEFINED_TYPE, arg.getType() + " cannot be resolved to a type");
     }
-    return method.getReturnType();
   }
 
   public void checkAllocation(String identifier) throws Exception {
     if (!this.classes.containsKey(identifier)) {
-      throw new Exception(identifier + " cannot be resolved to a type");
+      throw new SemanticException(ErrorCode.UNDEFINED_TYPE, identifier + " cannot be resolved to a type");
+    }
+    this.addDependency(this.classes.get(identifier));
+  }
+
+  // Freezes the lookup tables of every class, parents first. Called once every class has been inserted
+  public void freeze() {
+    for (Class cl : this.classesList) {
+      cl.freeze();
     }
   }
 
-  public void printOffsetTables() {
+  public void printOffsetTables(PrintStream out) {
     this.classesList.forEach(cl -> {
       if (!cl.isMainClass()) {
-        cl.printOffsetTable();
+        cl.printOffsetTable(out);
       }
     });
   }
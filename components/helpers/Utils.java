@@ -19,19 +19,6 @@ public class Utils {
     }
   }
 
-  public static final boolean isPrimitiveType(String type) {
-    switch (type) {
-      case "boolean":
-      case "int":
-      case "boolean[]":
-      case "int[]":
-      case "String[]":
-      return true;
-      default:
-      return false;
-    }
-  }
-
   public static final boolean isNumericType(String expr) throws Exception{
     if (expr == null) {
       return false;
@@ -40,7 +27,7 @@ public class Utils {
       try {
         Integer.parseInt(expr);
       } catch (NumberFormatException e) {
-        throw new Exception("The integer literal: " + expr + " is invalid.");
+        throw new SemanticException(ErrorCode.INVALID_LITERAL, "The integer literal: " + expr + " is invalid.");
       }
       return true;
     } else {
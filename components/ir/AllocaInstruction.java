@@ -0,0 +1,21 @@
+package components.ir;
+
+// Reserves a stack slot for a value of the allocated type
+public class AllocaInstruction extends Instruction {
+  private String allocatedType;
+
+  public AllocaInstruction(String allocatedType,String name) {
+    super(Opcode.ALLOCA, allocatedType + "*", name);
+    this.allocatedType = allocatedType;
+  }
+
+  public String getAllocatedType() {
+    return this.allocatedType;
+  }
+
+  // For slots whose size is only known once the rest of the function is generated
+  public void setAllocatedType(String allocatedType) {
+    this.allocatedType = allocatedType;
+    this.type = allocatedType + "*";
+  }
+}
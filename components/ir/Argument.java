@@ -0,0 +1,15 @@
+package components.ir;
+
+// Parameter of a function
+public class Argument extends Value {
+  private Function parent;
+
+  public Argument(String type,String name,Function parent) {
+    super(type, name);
+    this.parent = parent;
+  }
+
+  public Function getParent() {
+    return this.parent;
+  }
+}
@@ -0,0 +1,56 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// Straight line sequence of instructions that ends with a terminator (br or ret)
+public class BasicBlock extends Value {
+  private String label;
+  private Function parent;
+  private ArrayList<Instruction> instructions;
+
+  public BasicBlock(String label,Function parent) {
+    super("label", "%" + label);
+    this.label = label;
+    this.parent = parent;
+    this.instructions = new ArrayList<Instruction>();
+  }
+
+  public String getLabel() {
+    return this.label;
+  }
+
+  public Function getParent() {
+    return this.parent;
+  }
+
+  public ArrayList<Instruction> getInstructions() {
+    return this.instructions;
+  }
+
+  public void append(Instruction instruction) {
+    instruction.setParent(this);
+    this.instructions.add(instruction);
+  }
+
+  public void insert(int index,Instruction instruction) {
+    instruction.setParent(this);
+    this.instructions.add(index, instruction);
+  }
+
+  // Returns the last instruction if it is a terminator, null otherwise
+  public Instruction getTerminator() {
+    if (this.instructions.isEmpty()) {
+      return null;
+    }
+    Instruction last = this.instructions.get(this.instructions.size() - 1);
+    return last.isTerminator() ? last : null;
+  }
+
+  public ArrayList<BasicBlock> getSuccessors() {
+    Instruction terminator = this.getTerminator();
+    if (terminator instanceof BranchInstruction) {
+      return ((BranchInstruction)terminator).getSuccessors();
+    }
+    return new ArrayList<BasicBlock>();
+  }
+}
@@ -0,0 +1,19 @@
+package components.ir;
+
+// Arithmetic and bitwise instructions (add, sub, mul, and, or, xor, shl, lshr)
+public class BinaryInstruction extends Instruction {
+
+  public BinaryInstruction(Opcode opcode,String type,Value lhs,Value rhs,String name) {
+    super(opcode, type, name);
+    this.operands.add(lhs);
+    this.operands.add(rhs);
+  }
+
+  public Value getLhs() {
+    return this.operands.get(0);
+  }
+
+  public Value getRhs() {
+    return this.operands.get(1);
+  }
+}
@@ -0,0 +1,38 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// Unconditional (br label %target) or conditional (br i1 %cond, label %ifTrue, label %ifFalse) branch
+public class BranchInstruction extends Instruction {
+  private ArrayList<BasicBlock> successors;
+
+  public BranchInstruction(BasicBlock target) {
+    super(Opcode.BR, "void", null);
+    this.successors = new ArrayList<BasicBlock>();
+    this.successors.add(target);
+  }
+
+  public BranchInstruction(Value condition,BasicBlock ifTrue,BasicBlock ifFalse) {
+    super(Opcode.BR, "void", null);
+    this.operands.add(condition);
+    this.successors = new ArrayList<BasicBlock>();
+    this.successors.add(ifTrue);
+    this.successors.add(ifFalse);
+  }
+
+  public boolean isConditional() {
+    return !this.operands.isEmpty();
+  }
+
+  public Value getCondition() {
+    return this.operands.get(0);
+  }
+
+  public ArrayList<BasicBlock> getSuccessors() {
+    return this.successors;
+  }
+
+  public BasicBlock getSuccessor(int n) {
+    return this.successors.get(n);
+  }
+}
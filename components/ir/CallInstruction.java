@@ -0,0 +1,39 @@
+package components.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Direct call of a function or indirect call through a function pointer. The callee is the first operand
+public class CallInstruction extends Instruction {
+
+  public CallInstruction(String returnType,Value callee,List<Value> arguments,String name) {
+    super(Opcode.CALL, returnType, returnType.equals("void") ? null : name);
+    this.operands.add(callee);
+    this.operands.addAll(arguments);
+  }
+
+  public Value getCallee() {
+    return this.operands.get(0);
+  }
+
+  public void setCallee(Value callee) {
+    this.operands.set(0, callee);
+  }
+
+  // Returns the called function if this is a direct call, null otherwise
+  public Function getCalledFunction() {
+    return this.operands.get(0) instanceof Function ? (Function)this.operands.get(0) : null;
+  }
+
+  public int argc() {
+    return this.operands.size() - 1;
+  }
+
+  public Value getArgument(int n) {
+    return this.operands.get(n + 1);
+  }
+
+  public List<Value> getArguments() {
+    return new ArrayList<Value>(this.operands.subList(1, this.operands.size()));
+  }
+}
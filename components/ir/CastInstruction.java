@@ -0,0 +1,14 @@
+package components.ir;
+
+// bitcast, zext and trunc. The type of the instruction is the type casted to
+public class CastInstruction extends Instruction {
+
+  public CastInstruction(Opcode opcode,Value value,String type,String name) {
+    super(opcode, type, name);
+    this.operands.add(value);
+  }
+
+  public Value getValue() {
+    return this.operands.get(0);
+  }
+}
@@ -0,0 +1,44 @@
+package components.ir;
+
+// Integer comparison (icmp), the result is an i1
+public class CompareInstruction extends Instruction {
+  public enum Predicate {
+    EQ("eq"),
+    NE("ne"),
+    SLT("slt"),
+    SLE("sle"),
+    SGT("sgt"),
+    SGE("sge");
+
+    private String mnemonic;
+
+    private Predicate(String mnemonic) {
+      this.mnemonic = mnemonic;
+    }
+
+    public String getMnemonic() {
+      return this.mnemonic;
+    }
+  }
+
+  private Predicate predicate;
+
+  public CompareInstruction(Predicate predicate,Value lhs,Value rhs,String name) {
+    super(Opcode.ICMP, "i1", name);
+    this.predicate = predicate;
+    this.operands.add(lhs);
+    this.operands.add(rhs);
+  }
+
+  public Predicate getPredicate() {
+    return this.predicate;
+  }
+
+  public Value getLhs() {
+    return this.operands.get(0);
+  }
+
+  public Value getRhs() {
+    return this.operands.get(1);
+  }
+}
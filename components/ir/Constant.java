@@ -0,0 +1,9 @@
+package components.ir;
+
+// Values that are known at compile time
+public abstract class Constant extends Value {
+
+  public Constant(String type,String name) {
+    super(type, name);
+  }
+}
@@ -0,0 +1,34 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// Array of constants, used for the vtables
+public class ConstantArray extends Constant {
+  private String elementType;
+  private ArrayList<Constant> elements;
+
+  public ConstantArray(String elementType,ArrayList<Constant> elements) {
+    super("[" + elements.size() + " x " + elementType + "]", null);
+    this.elementType = elementType;
+    this.elements = elements;
+  }
+
+  public String getElementType() {
+    return this.elementType;
+  }
+
+  public ArrayList<Constant> getElements() {
+    return this.elements;
+  }
+
+  public String getName() {
+    StringBuilder text = new StringBuilder("[");
+    for (int i = 0;i < this.elements.size();i++) {
+      if (i > 0) {
+        text.append(", ");
+      }
+      text.append(this.elementType).append(' ').append(this.elements.get(i).getName());
+    }
+    return text.append(']').toString();
+  }
+}
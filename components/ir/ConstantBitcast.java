@@ -0,0 +1,19 @@
+package components.ir;
+
+// Constant expression that casts a global (for example a function in a vtable) to another pointer type
+public class ConstantBitcast extends Constant {
+  private Value value;
+
+  public ConstantBitcast(Value value,String type) {
+    super(type, null);
+    this.value = value;
+  }
+
+  public Value getValue() {
+    return this.value;
+  }
+
+  public String getName() {
+    return "bitcast (" + this.value.getType() + " " + this.value.getName() + " to " + this.type + ")";
+  }
+}
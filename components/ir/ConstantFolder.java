@@ -0,0 +1,134 @@
+package components.ir;
+
+// Evaluates instructions whose operands are known at compile time. Integers wrap around at the width of their type,
+// like the instructions they replace. Every method returns null when the instruction can't be simplified
+public class ConstantFolder {
+
+  // The result of a binary instruction, either a constant or one of its operands (x + 0, x * 1, true && x, ...)
+  public static Value foldBinary(Opcode opcode,String type,Value lhs,Value rhs) {
+    int width = width(type);
+    if (width == 0) {
+      return null;
+    }
+    if (lhs instanceof ConstantInt && rhs instanceof ConstantInt) {
+      long a = ((ConstantInt)lhs).getValue();
+      long b = ((ConstantInt)rhs).getValue();
+      switch (opcode) {
+        case ADD:
+          return constant(type, a + b);
+        case SUB:
+          return constant(type, a - b);
+        case MUL:
+          return constant(type, a * b);
+        case AND:
+          return constant(type, a & b);
+        case OR:
+          return constant(type, a | b);
+        case XOR:
+          return constant(type, a ^ b);
+        case SHL:
+          return b >= 0 && b < width ? constant(type, a << b) : null;
+        case LSHR:
+          return b >= 0 && b < width ? constant(type, (a & mask(width)) >>> b) : null;
+        default:
+          return null;
+      }
+    }
+    // Identities, with the constant on either side for the commutative operations
+    boolean commutative = opcode == Opcode.ADD || opcode == Opcode.MUL || opcode == Opcode.AND || opcode == Opcode.OR || opcode == Opcode.XOR;
+    if (commutative && lhs instanceof ConstantInt) {
+      Value swapped = lhs;
+      lhs = rhs;
+      rhs = swapped;
+    }
+    if (!(rhs instanceof ConstantInt)) {
+      return null;
+    }
+    long b = ((ConstantInt)rhs).getValue();
+    boolean allOnes = (b & mask(width)) == mask(width);
+    switch (opcode) {
+      case ADD:
+      case SUB:
+      case OR:
+      case XOR:
+      case SHL:
+      case LSHR:
+        return b == 0 ? lhs : (opcode == Opcode.OR && allOnes ? rhs : null);
+      case MUL:
+        return b == 1 ? lhs : (b == 0 ? rhs : null);
+      case AND:
+        return allOnes ? lhs : (b == 0 ? rhs : null);
+      default:
+        return null;
+    }
+  }
+
+  public static ConstantInt foldCompare(CompareInstruction.Predicate predicate,Value lhs,Value rhs) {
+    if (!(lhs instanceof ConstantInt) || !(rhs instanceof ConstantInt)) {
+      return null;
+    }
+    long a = ((ConstantInt)lhs).getValue();
+    long b = ((ConstantInt)rhs).getValue();
+    switch (predicate) {
+      case EQ:
+        return ConstantInt.getBoolean(a == b);
+      case NE:
+        return ConstantInt.getBoolean(a != b);
+      case SLT:
+        return ConstantInt.getBoolean(a < b);
+      case SLE:
+        return ConstantInt.getBoolean(a <= b);
+      case SGT:
+        return ConstantInt.getBoolean(a > b);
+      case SGE:
+        return ConstantInt.getBoolean(a >= b);
+      default:
+        return null;
+    }
+  }
+
+  // zext and trunc of a constant. bitcasts only apply to pointers, which are never constant integers
+  public static ConstantInt foldCast(Opcode opcode,Value value,String type) {
+    if (!(value instanceof ConstantInt) || width(type) == 0 || width(value.getType()) == 0) {
+      return null;
+    }
+    long v = ((ConstantInt)value).getValue();
+    switch (opcode) {
+      case ZEXT:
+        return constant(type, v & mask(width(value.getType())));
+      case TRUNC:
+        return constant(type, v);
+      default:
+        return null;
+    }
+  }
+
+  // Constants keep their value sign extended from the width of their type, as the printer writes them
+  private static ConstantInt constant(String type,long value) {
+    int width = width(type);
+    if (width == 1) {
+      return new ConstantInt(type, value & 1);
+    }
+    return new ConstantInt(type, width == 64 ? value : value << (64 - width) >> (64 - width));
+  }
+
+  private static long mask(int width) {
+    return width == 64 ? -1L : (1L << width) - 1;
+  }
+
+  // Width in bits of an integer type or 0 if the type is not an integer
+  private static int width(String type) {
+    switch (type) {
+      case "i1":
+        return 1;
+      case "i8":
+        return 8;
+      case "i32":
+        return 32;
+      case "i64":
+        return 64;
+      default:
+        return 0;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package components.ir;
+
+// Integer constant of type i1, i8, i32 or i64
+public class ConstantInt extends Constant {
+  private long value;
+
+  public ConstantInt(String type,long value) {
+    super(type, Long.toString(value));
+    this.value = value;
+  }
+
+  public static ConstantInt getInt(int value) {
+    return new ConstantInt("i32", value);
+  }
+
+  public static ConstantInt getBoolean(boolean value) {
+    return new ConstantInt("i1", value ? 1 : 0);
+  }
+
+  public long getValue() {
+    return this.value;
+  }
+}
@@ -0,0 +1,9 @@
+package components.ir;
+
+// The null pointer of a pointer type
+public class ConstantNull extends Constant {
+
+  public ConstantNull(String type) {
+    super(type, "null");
+  }
+}
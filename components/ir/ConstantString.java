@@ -0,0 +1,31 @@
+package components.ir;
+
+// Null terminated character array, used for the format strings of the runtime
+public class ConstantString extends Constant {
+  private String value;
+
+  public ConstantString(String value) {
+    super("[" + (value.length() + 1) + " x i8]", null);
+    this.value = value;
+  }
+
+  public String getValue() {
+    return this.value;
+  }
+
+  public String getName() {
+    if (this.name == null) {
+      StringBuilder text = new StringBuilder("c\"");
+      for (int i = 0;i < this.value.length();i++) {
+        char c = this.value.charAt(i);
+        if (c < 32 || c > 126 || c == '"' || c == '\\') {
+          text.append('\\').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+        } else {
+          text.append(c);
+        }
+      }
+      this.name = text.append("\\00\"").toString();
+    }
+    return this.name;
+  }
+}
@@ -0,0 +1,99 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// Function definition or declaration. As a value it is the address of the function
+public class Function extends Value {
+  private String returnType;
+  private ArrayList<Argument> arguments;
+  private ArrayList<BasicBlock> blocks;
+  private boolean isVarArg;
+
+  public Function(String returnType,String name) {
+    super(null, "@" + name);
+    this.returnType = returnType;
+    this.arguments = new ArrayList<Argument>();
+    this.blocks = new ArrayList<BasicBlock>();
+    this.isVarArg = false;
+  }
+
+  public String getReturnType() {
+    return this.returnType;
+  }
+
+  // Function pointer type, for example i32 (i8*, i32)*
+  public String getType() {
+    if (this.type == null) {
+      this.type = this.getSignature() + "*";
+    }
+    return this.type;
+  }
+
+  // Function type, for example i32 (i8*, i32)
+  public String getSignature() {
+    StringBuilder signature = new StringBuilder(this.returnType).append(" (");
+    for (int i = 0;i < this.arguments.size();i++) {
+      if (i > 0) {
+        signature.append(", ");
+      }
+      signature.append(this.arguments.get(i).getType());
+    }
+    if (this.isVarArg) {
+      signature.append(this.arguments.isEmpty() ? "..." : ", ...");
+    }
+    return signature.append(')').toString();
+  }
+
+  // Name of the function without the leading @
+  public String getFunctionName() {
+    return this.name.substring(1);
+  }
+
+  public Argument addArgument(String type,String name) {
+    Argument argument = new Argument(type, name, this);
+    this.arguments.add(argument);
+    this.type = null;
+    return argument;
+  }
+
+  public ArrayList<Argument> getArguments() {
+    return this.arguments;
+  }
+
+  public boolean isVarArg() {
+    return this.isVarArg;
+  }
+
+  public void setVarArg(boolean isVarArg) {
+    this.isVarArg = isVarArg;
+    this.type = null;
+  }
+
+  // Functions without basic blocks are declarations of external functions
+  public boolean isDeclaration() {
+    return this.blocks.isEmpty();
+  }
+
+  public ArrayList<BasicBlock> getBlocks() {
+    return this.blocks;
+  }
+
+  public BasicBlock getEntryBlock() {
+    return this.blocks.get(0);
+  }
+
+  public BasicBlock addBlock(String label) {
+    BasicBlock block = new BasicBlock(label, this);
+    this.blocks.add(block);
+    return block;
+  }
+
+  // Number of instructions in the function's body
+  public int instructionCount() {
+    int count = 0;
+    for (BasicBlock block : this.blocks) {
+      count += block.getInstructions().size();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,31 @@
+package components.ir;
+
+// Address computation. The first index steps over whole elements of the source element type
+public class GetElementPtrInstruction extends Instruction {
+  private String sourceElementType;
+
+  public GetElementPtrInstruction(String sourceElementType,String type,Value pointer,Value[] indices,String name) {
+    super(Opcode.GETELEMENTPTR, type, name);
+    this.sourceElementType = sourceElementType;
+    this.operands.add(pointer);
+    for (Value index : indices) {
+      this.operands.add(index);
+    }
+  }
+
+  public String getSourceElementType() {
+    return this.sourceElementType;
+  }
+
+  public Value getPointer() {
+    return this.operands.get(0);
+  }
+
+  public int getIndexCount() {
+    return this.operands.size() - 1;
+  }
+
+  public Value getIndex(int n) {
+    return this.operands.get(n + 1);
+  }
+}
@@ -0,0 +1,25 @@
+package components.ir;
+
+// Module level variable. As a value it is the address of the variable
+public class GlobalVariable extends Value {
+  private Constant initializer;
+  private boolean isConstant;
+
+  public GlobalVariable(String name,Constant initializer,boolean isConstant) {
+    super(initializer.getType() + "*", "@" + name);
+    this.initializer = initializer;
+    this.isConstant = isConstant;
+  }
+
+  public Constant getInitializer() {
+    return this.initializer;
+  }
+
+  public String getValueType() {
+    return this.initializer.getType();
+  }
+
+  public boolean isConstant() {
+    return this.isConstant;
+  }
+}
@@ -0,0 +1,120 @@
+package components.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Creates instructions at the end of the current basic block. Result registers are named %_0, %_1, ...
+// With folding enabled, instructions whose result is known at compile time are not emitted and the known value is
+// returned instead (see ConstantFolder), and conditional branches on a constant become unconditional
+public class IRBuilder {
+  private Function function;
+  private BasicBlock block;
+  private int registerCounter;
+  private boolean folding;
+
+  public IRBuilder() {
+    this.function = null;
+    this.block = null;
+    this.registerCounter = 0;
+    this.folding = false;
+  }
+
+  public void setFolding(boolean folding) {
+    this.folding = folding;
+  }
+
+  public String newRegisterName() {
+    return "%_" + this.registerCounter++;
+  }
+
+  // Names the registers of the next function from %_0 again
+  public void resetRegisterNames() {
+    this.registerCounter = 0;
+  }
+
+  public Function getFunction() {
+    return this.function;
+  }
+
+  public BasicBlock getBlock() {
+    return this.block;
+  }
+
+  // Continue emitting at the end of the given block
+  public void setBlock(BasicBlock block) {
+    this.block = block;
+    this.function = block.getParent();
+  }
+
+  private <T extends Instruction> T insert(T instruction) {
+    this.block.append(instruction);
+    return instruction;
+  }
+
+  public AllocaInstruction alloca(String allocatedType,String name) {
+    return insert(new AllocaInstruction(allocatedType, name));
+  }
+
+  public LoadInstruction load(String type,Value pointer) {
+    return insert(new LoadInstruction(type, pointer, newRegisterName()));
+  }
+
+  public StoreInstruction store(Value value,Value pointer) {
+    return insert(new StoreInstruction(value, pointer));
+  }
+
+  public Value binary(Opcode opcode,String type,Value lhs,Value rhs) {
+    Value folded = this.folding ? ConstantFolder.foldBinary(opcode, type, lhs, rhs) : null;
+    if (folded != null) {
+      return folded;
+    }
+    return insert(new BinaryInstruction(opcode, type, lhs, rhs, newRegisterName()));
+  }
+
+  public Value icmp(CompareInstruction.Predicate predicate,Value lhs,Value rhs) {
+    Value folded = this.folding ? ConstantFolder.foldCompare(predicate, lhs, rhs) : null;
+    if (folded != null) {
+      return folded;
+    }
+    return insert(new CompareInstruction(predicate, lhs, rhs, newRegisterName()));
+  }
+
+  public GetElementPtrInstruction gep(String sourceElementType,String type,Value pointer,Value... indices) {
+    return insert(new GetElementPtrInstruction(sourceElementType, type, pointer, indices, newRegisterName()));
+  }
+
+  public Value cast(Opcode opcode,Value value,String type) {
+    Value folded = this.folding ? ConstantFolder.foldCast(opcode, value, type) : null;
+    if (folded != null) {
+      return folded;
+    }
+    return insert(new CastInstruction(opcode, value, type, newRegisterName()));
+  }
+
+  public CallInstruction call(String returnType,Value callee,Value... arguments) {
+    return insert(new CallInstruction(returnType, callee, Arrays.asList(arguments), newRegisterName()));
+  }
+
+  public CallInstruction call(String returnType,Value callee,ArrayList<Value> arguments) {
+    return insert(new CallInstruction(returnType, callee, arguments, newRegisterName()));
+  }
+
+  public PhiInstruction phi(String type) {
+    return insert(new PhiInstruction(type, newRegisterName()));
+  }
+
+  public BranchInstruction br(BasicBlock target) {
+    return insert(new BranchInstruction(target));
+  }
+
+  public BranchInstruction condBr(Value condition,BasicBlock ifTrue,BasicBlock ifFalse) {
+    if (this.folding && condition instanceof ConstantInt) {
+      return br(((ConstantInt)condition).getValue() != 0 ? ifTrue : ifFalse);
+    }
+    return insert(new BranchInstruction(condition, ifTrue, ifFalse));
+  }
+
+  public ReturnInstruction ret(Value value) {
+    return insert(new ReturnInstruction(value));
+  }
+}
@@ -0,0 +1,192 @@
+package components.ir;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import components.helpers.IRWriter;
+
+// Serializes a module to LLVM IR text
+public class IRPrinter {
+  private IRWriter out;
+
+  public IRPrinter(IRWriter out) {
+    this.out = out;
+  }
+
+  public void print(Module module) throws IOException {
+    this.print(module, new HashMap<Function,String>());
+  }
+
+  // Prints the given text for the functions of bodies instead of printing them, for example code generated by an earlier compilation
+  public void print(Module module,Map<Function,String> bodies) throws IOException {
+    for (GlobalVariable global : module.getGlobals()) {
+      this.out.append(global.getName()).append(global.isConstant() ? " = constant " : " = global ").append(global.getValueType()).append(' ');
+      printConstant(global.getInitializer());
+      this.out.newline();
+    }
+    this.out.newline();
+    for (Function function : module.getFunctions()) {
+      if (function.isDeclaration() && !bodies.containsKey(function)) {
+        printDeclaration(function);
+      }
+    }
+    this.out.newline();
+    for (Function function : module.getFunctions()) {
+      if (bodies.containsKey(function)) {
+        this.out.append(bodies.get(function));
+      } else if (!function.isDeclaration()) {
+        printFunction(function);
+      }
+    }
+  }
+
+  private void printConstant(Constant constant) throws IOException {
+    if (constant instanceof ConstantArray) {
+      ConstantArray array = (ConstantArray)constant;
+      this.out.append('[');
+      for (int i = 0;i < array.getElements().size();i++) {
+        if (i > 0) {
+          this.out.append(", ");
+        }
+        this.out.append(array.getElementType()).append(' ');
+        printConstant(array.getElements().get(i));
+      }
+      this.out.append(']');
+    } else if (constant instanceof ConstantBitcast) {
+      Value value = ((ConstantBitcast)constant).getValue();
+      this.out.append("bitcast (").append(value.getType()).append(' ').append(value.getName()).append(" to ").append(constant.getType()).append(')');
+    } else {
+      this.out.append(constant.getName());
+    }
+  }
+
+  private void printDeclaration(Function function) throws IOException {
+    this.out.append("declare ").append(function.getReturnType()).append(' ').append(function.getName()).append('(');
+    for (int i = 0;i < function.getArguments().size();i++) {
+      if (i > 0) {
+        this.out.append(", ");
+      }
+      this.out.append(function.getArguments().get(i).getType());
+    }
+    if (function.isVarArg()) {
+      this.out.append(function.getArguments().isEmpty() ? "..." : ", ...");
+    }
+    this.out.append(')').newline();
+  }
+
+  public void printFunction(Function function) throws IOException {
+    this.out.append("define ").append(function.getReturnType()).append(' ').append(function.getName()).append('(');
+    for (int i = 0;i < function.getArguments().size();i++) {
+      Argument argument = function.getArguments().get(i);
+      if (i > 0) {
+        this.out.append(", ");
+      }
+      this.out.append(argument.getType()).append(' ').append(argument.getName());
+    }
+    this.out.append(") {").newline();
+    for (BasicBlock block : function.getBlocks()) {
+      this.out.append(block.getLabel()).append(':').newline();
+      for (Instruction instruction : block.getInstructions()) {
+        this.out.append('\t');
+        printInstruction(instruction);
+        this.out.newline();
+      }
+    }
+    this.out.append('}').newline().newline();
+  }
+
+  // Writes the type and the name of an operand, for example "i32 %_3"
+  private void printOperand(Value value) throws IOException {
+    this.out.append(value.getType()).append(' ').append(value.getName());
+  }
+
+  private void printInstruction(Instruction instruction) throws IOException {
+    if (instruction.hasResult()) {
+      this.out.append(instruction.getName()).append(" = ");
+    }
+    this.out.append(instruction.getOpcode().getMnemonic()).append(' ');
+    switch (instruction.getOpcode()) {
+      case ALLOCA:
+        this.out.append(((AllocaInstruction)instruction).getAllocatedType());
+        break;
+      case LOAD:
+        this.out.append(instruction.getType()).append(", ");
+        printOperand(instruction.getOperand(0));
+        break;
+      case STORE:
+        printOperand(instruction.getOperand(0));
+        this.out.append(", ");
+        printOperand(instruction.getOperand(1));
+        break;
+      case ICMP:
+        this.out.append(((CompareInstruction)instruction).getPredicate().getMnemonic()).append(' ');
+        printOperand(instruction.getOperand(0));
+        this.out.append(", ").append(instruction.getOperand(1).getName());
+        break;
+      case GETELEMENTPTR:
+        this.out.append(((GetElementPtrInstruction)instruction).getSourceElementType());
+        for (Value operand : instruction.getOperands()) {
+          this.out.append(", ");
+          printOperand(operand);
+        }
+        break;
+      case BITCAST:
+      case ZEXT:
+      case TRUNC:
+        printOperand(instruction.getOperand(0));
+        this.out.append(" to ").append(instruction.getType());
+        break;
+      case CALL:
+        printCall((CallInstruction)instruction);
+        break;
+      case PHI:
+        PhiInstruction phi = (PhiInstruction)instruction;
+        this.out.append(phi.getType());
+        for (int i = 0;i < phi.getIncomingCount();i++) {
+          this.out.append(i > 0 ? ", [" : " [").append(phi.getIncomingValue(i).getName()).append(", ").append(phi.getIncomingBlock(i).getName()).append(']');
+        }
+        break;
+      case BR:
+        BranchInstruction branch = (BranchInstruction)instruction;
+        if (branch.isConditional()) {
+          printOperand(branch.getCondition());
+          this.out.append(", label ").append(branch.getSuccessor(0).getName()).append(", label ").append(branch.getSuccessor(1).getName());
+        } else {
+          this.out.append("label ").append(branch.getSuccessor(0).getName());
+        }
+        break;
+      case RET:
+        Value value = ((ReturnInstruction)instruction).getValue();
+        if (value != null) {
+          printOperand(value);
+        } else {
+          this.out.append("void");
+        }
+        break;
+      default:
+        // Binary instructions
+        printOperand(instruction.getOperand(0));
+        this.out.append(", ").append(instruction.getOperand(1).getName());
+        break;
+    }
+  }
+
+  private void printCall(CallInstruction call) throws IOException {
+    Function function = call.getCalledFunction();
+    // Calls of variadic functions need the full function type
+    if (function != null && function.isVarArg()) {
+      this.out.append(function.getSignature());
+    } else {
+      this.out.append(call.getType());
+    }
+    this.out.append(' ').append(call.getCallee().getName()).append('(');
+    for (int i = 0;i < call.argc();i++) {
+      if (i > 0) {
+        this.out.append(", ");
+      }
+      printOperand(call.getArgument(i));
+    }
+    this.out.append(')');
+  }
+}
@@ -0,0 +1,63 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// An instruction of a basic block. Instructions that produce a result are used as values through their result register
+public abstract class Instruction extends Value {
+  protected Opcode opcode;
+  protected ArrayList<Value> operands;
+  private BasicBlock parent;
+
+  public Instruction(Opcode opcode,String type,String name) {
+    super(type, name);
+    this.opcode = opcode;
+    this.operands = new ArrayList<Value>();
+    this.parent = null;
+  }
+
+  public Opcode getOpcode() {
+    return this.opcode;
+  }
+
+  public BasicBlock getParent() {
+    return this.parent;
+  }
+
+  public void setParent(BasicBlock parent) {
+    this.parent = parent;
+  }
+
+  public ArrayList<Value> getOperands() {
+    return this.operands;
+  }
+
+  public Value getOperand(int index) {
+    return this.operands.get(index);
+  }
+
+  public void setOperand(int index,Value value) {
+    this.operands.set(index, value);
+  }
+
+  // Replaces every use of a value in the operands of this instruction
+  public void replaceUsesOf(Value from,Value to) {
+    for (int i = 0;i < this.operands.size();i++) {
+      if (this.operands.get(i) == from) {
+        this.operands.set(i, to);
+      }
+    }
+  }
+
+  public boolean hasResult() {
+    return !this.type.equals("void");
+  }
+
+  public boolean isTerminator() {
+    return this.opcode == Opcode.BR || this.opcode == Opcode.RET;
+  }
+
+  // Instructions that write memory, transfer control or call other functions can't be removed even if their result is unused
+  public boolean hasSideEffects() {
+    return this.opcode == Opcode.STORE || this.opcode == Opcode.CALL || this.isTerminator();
+  }
+}
@@ -0,0 +1,13 @@
+package components.ir;
+
+public class LoadInstruction extends Instruction {
+
+  public LoadInstruction(String type,Value pointer,String name) {
+    super(Opcode.LOAD, type, name);
+    this.operands.add(pointer);
+  }
+
+  public Value getPointer() {
+    return this.operands.get(0);
+  }
+}
@@ -0,0 +1,71 @@
+package components.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+// A whole translation unit: global variables (vtables, string constants) and functions
+public class Module {
+  private ArrayList<GlobalVariable> globals;
+  private Map<String,GlobalVariable> globalsMap;
+  private ArrayList<Function> functions;
+  private Map<String,Function> functionsMap;
+
+  public Module() {
+    this.globals = new ArrayList<GlobalVariable>();
+    this.globalsMap = new HashMap<String,GlobalVariable>();
+    this.functions = new ArrayList<Function>();
+    this.functionsMap = new HashMap<String,Function>();
+  }
+
+  public ArrayList<GlobalVariable> getGlobals() {
+    return this.globals;
+  }
+
+  public ArrayList<Function> getFunctions() {
+    return this.functions;
+  }
+
+  public GlobalVariable addGlobal(String name,Constant initializer,boolean isConstant) {
+    GlobalVariable global = new GlobalVariable(name, initializer, isConstant);
+    this.globals.add(global);
+    this.globalsMap.put(name, global);
+    return global;
+  }
+
+  public Function addFunction(String returnType,String name) {
+    Function function = new Function(returnType, name);
+    this.functions.add(function);
+    this.functionsMap.put(name, function);
+    return function;
+  }
+
+  // Name without the leading @
+  public Function getFunction(String name) {
+    return this.functionsMap.get(name);
+  }
+
+  // Name without the leading @
+  public GlobalVariable getGlobal(String name) {
+    return this.globalsMap.get(name);
+  }
+
+  public void removeFunction(Function function) {
+    this.functions.remove(function);
+    this.functionsMap.remove(function.getFunctionName());
+  }
+
+  public void removeGlobal(GlobalVariable global) {
+    this.globals.remove(global);
+    this.globalsMap.remove(global.getName().substring(1));
+  }
+
+  // Number of instructions in all function bodies
+  public int instructionCount() {
+    int count = 0;
+    for (Function function : this.functions) {
+      count += function.instructionCount();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,34 @@
+package components.ir;
+
+public enum Opcode {
+  ALLOCA("alloca"),
+  LOAD("load"),
+  STORE("store"),
+  ADD("add"),
+  SUB("sub"),
+  MUL("mul"),
+  AND("and"),
+  OR("or"),
+  XOR("xor"),
+  SHL("shl"),
+  LSHR("lshr"),
+  ICMP("icmp"),
+  GETELEMENTPTR("getelementptr"),
+  BITCAST("bitcast"),
+  ZEXT("zext"),
+  TRUNC("trunc"),
+  CALL("call"),
+  PHI("phi"),
+  BR("br"),
+  RET("ret");
+
+  private String mnemonic;
+
+  private Opcode(String mnemonic) {
+    this.mnemonic = mnemonic;
+  }
+
+  public String getMnemonic() {
+    return this.mnemonic;
+  }
+}
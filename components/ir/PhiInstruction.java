@@ -0,0 +1,45 @@
+package components.ir;
+
+import java.util.ArrayList;
+
+// Selects a value depending on the predecessor block control came from. The incoming values are the operands
+public class PhiInstruction extends Instruction {
+  private ArrayList<BasicBlock> incomingBlocks;
+
+  public PhiInstruction(String type,String name) {
+    super(Opcode.PHI, type, name);
+    this.incomingBlocks = new ArrayList<BasicBlock>();
+  }
+
+  public void addIncoming(Value value,BasicBlock block) {
+    this.operands.add(value);
+    this.incomingBlocks.add(block);
+  }
+
+  public int getIncomingCount() {
+    return this.operands.size();
+  }
+
+  public Value getIncomingValue(int n) {
+    return this.operands.get(n);
+  }
+
+  public BasicBlock getIncomingBlock(int n) {
+    return this.incomingBlocks.get(n);
+  }
+
+  public void setIncomingBlock(int n,BasicBlock block) {
+    this.incomingBlocks.set(n, block);
+  }
+
+  public void removeIncoming(int n) {
+    this.operands.remove(n);
+    this.incomingBlocks.remove(n);
+  }
+
+  // Returns the value that comes from the given block or null if the block is not a predecessor
+  public Value getIncomingValueFor(BasicBlock block) {
+    int index = this.incomingBlocks.indexOf(block);
+    return index >= 0 ? this.operands.get(index) : null;
+  }
+}
@@ -0,0 +1,16 @@
+package components.ir;
+
+public class ReturnInstruction extends Instruction {
+
+  public ReturnInstruction(Value value) {
+    super(Opcode.RET, "void", null);
+    if (value != null) {
+      this.operands.add(value);
+    }
+  }
+
+  // Returns null for ret void
+  public Value getValue() {
+    return this.operands.isEmpty() ? null : this.operands.get(0);
+  }
+}
@@ -0,0 +1,18 @@
+package components.ir;
+
+public class StoreInstruction extends Instruction {
+
+  public StoreInstruction(Value value,Value pointer) {
+    super(Opcode.STORE, "void", null);
+    this.operands.add(value);
+    this.operands.add(pointer);
+  }
+
+  public Value getValue() {
+    return this.operands.get(0);
+  }
+
+  public Value getPointer() {
+    return this.operands.get(1);
+  }
+}
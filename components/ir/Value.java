@@ -0,0 +1,24 @@
+package components.ir;
+
+// Anything that can be used as an operand of an instruction. The name is the way the value is referenced in the IR text
+public abstract class Value {
+  protected String type;
+  protected String name;
+
+  public Value(String type,String name) {
+    this.type = type;
+    this.name = name;
+  }
+
+  public String getType() {
+    return this.type;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public String toString() {
+    return this.getName();
+  }
+}
@@ -0,0 +1,414 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.AllocaInstruction;
+import components.ir.BasicBlock;
+import components.ir.BinaryInstruction;
+import components.ir.BranchInstruction;
+import components.ir.CallInstruction;
+import components.ir.CompareInstruction;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.GetElementPtrInstruction;
+import components.ir.Instruction;
+import components.ir.LoadInstruction;
+import components.ir.Module;
+import components.ir.Opcode;
+import components.ir.PhiInstruction;
+import components.ir.StoreInstruction;
+import components.ir.Value;
+
+// Removes the bounds checks of array accesses whose index is proven to be in [0, length).
+// A bounds check is the block ending with br (and (icmp sge idx, 0), (icmp slt idx, size)) whose failing successor calls throw_oob
+// (only the icmp slt when the index is a constant and folding removed the other comparison).
+// The facts used are the conditions of the branches that dominate the check (loop guards like i < a.length and earlier checks)
+// and the lower bound of induction variables that start from a non negative value and are incremented by 1 under an i < n guard.
+// Needs the locals to be in SSA form (see Mem2Reg) to recognize induction variables.
+public class BoundsCheckElimination {
+  private Set<Function> noReturnFunctions;
+  private Function throwOob;
+  private Set<Function> runtimeFunctions;
+  private Map<Function,Integer> checkCounts;
+  private Map<Function,Integer> removedCounts;
+  // Per function state
+  private DominatorTree domTree;
+  private Map<BasicBlock,ArrayList<CompareInstruction>> factsCache;
+
+  public BoundsCheckElimination(Module module) {
+    this.throwOob = module.getFunction("throw_oob");
+    this.noReturnFunctions = new HashSet<Function>();
+    this.noReturnFunctions.add(this.throwOob);
+    this.noReturnFunctions.add(module.getFunction("throw_nsz"));
+    this.noReturnFunctions.add(module.getFunction("throw_null"));
+    // Calls of the runtime functions never store to the fields of an object
+    this.runtimeFunctions = new HashSet<Function>(this.noReturnFunctions);
+    this.runtimeFunctions.add(module.getFunction("calloc"));
+    this.runtimeFunctions.add(module.getFunction("arena_refill"));
+    this.runtimeFunctions.add(module.getFunction("gc_alloc"));
+    this.runtimeFunctions.add(module.getFunction("gc_enter"));
+    this.runtimeFunctions.add(module.getFunction("print_int"));
+    this.checkCounts = new LinkedHashMap<Function,Integer>();
+    this.removedCounts = new LinkedHashMap<Function,Integer>();
+  }
+
+  public void run(Module module) {
+    for (Function function : module.getFunctions()) {
+      if (!function.isDeclaration() && !this.noReturnFunctions.contains(function)) {
+        this.run(function);
+      }
+    }
+  }
+
+  public void run(Function function) {
+    this.domTree = new DominatorTree(function);
+    this.factsCache = new HashMap<BasicBlock,ArrayList<CompareInstruction>>();
+    // Decide for every check first and rewrite afterwards, so that the facts are read from the original control flow
+    ArrayList<BasicBlock> removable = new ArrayList<BasicBlock>();
+    int checks = 0;
+    for (BasicBlock block : this.domTree.getReversePostorder()) {
+      CompareInstruction condition = this.getBoundsCheck(block);
+      if (condition == null) {
+        continue;
+      }
+      checks++;
+      Value index = condition.getLhs();
+      Value size = condition.getRhs();
+      Value array = IRUtils.stripCasts(((LoadInstruction)size).getPointer());
+      if (this.isBelowLength(index, array, block) && this.isNonNegative(index, block, new HashSet<PhiInstruction>())) {
+        removable.add(block);
+      }
+    }
+    if (checks == 0) {
+      return;
+    }
+    this.checkCounts.put(function, checks);
+    this.removedCounts.put(function, removable.size());
+    if (removable.isEmpty()) {
+      return;
+    }
+    for (BasicBlock block : removable) {
+      BranchInstruction check = (BranchInstruction)block.getTerminator();
+      BranchInstruction jump = new BranchInstruction(check.getSuccessor(0));
+      jump.setParent(block);
+      block.getInstructions().set(block.getInstructions().size() - 1, jump);
+    }
+    // Drop the throwing blocks, the comparisons and the size loads, then join the blocks the checks had split
+    IRUtils.removeUnreachableBlocks(function);
+    IRUtils.removeDeadInstructions(function);
+    IRUtils.mergeBlocks(function);
+  }
+
+  // Returns the index < size comparison of the bounds check that ends the block or null if the block doesn't end with a
+  // bounds check. When the index is a constant, folding leaves only this comparison as the condition
+  private CompareInstruction getBoundsCheck(BasicBlock block) {
+    Instruction terminator = block.getTerminator();
+    if (!(terminator instanceof BranchInstruction) || !((BranchInstruction)terminator).isConditional()) {
+      return null;
+    }
+    BranchInstruction branch = (BranchInstruction)terminator;
+    if (!this.callsFunction(branch.getSuccessor(1), this.throwOob)) {
+      return null;
+    }
+    Value condition = branch.getCondition();
+    CompareInstruction upper;
+    if (condition instanceof BinaryInstruction) {
+      BinaryInstruction and = (BinaryInstruction)condition;
+      if (and.getOpcode() != Opcode.AND || !(and.getLhs() instanceof CompareInstruction) || !(and.getRhs() instanceof CompareInstruction)) {
+        return null;
+      }
+      CompareInstruction lower = (CompareInstruction)and.getLhs();
+      upper = (CompareInstruction)and.getRhs();
+      if (lower.getPredicate() != CompareInstruction.Predicate.SGE || lower.getLhs() != upper.getLhs()) {
+        return null;
+      }
+    } else if (condition instanceof CompareInstruction) {
+      upper = (CompareInstruction)condition;
+    } else {
+      return null;
+    }
+    if (upper.getPredicate() != CompareInstruction.Predicate.SLT || !(upper.getRhs() instanceof LoadInstruction)) {
+      return null;
+    }
+    return upper;
+  }
+
+  private boolean callsFunction(BasicBlock block,Function function) {
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction instanceof CallInstruction && ((CallInstruction)instruction).getCalledFunction() == function) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean callsNoReturnFunction(BasicBlock block) {
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction instanceof CallInstruction && this.noReturnFunctions.contains(((CallInstruction)instruction).getCalledFunction())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Comparisons known to be true at the start of the block
+  private ArrayList<CompareInstruction> getFacts(BasicBlock block) {
+    // Go up the dominator tree until a block with known facts, then fill the facts on the way down
+    ArrayList<BasicBlock> path = new ArrayList<BasicBlock>();
+    BasicBlock current = block;
+    while (!this.factsCache.containsKey(current)) {
+      path.add(current);
+      if (this.domTree.getIdom(current) == current) {
+        break;
+      }
+      current = this.domTree.getIdom(current);
+    }
+    for (int i = path.size() - 1;i >= 0;i--) {
+      BasicBlock pathBlock = path.get(i);
+      BasicBlock idom = this.domTree.getIdom(pathBlock);
+      ArrayList<CompareInstruction> facts = idom == pathBlock ? new ArrayList<CompareInstruction>() : new ArrayList<CompareInstruction>(this.factsCache.get(idom));
+      this.addEdgeFacts(pathBlock, facts);
+      this.factsCache.put(pathBlock, facts);
+    }
+    return this.factsCache.get(block);
+  }
+
+  // A block that is only entered through the true edge of a conditional branch knows that the condition holds.
+  // Predecessors that call throw_oob, throw_nsz or throw_null never fall through, so they are not counted
+  private void addEdgeFacts(BasicBlock block,ArrayList<CompareInstruction> facts) {
+    BasicBlock predecessor = null;
+    for (BasicBlock candidate : this.domTree.getPredecessors(block)) {
+      if (this.callsNoReturnFunction(candidate)) {
+        continue;
+      }
+      if (predecessor != null) {
+        return;
+      }
+      predecessor = candidate;
+    }
+    if (predecessor == null || !(predecessor.getTerminator() instanceof BranchInstruction)) {
+      return;
+    }
+    BranchInstruction branch = (BranchInstruction)predecessor.getTerminator();
+    if (branch.isConditional() && branch.getSuccessor(0) == block && branch.getSuccessor(1) != block) {
+      this.addConditionFacts(branch.getCondition(), facts);
+    }
+  }
+
+  private void addConditionFacts(Value condition,ArrayList<CompareInstruction> facts) {
+    if (condition instanceof CompareInstruction) {
+      facts.add((CompareInstruction)condition);
+    } else if (condition instanceof BinaryInstruction && ((BinaryInstruction)condition).getOpcode() == Opcode.AND) {
+      this.addConditionFacts(((BinaryInstruction)condition).getLhs(), facts);
+      this.addConditionFacts(((BinaryInstruction)condition).getRhs(), facts);
+    }
+  }
+
+  // index < length of array holds at the start of the block
+  private boolean isBelowLength(Value index,Value array,BasicBlock block) {
+    for (CompareInstruction fact : this.getFacts(block)) {
+      if (fact.getPredicate() == CompareInstruction.Predicate.SLT && fact.getLhs() == index && this.isLengthOf(fact.getRhs(), array)) {
+        return true;
+      }
+    }
+    // Constant index in an array allocated with a constant size
+    Value length = this.getAllocatedLength(array);
+    return index instanceof ConstantInt && length instanceof ConstantInt && ((ConstantInt)index).getValue() < ((ConstantInt)length).getValue();
+  }
+
+  // The length of an array is either loaded from its first element or is the size it was allocated with
+  private boolean isLengthOf(Value value,Value array) {
+    if (value instanceof LoadInstruction && value.getType().equals("i32") && this.isSameArray(IRUtils.stripCasts(((LoadInstruction)value).getPointer()), array)) {
+      return true;
+    }
+    return value == this.getAllocatedLength(array);
+  }
+
+  // Two values are the same array if they are the same value, or loads of the same field of this
+  // such that no path from the first load to the second stores to the field or calls a method (which could store to it)
+  private boolean isSameArray(Value first,Value second) {
+    if (first == second) {
+      return true;
+    }
+    int offset = this.getFieldOffset(first);
+    if (offset < 0 || offset != this.getFieldOffset(second)) {
+      return false;
+    }
+    BasicBlock firstBlock = ((Instruction)first).getParent();
+    BasicBlock secondBlock = ((Instruction)second).getParent();
+    if (firstBlock == secondBlock) {
+      ArrayList<Instruction> instructions = firstBlock.getInstructions();
+      int start = instructions.indexOf(first);
+      int end = instructions.indexOf(second);
+      if (start > end) {
+        return false;
+      }
+      for (int i = start + 1;i < end;i++) {
+        if (this.mayStoreToField(instructions.get(i), offset)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (!this.domTree.dominates(firstBlock, secondBlock)) {
+      return false;
+    }
+    // The blocks on the paths are the ones reachable from the first block that also reach the second one
+    Set<BasicBlock> forward = new HashSet<BasicBlock>();
+    ArrayList<BasicBlock> worklist = new ArrayList<BasicBlock>();
+    forward.add(firstBlock);
+    worklist.add(firstBlock);
+    while (!worklist.isEmpty()) {
+      for (BasicBlock successor : worklist.remove(worklist.size() - 1).getSuccessors()) {
+        if (forward.add(successor)) {
+          worklist.add(successor);
+        }
+      }
+    }
+    Set<BasicBlock> backward = new HashSet<BasicBlock>();
+    backward.add(secondBlock);
+    worklist.add(secondBlock);
+    while (!worklist.isEmpty()) {
+      BasicBlock block = worklist.remove(worklist.size() - 1);
+      if (!forward.contains(block)) {
+        continue;
+      }
+      for (Instruction instruction : block.getInstructions()) {
+        if (this.mayStoreToField(instruction, offset)) {
+          return false;
+        }
+      }
+      if (block == firstBlock) {
+        continue;
+      }
+      for (BasicBlock predecessor : this.domTree.getPredecessors(block)) {
+        if (backward.add(predecessor)) {
+          worklist.add(predecessor);
+        }
+      }
+    }
+    return true;
+  }
+
+  // Returns the offset of the field of this that the value is loaded from, or -1
+  private int getFieldOffset(Value value) {
+    if (!(value instanceof LoadInstruction)) {
+      return -1;
+    }
+    return this.getFieldOffsetOfPointer(((LoadInstruction)value).getPointer());
+  }
+
+  // Fields are only accessed through this, at this + offset
+  private int getFieldOffsetOfPointer(Value pointer) {
+    pointer = IRUtils.stripCasts(pointer);
+    if (!(pointer instanceof GetElementPtrInstruction)) {
+      return -1;
+    }
+    GetElementPtrInstruction gep = (GetElementPtrInstruction)pointer;
+    if (gep.getPointer() != gep.getParent().getParent().getArguments().get(0)) {
+      return -1;
+    }
+    return (int)IRUtils.getFieldOffset(gep);
+  }
+
+  // Inlined methods store to the fields of other objects, which may be this as well, so any store at the same offset counts
+  private boolean mayStoreToField(Instruction instruction,int offset) {
+    if (instruction instanceof StoreInstruction) {
+      Value pointer = IRUtils.stripCasts(((StoreInstruction)instruction).getPointer());
+      if (!(pointer instanceof GetElementPtrInstruction)) {
+        return false;
+      }
+      GetElementPtrInstruction gep = (GetElementPtrInstruction)pointer;
+      // Stores to the stack, like the slots of the garbage collector's frame, never store to fields
+      if (IRUtils.stripCasts(gep.getPointer()) instanceof AllocaInstruction) {
+        return false;
+      }
+      return gep.getIndexCount() == 1 && gep.getIndex(0) instanceof ConstantInt && ((ConstantInt)gep.getIndex(0)).getValue() == offset;
+    }
+    if (instruction instanceof CallInstruction) {
+      return !this.runtimeFunctions.contains(((CallInstruction)instruction).getCalledFunction());
+    }
+    return false;
+  }
+
+  // Returns the size of an array allocated in this function (the value stored to its first element right after calloc
+  // or after taking it from the arena) or null
+  private Value getAllocatedLength(Value array) {
+    if (!IRUtils.isAllocation(array)) {
+      return null;
+    }
+    ArrayList<Instruction> instructions = ((Instruction)array).getParent().getInstructions();
+    for (int i = instructions.indexOf(array) + 1;i < instructions.size();i++) {
+      Instruction instruction = instructions.get(i);
+      if (instruction instanceof StoreInstruction && IRUtils.stripCasts(((StoreInstruction)instruction).getPointer()) == array) {
+        Value length = ((StoreInstruction)instruction).getValue();
+        return length.getType().equals("i32") ? length : null;
+      }
+    }
+    return null;
+  }
+
+  // value >= 0 holds at the end of the block. The phis being visited are assumed to be non negative, which proves
+  // induction variables whose every incoming value is non negative given that the variable itself is
+  private boolean isNonNegative(Value value,BasicBlock block,Set<PhiInstruction> visiting) {
+    if (value instanceof ConstantInt) {
+      return ((ConstantInt)value).getValue() >= 0;
+    }
+    for (CompareInstruction fact : this.getFacts(block)) {
+      if (fact.getPredicate() == CompareInstruction.Predicate.SGE && fact.getLhs() == value && fact.getRhs() instanceof ConstantInt && ((ConstantInt)fact.getRhs()).getValue() >= 0) {
+        return true;
+      }
+    }
+    if (value instanceof LoadInstruction) {
+      // Array lengths are never negative (allocating a negative size throws). Fields and elements are loaded through a getelementptr
+      Value pointer = IRUtils.stripCasts(((LoadInstruction)value).getPointer());
+      return value.getType().equals("i32") && !(pointer instanceof GetElementPtrInstruction) && !(pointer instanceof AllocaInstruction);
+    }
+    if (value instanceof PhiInstruction) {
+      PhiInstruction phi = (PhiInstruction)value;
+      if (!visiting.add(phi)) {
+        return true;
+      }
+      for (int i = 0;i < phi.getIncomingCount();i++) {
+        if (!this.isNonNegative(phi.getIncomingValue(i), phi.getIncomingBlock(i), visiting)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (value instanceof BinaryInstruction && ((BinaryInstruction)value).getOpcode() == Opcode.ADD) {
+      BinaryInstruction add = (BinaryInstruction)value;
+      Value operand = add.getLhs() instanceof ConstantInt ? add.getRhs() : add.getLhs();
+      Value step = add.getLhs() instanceof ConstantInt ? add.getLhs() : add.getRhs();
+      if (!(step instanceof ConstantInt) || !this.isNonNegative(operand, add.getParent(), visiting)) {
+        return false;
+      }
+      long stepValue = ((ConstantInt)step).getValue();
+      if (stepValue == 0) {
+        return true;
+      }
+      // x + 1 can't overflow if x < y holds for some y
+      if (stepValue == 1) {
+        for (CompareInstruction fact : this.getFacts(add.getParent())) {
+          if (fact.getPredicate() == CompareInstruction.Predicate.SLT && fact.getLhs() == operand) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // Prints the number of removed bounds checks of every function that has any
+  public void printReport(PrintStream out) {
+    for (Map.Entry<Function,Integer> entry : this.checkCounts.entrySet()) {
+      out.println("Bounds checks " + entry.getKey().getFunctionName() + " : " + this.removedCounts.get(entry.getKey()) + "/" + entry.getValue() + " removed");
+    }
+  }
+}
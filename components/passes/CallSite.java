@@ -0,0 +1,30 @@
+package components.passes;
+
+import components.ir.CallInstruction;
+import components.prototypes.Class;
+import components.prototypes.Method;
+
+// A virtual call emitted for a MessageSend: the indirect call, the static type of the receiver and the method it resolves to in that type
+public class CallSite {
+  private CallInstruction call;
+  private Class receiverClass;
+  private Method method;
+
+  public CallSite(CallInstruction call,Class receiverClass,Method method) {
+    this.call = call;
+    this.receiverClass = receiverClass;
+    this.method = method;
+  }
+
+  public CallInstruction getCall() {
+    return this.call;
+  }
+
+  public Class getReceiverClass() {
+    return this.receiverClass;
+  }
+
+  public Method getMethod() {
+    return this.method;
+  }
+}
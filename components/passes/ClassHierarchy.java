@@ -0,0 +1,42 @@
+package components.passes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import components.helpers.SymbolTable;
+import components.prototypes.Class;
+import components.prototypes.Method;
+
+// Class hierarchy analysis of the whole program. A method called on a receiver of static type C can only run
+// the implementations found in the vtables of C and its subclasses
+public class ClassHierarchy {
+  private Map<Class,ArrayList<Class>> subclasses;
+
+  public ClassHierarchy(SymbolTable symbolTable) {
+    this.subclasses = new HashMap<Class,ArrayList<Class>>();
+    for (Class cl : symbolTable.getClassList()) {
+      this.subclasses.put(cl, new ArrayList<Class>());
+    }
+    for (Class cl : symbolTable.getClassList()) {
+      if (cl.getParentClass() != null) {
+        this.subclasses.get(cl.getParentClass()).add(cl);
+      }
+    }
+  }
+
+  // Returns the only implementation of the method that a receiver of the given static type can call, or null if subclasses override it
+  public Method resolve(Class receiverClass,Method method) {
+    int slot = method.getOffset() / 8;
+    Method target = receiverClass.getVtable().get(slot);
+    ArrayList<Class> worklist = new ArrayList<Class>(this.subclasses.get(receiverClass));
+    while (!worklist.isEmpty()) {
+      Class cl = worklist.remove(worklist.size() - 1);
+      if (cl.getVtable().get(slot) != target) {
+        return null;
+      }
+      worklist.addAll(this.subclasses.get(cl));
+    }
+    return target;
+  }
+}
@@ -0,0 +1,164 @@
+package components.passes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import components.ir.BasicBlock;
+import components.ir.BinaryInstruction;
+import components.ir.BranchInstruction;
+import components.ir.CastInstruction;
+import components.ir.CompareInstruction;
+import components.ir.ConstantFolder;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.Instruction;
+import components.ir.Module;
+import components.ir.PhiInstruction;
+import components.ir.Value;
+
+// Propagates the constants that the IR generation could not fold because they were stored to variables.
+// After Mem2Reg a variable assigned a constant is the constant itself, so the instructions that use it can be folded
+// (see ConstantFolder), phis whose incoming values are all the same are that value and conditional branches on a constant
+// jump to the one successor that is taken. The blocks that can no longer be reached and the folded instructions are
+// then removed, which may make more phis and branches constant, until nothing changes.
+public class ConstantFolding {
+  private int folded;
+
+  public ConstantFolding() {
+    this.folded = 0;
+  }
+
+  // Number of instructions and branches folded so far
+  public int getFoldedCount() {
+    return this.folded;
+  }
+
+  public void run(Module module) {
+    for (Function function : module.getFunctions()) {
+      if (!function.isDeclaration()) {
+        this.run(function);
+      }
+    }
+  }
+
+  public void run(Function function) {
+    // The branches folded while generating the IR leave the blocks they no longer jump to behind
+    boolean changed = IRUtils.removeUnreachableBlocks(function);
+    Map<Value,Value> replacements = new HashMap<Value,Value>();
+    int before;
+    do {
+      before = this.folded;
+      for (BasicBlock block : function.getBlocks()) {
+        for (Instruction instruction : block.getInstructions()) {
+          // Operands that were folded earlier are replaced first, so chains of constants fold in one sweep
+          for (int i = 0;i < instruction.getOperands().size();i++) {
+            Value operand = instruction.getOperand(i);
+            if (replacements.containsKey(operand)) {
+              instruction.setOperand(i, resolve(operand, replacements));
+            }
+          }
+          if (replacements.containsKey(instruction)) {
+            continue;
+          }
+          Value value = this.fold(instruction);
+          if (value != null) {
+            replacements.put(instruction, value);
+            this.folded++;
+          }
+        }
+        if (this.foldBranch(block)) {
+          this.folded++;
+        }
+      }
+      if (this.folded != before) {
+        changed = true;
+        // Phis may use values of blocks after them, which were folded after the phis were visited
+        for (BasicBlock block : function.getBlocks()) {
+          for (Instruction instruction : block.getInstructions()) {
+            for (int i = 0;i < instruction.getOperands().size();i++) {
+              Value operand = instruction.getOperand(i);
+              if (replacements.containsKey(operand)) {
+                instruction.setOperand(i, resolve(operand, replacements));
+              }
+            }
+          }
+        }
+        IRUtils.removeUnreachableBlocks(function);
+        IRUtils.removeDeadInstructions(function);
+      }
+    } while (this.folded != before);
+    if (changed) {
+      IRUtils.mergeBlocks(function);
+    }
+  }
+
+  private static Value resolve(Value value,Map<Value,Value> replacements) {
+    while (replacements.containsKey(value)) {
+      value = replacements.get(value);
+    }
+    return value;
+  }
+
+  // Returns the value the instruction always has or null
+  private Value fold(Instruction instruction) {
+    if (instruction instanceof BinaryInstruction) {
+      BinaryInstruction binary = (BinaryInstruction)instruction;
+      return ConstantFolder.foldBinary(binary.getOpcode(), binary.getType(), binary.getLhs(), binary.getRhs());
+    }
+    if (instruction instanceof CompareInstruction) {
+      CompareInstruction compare = (CompareInstruction)instruction;
+      return ConstantFolder.foldCompare(compare.getPredicate(), compare.getLhs(), compare.getRhs());
+    }
+    if (instruction instanceof CastInstruction) {
+      CastInstruction cast = (CastInstruction)instruction;
+      return ConstantFolder.foldCast(cast.getOpcode(), cast.getValue(), cast.getType());
+    }
+    if (instruction instanceof PhiInstruction) {
+      // A phi of one value (or of itself, around a loop) is that value
+      PhiInstruction phi = (PhiInstruction)instruction;
+      Value value = null;
+      for (int i = 0;i < phi.getIncomingCount();i++) {
+        Value incoming = phi.getIncomingValue(i);
+        if (incoming == phi || incoming == value) {
+          continue;
+        }
+        if (value != null && !(value instanceof ConstantInt && incoming instanceof ConstantInt && ((ConstantInt)value).getValue() == ((ConstantInt)incoming).getValue())) {
+          return null;
+        }
+        value = incoming;
+      }
+      return value;
+    }
+    return null;
+  }
+
+  // Turns a conditional branch on a constant into a jump to the successor that is taken.
+  // The phis of the other successor no longer have an incoming value from this block. Returns whether the branch was folded
+  private boolean foldBranch(BasicBlock block) {
+    Instruction terminator = block.getTerminator();
+    if (!(terminator instanceof BranchInstruction) || !((BranchInstruction)terminator).isConditional() || !(((BranchInstruction)terminator).getCondition() instanceof ConstantInt)) {
+      return false;
+    }
+    BranchInstruction branch = (BranchInstruction)terminator;
+    boolean taken = ((ConstantInt)branch.getCondition()).getValue() != 0;
+    BasicBlock target = branch.getSuccessor(taken ? 0 : 1);
+    BasicBlock dropped = branch.getSuccessor(taken ? 1 : 0);
+    BranchInstruction jump = new BranchInstruction(target);
+    jump.setParent(block);
+    block.getInstructions().set(block.getInstructions().size() - 1, jump);
+    if (dropped != target) {
+      for (Instruction instruction : dropped.getInstructions()) {
+        if (!(instruction instanceof PhiInstruction)) {
+          break;
+        }
+        PhiInstruction phi = (PhiInstruction)instruction;
+        for (int i = phi.getIncomingCount() - 1;i >= 0;i--) {
+          if (phi.getIncomingBlock(i) == block) {
+            phi.removeIncoming(i);
+          }
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,181 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import components.helpers.SymbolTable;
+import components.ir.BasicBlock;
+import components.ir.Constant;
+import components.ir.ConstantArray;
+import components.ir.ConstantNull;
+import components.ir.Function;
+import components.ir.GlobalVariable;
+import components.ir.Instruction;
+import components.ir.Module;
+import components.ir.Value;
+import components.prototypes.Class;
+import components.prototypes.Method;
+
+// Removes the methods that the program can never call and the vtables of the classes it never instantiates, with a rapid
+// type analysis of the whole program. Starting from main, every reachable function is scanned for the classes it allocates
+// (the vtables it stores to new objects), the methods it calls directly and its virtual calls. A virtual call of a method
+// on a receiver of static type C reaches the implementation in the vtable of every instantiated subclass of C (or C itself),
+// including the classes instantiated after the call was found. The vtable entries of the instantiated classes whose methods
+// are never reached are cleared, since the vtables keep the offsets of the methods
+public class DeadCodeElimination {
+  private Module module;
+  private Map<Function,ArrayList<CallSite>> callSitesByFunction;
+  private Map<GlobalVariable,Class> vtableClasses;
+  private Set<Function> methodFunctions;
+  private Set<Function> reachable;
+  private ArrayList<Function> worklist;
+  private Set<Class> instantiated;
+  private ArrayList<CallSite> virtualCalls; // The virtual calls of the reachable functions
+  // Statistics
+  private int methodCount;
+  private int removedMethods;
+  private int vtableCount;
+  private int removedVtables;
+  private int clearedEntries;
+  private int instructionsBefore;
+  private int instructionsAfter;
+
+  public DeadCodeElimination(Module module,SymbolTable symbolTable,ArrayList<CallSite> callSites) {
+    this.module = module;
+    this.callSitesByFunction = new HashMap<Function,ArrayList<CallSite>>();
+    for (CallSite site : callSites) {
+      Function caller = site.getCall().getParent().getParent();
+      this.callSitesByFunction.computeIfAbsent(caller, function -> new ArrayList<CallSite>()).add(site);
+    }
+    this.vtableClasses = new HashMap<GlobalVariable,Class>();
+    this.methodFunctions = new HashSet<Function>();
+    for (Class cl : symbolTable.getClassList()) {
+      this.vtableClasses.put(module.getGlobal("." + cl.getName() + "_vtable"), cl);
+      for (Method method : cl.getMethodsList()) {
+        this.methodFunctions.add(this.getFunction(method));
+      }
+    }
+    this.reachable = new HashSet<Function>();
+    this.worklist = new ArrayList<Function>();
+    this.instantiated = new HashSet<Class>();
+    this.virtualCalls = new ArrayList<CallSite>();
+    this.methodCount = this.methodFunctions.size();
+    this.vtableCount = this.vtableClasses.size();
+    this.removedMethods = this.removedVtables = this.clearedEntries = 0;
+  }
+
+  public void run() {
+    this.instructionsBefore = this.module.instructionCount();
+    // main and the runtime functions are the roots
+    for (Function function : this.module.getFunctions()) {
+      if (!function.isDeclaration() && !this.methodFunctions.contains(function)) {
+        this.reach(function);
+      }
+    }
+    while (!this.worklist.isEmpty()) {
+      this.scan(this.worklist.remove(this.worklist.size() - 1));
+    }
+    for (Function function : this.methodFunctions) {
+      if (!this.reachable.contains(function)) {
+        this.module.removeFunction(function);
+        this.removedMethods++;
+      }
+    }
+    for (Map.Entry<GlobalVariable,Class> entry : this.vtableClasses.entrySet()) {
+      Class cl = entry.getValue();
+      if (!this.instantiated.contains(cl)) {
+        this.module.removeGlobal(entry.getKey());
+        // The pointer map of the garbage collector is only used when allocating the class as well
+        GlobalVariable pointerMap = this.module.getGlobal("." + cl.getName() + "_ptrmap");
+        if (pointerMap != null) {
+          this.module.removeGlobal(pointerMap);
+        }
+        this.removedVtables++;
+        continue;
+      }
+      ArrayList<Constant> entries = ((ConstantArray)entry.getKey().getInitializer()).getElements();
+      for (int slot = 0;slot < entries.size();slot++) {
+        if (!this.reachable.contains(this.getFunction(cl.getVtable().get(slot)))) {
+          entries.set(slot, new ConstantNull("i8*"));
+          this.clearedEntries++;
+        }
+      }
+    }
+    this.instructionsAfter = this.module.instructionCount();
+  }
+
+  private Function getFunction(Method method) {
+    return this.module.getFunction(method.getOwnClass().getName() + "." + method.getName());
+  }
+
+  private void reach(Function function) {
+    if (this.reachable.add(function)) {
+      this.worklist.add(function);
+    }
+  }
+
+  private void scan(Function function) {
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        for (Value operand : instruction.getOperands()) {
+          if (operand instanceof Function && this.methodFunctions.contains(operand)) {
+            this.reach((Function)operand);
+          } else if (operand instanceof GlobalVariable && this.vtableClasses.containsKey(operand)) {
+            this.instantiate(this.vtableClasses.get(operand));
+          }
+        }
+      }
+    }
+    ArrayList<CallSite> sites = this.callSitesByFunction.get(function);
+    if (sites == null) {
+      return;
+    }
+    for (CallSite site : sites) {
+      this.virtualCalls.add(site);
+      for (Class cl : this.instantiated) {
+        if (isSubclass(cl, site.getReceiverClass())) {
+          this.reach(this.getFunction(cl.getVtable().get(site.getMethod().getOffset() / 8)));
+        }
+      }
+    }
+  }
+
+  private void instantiate(Class cl) {
+    if (!this.instantiated.add(cl)) {
+      return;
+    }
+    for (CallSite site : this.virtualCalls) {
+      if (isSubclass(cl, site.getReceiverClass())) {
+        this.reach(this.getFunction(cl.getVtable().get(site.getMethod().getOffset() / 8)));
+      }
+    }
+  }
+
+  // Whether cl is the given class or one of its subclasses
+  private static boolean isSubclass(Class cl,Class ancestor) {
+    for (Class current = cl;current != null;current = current.getParentClass()) {
+      if (current == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int getInstructionsBefore() {
+    return this.instructionsBefore;
+  }
+
+  public int getInstructionsAfter() {
+    return this.instructionsAfter;
+  }
+
+  public void printReport(PrintStream out) {
+    out.println("Dead methods : " + this.removedMethods + "/" + this.methodCount + " removed");
+    out.println("Dead vtables : " + this.removedVtables + "/" + this.vtableCount + " removed, " + this.clearedEntries + " entries cleared");
+    out.println("Instructions : " + this.instructionsBefore + " -> " + this.instructionsAfter);
+  }
+}
@@ -0,0 +1,216 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.BasicBlock;
+import components.ir.BinaryInstruction;
+import components.ir.BranchInstruction;
+import components.ir.CallInstruction;
+import components.ir.CastInstruction;
+import components.ir.CompareInstruction;
+import components.ir.Function;
+import components.ir.GetElementPtrInstruction;
+import components.ir.Instruction;
+import components.ir.ConstantNull;
+import components.ir.LoadInstruction;
+import components.ir.Module;
+import components.ir.PhiInstruction;
+import components.ir.ReturnInstruction;
+import components.ir.StoreInstruction;
+import components.ir.Value;
+import components.prototypes.Method;
+
+// Turns the virtual calls whose receiver can only run one implementation (see ClassHierarchy) into direct calls.
+// A direct call does not load the vtable of its receiver, which is where a null receiver faulted, so it calls throw_null
+// first when the receiver is null, unless the receiver is this or a new object.
+// Optionally inlines the direct calls of small leaf methods: methods with a single basic block and no calls
+public class Devirtualization {
+  public static final int INLINE_THRESHOLD = 12;
+
+  private Module module;
+  private ClassHierarchy hierarchy;
+  private boolean inline;
+  private int virtualCalls;
+  private int devirtualized;
+  private int inlined;
+  private int inlineCounter;
+  private int nullCheckCounter;
+  private Function throwNull;
+
+  public Devirtualization(Module module,ClassHierarchy hierarchy,boolean inline) {
+    this.module = module;
+    this.hierarchy = hierarchy;
+    this.inline = inline;
+    this.virtualCalls = this.devirtualized = this.inlined = this.inlineCounter = this.nullCheckCounter = 0;
+    this.throwNull = module.getFunction("throw_null");
+  }
+
+  public void run(ArrayList<CallSite> callSites) {
+    Set<Function> changed = new LinkedHashSet<Function>();
+    ArrayList<CallInstruction> directCalls = new ArrayList<CallInstruction>();
+    for (CallSite site : callSites) {
+      CallInstruction call = site.getCall();
+      // Calls in blocks removed by earlier passes are not part of the program anymore
+      Function caller = call.getParent().getParent();
+      if (!caller.getBlocks().contains(call.getParent())) {
+        continue;
+      }
+      this.virtualCalls++;
+      Method target = this.hierarchy.resolve(site.getReceiverClass(), site.getMethod());
+      // The target is not in the module when dead code elimination found that no receiver of the call is ever allocated
+      Function callee = target != null ? this.module.getFunction(target.getOwnClass().getName() + "." + target.getName()) : null;
+      if (callee == null) {
+        continue;
+      }
+      call.setCallee(callee);
+      if (!this.isNonNull(call.getArgument(0), caller)) {
+        this.checkNull(call);
+      }
+      this.devirtualized++;
+      changed.add(caller);
+      directCalls.add(call);
+    }
+    if (this.inline) {
+      for (CallInstruction call : directCalls) {
+        if (this.isInlinable(call.getCalledFunction())) {
+          this.inlineCall(call);
+          this.inlined++;
+        }
+      }
+    }
+    // The vtable lookups of the devirtualized calls are not needed anymore
+    for (Function function : changed) {
+      IRUtils.removeDeadInstructions(function);
+    }
+  }
+
+  // The receiver is this, in a method, or an object that was just allocated
+  private boolean isNonNull(Value receiver,Function caller) {
+    receiver = IRUtils.stripCasts(receiver);
+    if (IRUtils.isAllocation(receiver)) {
+      return true;
+    }
+    return caller.getFunctionName().contains(".") && receiver == caller.getArguments().get(0);
+  }
+
+  // Splits the block of the call before it and branches to a block that calls throw_null when the receiver is null
+  private void checkNull(CallInstruction call) {
+    BasicBlock block = call.getParent();
+    Function function = block.getParent();
+    int id = this.nullCheckCounter++;
+    BasicBlock nullBlock = new BasicBlock("devirt_null_" + id, function);
+    BasicBlock callBlock = new BasicBlock("devirt_call_" + id, function);
+    int index = function.getBlocks().indexOf(block);
+    function.getBlocks().add(index + 1, nullBlock);
+    function.getBlocks().add(index + 2, callBlock);
+    ArrayList<Instruction> instructions = block.getInstructions();
+    int position = instructions.indexOf(call);
+    for (Instruction instruction : instructions.subList(position, instructions.size())) {
+      callBlock.append(instruction);
+    }
+    instructions.subList(position, instructions.size()).clear();
+    // The successors of the block are now reached from the block of the call
+    for (BasicBlock successor : callBlock.getSuccessors()) {
+      for (Instruction instruction : successor.getInstructions()) {
+        if (!(instruction instanceof PhiInstruction)) {
+          break;
+        }
+        PhiInstruction phi = (PhiInstruction)instruction;
+        for (int i = 0;i < phi.getIncomingCount();i++) {
+          if (phi.getIncomingBlock(i) == block) {
+            phi.setIncomingBlock(i, callBlock);
+          }
+        }
+      }
+    }
+    Value receiver = call.getArgument(0);
+    CompareInstruction isNull = new CompareInstruction(CompareInstruction.Predicate.EQ, receiver, new ConstantNull(receiver.getType()), "%_devirt_null_" + id);
+    block.append(isNull);
+    block.append(new BranchInstruction(isNull, nullBlock, callBlock));
+    nullBlock.append(new CallInstruction("void", this.throwNull, new ArrayList<Value>(), null));
+    nullBlock.append(new BranchInstruction(callBlock));
+  }
+
+  private boolean isInlinable(Function function) {
+    if (function.getBlocks().size() != 1 || function.instructionCount() > INLINE_THRESHOLD) {
+      return false;
+    }
+    for (Instruction instruction : function.getEntryBlock().getInstructions()) {
+      boolean copyable = instruction instanceof LoadInstruction || instruction instanceof StoreInstruction || instruction instanceof BinaryInstruction
+        || instruction instanceof CompareInstruction || instruction instanceof GetElementPtrInstruction || instruction instanceof CastInstruction
+        || instruction instanceof ReturnInstruction;
+      if (!copyable) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Copies the body of the called function in place of the call
+  private void inlineCall(CallInstruction call) {
+    Function callee = call.getCalledFunction();
+    BasicBlock block = call.getParent();
+    Map<Value,Value> values = new HashMap<Value,Value>();
+    for (int i = 0;i < call.argc();i++) {
+      values.put(callee.getArguments().get(i), call.getArgument(i));
+    }
+    String suffix = ".i" + this.inlineCounter++;
+    int position = block.getInstructions().indexOf(call);
+    Value result = null;
+    for (Instruction instruction : callee.getEntryBlock().getInstructions()) {
+      if (instruction instanceof ReturnInstruction) {
+        Value returned = ((ReturnInstruction)instruction).getValue();
+        result = values.containsKey(returned) ? values.get(returned) : returned;
+        continue;
+      }
+      Instruction copy = this.copyInstruction(instruction, instruction.getName() == null ? null : instruction.getName() + suffix);
+      for (int i = 0;i < copy.getOperands().size();i++) {
+        Value operand = copy.getOperand(i);
+        if (values.containsKey(operand)) {
+          copy.setOperand(i, values.get(operand));
+        }
+      }
+      values.put(instruction, copy);
+      block.insert(position++, copy);
+    }
+    block.getInstructions().remove(position);
+    IRUtils.replaceAllUses(block.getParent(), call, result);
+  }
+
+  private Instruction copyInstruction(Instruction instruction,String name) {
+    if (instruction instanceof LoadInstruction) {
+      return new LoadInstruction(instruction.getType(), ((LoadInstruction)instruction).getPointer(), name);
+    } else if (instruction instanceof StoreInstruction) {
+      return new StoreInstruction(((StoreInstruction)instruction).getValue(), ((StoreInstruction)instruction).getPointer());
+    } else if (instruction instanceof BinaryInstruction) {
+      BinaryInstruction binary = (BinaryInstruction)instruction;
+      return new BinaryInstruction(binary.getOpcode(), binary.getType(), binary.getLhs(), binary.getRhs(), name);
+    } else if (instruction instanceof CompareInstruction) {
+      CompareInstruction compare = (CompareInstruction)instruction;
+      return new CompareInstruction(compare.getPredicate(), compare.getLhs(), compare.getRhs(), name);
+    } else if (instruction instanceof GetElementPtrInstruction) {
+      GetElementPtrInstruction gep = (GetElementPtrInstruction)instruction;
+      Value[] indices = new Value[gep.getIndexCount()];
+      for (int i = 0;i < indices.length;i++) {
+        indices[i] = gep.getIndex(i);
+      }
+      return new GetElementPtrInstruction(gep.getSourceElementType(), gep.getType(), gep.getPointer(), indices, name);
+    } else {
+      CastInstruction cast = (CastInstruction)instruction;
+      return new CastInstruction(cast.getOpcode(), cast.getValue(), cast.getType(), name);
+    }
+  }
+
+  // Prints the number of devirtualized and inlined call sites of the program
+  public void printReport(PrintStream out) {
+    out.println("Devirtualized call sites : " + this.devirtualized + "/" + this.virtualCalls);
+    if (this.inline) {
+      out.println("Inlined call sites : " + this.inlined);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package components.passes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.BasicBlock;
+import components.ir.Function;
+
+// Dominator tree and dominance frontiers of a function's control flow graph.
+// The immediate dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy
+// over the blocks in reverse postorder. Blocks that are not reachable from the entry block are ignored.
+public class DominatorTree {
+  private ArrayList<BasicBlock> reversePostorder;
+  private Map<BasicBlock,Integer> order;
+  private Map<BasicBlock,ArrayList<BasicBlock>> predecessors;
+  private Map<BasicBlock,BasicBlock> idoms;
+  private Map<BasicBlock,ArrayList<BasicBlock>> children;
+  private Map<BasicBlock,Set<BasicBlock>> frontiers;
+
+  public DominatorTree(Function function) {
+    this.computeReversePostorder(function.getEntryBlock());
+    this.computePredecessors();
+    this.computeIdoms();
+    this.computeFrontiers();
+  }
+
+  private void computeReversePostorder(BasicBlock entry) {
+    // Iterative depth first search so that long chains of blocks don't overflow the stack
+    ArrayList<BasicBlock> postorder = new ArrayList<BasicBlock>();
+    Set<BasicBlock> visited = new HashSet<BasicBlock>();
+    ArrayList<BasicBlock> stack = new ArrayList<BasicBlock>();
+    ArrayList<Integer> nextSuccessor = new ArrayList<Integer>();
+    visited.add(entry);
+    stack.add(entry);
+    nextSuccessor.add(0);
+    while (!stack.isEmpty()) {
+      int top = stack.size() - 1;
+      BasicBlock block = stack.get(top);
+      ArrayList<BasicBlock> successors = block.getSuccessors();
+      int next = nextSuccessor.get(top);
+      if (next < successors.size()) {
+        nextSuccessor.set(top, next + 1);
+        BasicBlock successor = successors.get(next);
+        if (visited.add(successor)) {
+          stack.add(successor);
+          nextSuccessor.add(0);
+        }
+      } else {
+        postorder.add(block);
+        stack.remove(top);
+        nextSuccessor.remove(top);
+      }
+    }
+    this.reversePostorder = new ArrayList<BasicBlock>();
+    this.order = new HashMap<BasicBlock,Integer>();
+    for (int i = postorder.size() - 1;i >= 0;i--) {
+      this.order.put(postorder.get(i), this.reversePostorder.size());
+      this.reversePostorder.add(postorder.get(i));
+    }
+  }
+
+  private void computePredecessors() {
+    this.predecessors = new HashMap<BasicBlock,ArrayList<BasicBlock>>();
+    for (BasicBlock block : this.reversePostorder) {
+      this.predecessors.put(block, new ArrayList<BasicBlock>());
+    }
+    for (BasicBlock block : this.reversePostorder) {
+      for (BasicBlock successor : block.getSuccessors()) {
+        ArrayList<BasicBlock> blockPredecessors = this.predecessors.get(successor);
+        // A block branching twice to the same successor is still a single predecessor
+        if (!blockPredecessors.contains(block)) {
+          blockPredecessors.add(block);
+        }
+      }
+    }
+  }
+
+  private void computeIdoms() {
+    this.idoms = new HashMap<BasicBlock,BasicBlock>();
+    BasicBlock entry = this.reversePostorder.get(0);
+    this.idoms.put(entry, entry);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 1;i < this.reversePostorder.size();i++) {
+        BasicBlock block = this.reversePostorder.get(i);
+        BasicBlock newIdom = null;
+        for (BasicBlock predecessor : this.predecessors.get(block)) {
+          if (this.idoms.containsKey(predecessor)) {
+            newIdom = newIdom == null ? predecessor : this.intersect(predecessor, newIdom);
+          }
+        }
+        if (this.idoms.get(block) != newIdom) {
+          this.idoms.put(block, newIdom);
+          changed = true;
+        }
+      }
+    }
+    this.children = new HashMap<BasicBlock,ArrayList<BasicBlock>>();
+    for (BasicBlock block : this.reversePostorder) {
+      this.children.put(block, new ArrayList<BasicBlock>());
+    }
+    for (int i = 1;i < this.reversePostorder.size();i++) {
+      BasicBlock block = this.reversePostorder.get(i);
+      this.children.get(this.idoms.get(block)).add(block);
+    }
+  }
+
+  // Closest common dominator of two blocks whose dominators are already (partially) known
+  private BasicBlock intersect(BasicBlock block1,BasicBlock block2) {
+    while (block1 != block2) {
+      while (this.order.get(block1) > this.order.get(block2)) {
+        block1 = this.idoms.get(block1);
+      }
+      while (this.order.get(block2) > this.order.get(block1)) {
+        block2 = this.idoms.get(block2);
+      }
+    }
+    return block1;
+  }
+
+  private void computeFrontiers() {
+    this.frontiers = new HashMap<BasicBlock,Set<BasicBlock>>();
+    // Frontiers keep insertion order so that the placement of phis is deterministic
+    for (BasicBlock block : this.reversePostorder) {
+      this.frontiers.put(block, new LinkedHashSet<BasicBlock>());
+    }
+    // A join point is in the frontier of every block on the way up from its predecessors to its immediate dominator
+    for (BasicBlock block : this.reversePostorder) {
+      ArrayList<BasicBlock> blockPredecessors = this.predecessors.get(block);
+      if (blockPredecessors.size() < 2) {
+        continue;
+      }
+      BasicBlock idom = this.idoms.get(block);
+      for (BasicBlock runner : blockPredecessors) {
+        while (runner != idom) {
+          this.frontiers.get(runner).add(block);
+          runner = this.idoms.get(runner);
+        }
+      }
+    }
+  }
+
+  // The reachable blocks of the function in reverse postorder
+  public ArrayList<BasicBlock> getReversePostorder() {
+    return this.reversePostorder;
+  }
+
+  public boolean isReachable(BasicBlock block) {
+    return this.order.containsKey(block);
+  }
+
+  public ArrayList<BasicBlock> getPredecessors(BasicBlock block) {
+    return this.predecessors.get(block);
+  }
+
+  // Immediate dominator of a block (the entry block is its own immediate dominator)
+  public BasicBlock getIdom(BasicBlock block) {
+    return this.idoms.get(block);
+  }
+
+  // Blocks immediately dominated by the given block
+  public ArrayList<BasicBlock> getChildren(BasicBlock block) {
+    return this.children.get(block);
+  }
+
+  public Set<BasicBlock> getFrontier(BasicBlock block) {
+    return this.frontiers.get(block);
+  }
+
+  public boolean dominates(BasicBlock dominator,BasicBlock block) {
+    BasicBlock entry = this.reversePostorder.get(0);
+    while (block != dominator && block != entry) {
+      block = this.idoms.get(block);
+    }
+    return block == dominator;
+  }
+}
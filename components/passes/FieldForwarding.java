@@ -0,0 +1,319 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import components.helpers.SymbolTable;
+import components.ir.AllocaInstruction;
+import components.ir.BasicBlock;
+import components.ir.CallInstruction;
+import components.ir.CastInstruction;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.GetElementPtrInstruction;
+import components.ir.Instruction;
+import components.ir.LoadInstruction;
+import components.ir.Module;
+import components.ir.Opcode;
+import components.ir.ReturnInstruction;
+import components.ir.StoreInstruction;
+import components.ir.Value;
+import components.prototypes.Class;
+import components.prototypes.Variable;
+
+// Keeps the fields of this that a method uses more than once in registers instead of loading and storing them every time.
+// Every such field gets a stack slot, the loads and stores of the field become loads and stores of the slot and Mem2Reg then
+// promotes the slots to SSA values. Calls of methods may read and change the fields, so at every point the slot is in one
+// of three states:
+// - CLEAN: the slot and the field hold the same value
+// - DIRTY: the slot was stored to, so the field is written back from it before a call or a return
+// - STALE: a call may have changed the field (or the method just started), so the slot is read from it before it is used
+// At the blocks where paths in different states meet, the field is written back or read again at the end of the blocks
+// before them, so that an expensive state is never carried around a loop when it can be resolved once before the loop.
+// Only a stale slot that comes back around a loop (a loop that calls methods) makes the whole loop stale. The runtime
+// functions don't access fields, except that the garbage collector reads the fields that hold pointers, so those are
+// written back before gc_alloc too. Fields at an offset that code of other objects (inlined from their methods) also
+// accesses may be fields of this, and are left in memory.
+public class FieldForwarding {
+  private SymbolTable symbolTable;
+  private Set<Function> runtimeFunctions;
+  private Function gcAlloc;
+  private Mem2Reg mem2reg;
+  private Map<Function,ArrayList<String>> forwardedFields;
+  private int removedAccesses;
+  // Per slot state
+  private AllocaInstruction slot;
+  private Value self;
+  private long offset;
+  private int syncs; // Loads added for the slot, which number their names
+  private static final int CLEAN = 0;
+  private static final int DIRTY = 1;
+  private static final int STALE = 2;
+
+  public FieldForwarding(Module module,SymbolTable symbolTable) {
+    this.symbolTable = symbolTable;
+    this.runtimeFunctions = new HashSet<Function>();
+    for (String name : new String[] { "calloc", "print_int", "throw_oob", "throw_nsz", "throw_null", "arena_refill", "gc_enter" }) {
+      if (module.getFunction(name) != null) {
+        this.runtimeFunctions.add(module.getFunction(name));
+      }
+    }
+    this.gcAlloc = module.getFunction("gc_alloc");
+    this.mem2reg = new Mem2Reg();
+    this.forwardedFields = new LinkedHashMap<Function,ArrayList<String>>();
+    this.removedAccesses = 0;
+  }
+
+  // Number of loads and stores of fields replaced with the slots (not counting the ones added around calls and returns)
+  public int getRemovedCount() {
+    return this.removedAccesses;
+  }
+
+  public void run(Module module) {
+    for (Function function : module.getFunctions()) {
+      // Methods are named Class.method and take this as their first argument
+      if (!function.isDeclaration() && function.getFunctionName().contains(".")) {
+        this.run(function);
+      }
+    }
+  }
+
+  public void run(Function function) {
+    Value self = function.getArguments().get(0);
+    // The loads and stores of every field of this, by offset
+    Map<Long,ArrayList<Instruction>> accesses = new TreeMap<Long,ArrayList<Instruction>>();
+    Map<Long,String> types = new HashMap<Long,String>();
+    Set<Long> excluded = new HashSet<Long>();
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        Value pointer;
+        String type;
+        if (instruction instanceof LoadInstruction) {
+          pointer = ((LoadInstruction)instruction).getPointer();
+          type = instruction.getType();
+        } else if (instruction instanceof StoreInstruction) {
+          pointer = ((StoreInstruction)instruction).getPointer();
+          type = ((StoreInstruction)instruction).getValue().getType();
+        } else {
+          continue;
+        }
+        long offset = IRUtils.getFieldOffset(IRUtils.stripCasts(pointer));
+        if (offset < 0) {
+          continue;
+        }
+        Value object = IRUtils.stripCasts(((GetElementPtrInstruction)IRUtils.stripCasts(pointer)).getPointer());
+        if (object != self) {
+          // The new objects allocated here are never this
+          if (!IRUtils.isAllocation(object)) {
+            excluded.add(offset);
+          }
+          continue;
+        }
+        if (types.containsKey(offset) && !types.get(offset).equals(type)) {
+          excluded.add(offset);
+        }
+        types.put(offset, type);
+        accesses.computeIfAbsent(offset, key -> new ArrayList<Instruction>()).add(instruction);
+      }
+    }
+    ArrayList<AllocaInstruction> slots = new ArrayList<AllocaInstruction>();
+    ArrayList<String> fields = new ArrayList<String>();
+    BasicBlock entry = function.getEntryBlock();
+    // Only the loads and stores of the slots are added, so the blocks stay the same
+    DominatorTree domTree = new DominatorTree(function);
+    for (Map.Entry<Long,ArrayList<Instruction>> entryAccesses : accesses.entrySet()) {
+      long offset = entryAccesses.getKey();
+      ArrayList<Instruction> fieldAccesses = entryAccesses.getValue();
+      if (excluded.contains(offset) || fieldAccesses.size() < 2) {
+        continue;
+      }
+      String name = this.getFieldName(function, offset);
+      // A field of a parent class may have the same name, which its methods inlined here access at its own offset
+      AllocaInstruction slot = new AllocaInstruction(types.get(offset), "%this." + name + "." + offset);
+      entry.insert(0, slot);
+      this.slot = slot;
+      this.self = self;
+      this.offset = offset;
+      this.syncs = 0;
+      Set<Instruction> stores = new HashSet<Instruction>();
+      Set<Instruction> loads = new HashSet<Instruction>();
+      for (Instruction instruction : fieldAccesses) {
+        instruction.setOperand(instruction instanceof LoadInstruction ? 0 : 1, slot);
+        (instruction instanceof LoadInstruction ? loads : stores).add(instruction);
+      }
+      // The state of the slot at the start and the end of every block, until it no longer changes. After many rounds the
+      // states are only allowed to grow (a stale slot is always correct), which ends the loop
+      Map<BasicBlock,Integer> in = new HashMap<BasicBlock,Integer>();
+      Map<BasicBlock,Integer> out = new HashMap<BasicBlock,Integer>();
+      boolean changed = true;
+      for (int round = 0;changed;round++) {
+        changed = false;
+        for (BasicBlock block : domTree.getReversePostorder()) {
+          int state = this.getInState(block, out, domTree);
+          if (round > domTree.getReversePostorder().size()) {
+            state = Math.max(state, in.getOrDefault(block, CLEAN));
+          }
+          in.put(block, state);
+          state = this.sync(block, state, loads, stores, false);
+          if (out.getOrDefault(block, CLEAN) != state) {
+            out.put(block, state);
+            changed = true;
+          }
+        }
+      }
+      for (BasicBlock block : domTree.getReversePostorder()) {
+        this.sync(block, in.getOrDefault(block, CLEAN), loads, stores, true);
+      }
+      // Then the blocks where the state changes on the way to a successor
+      for (BasicBlock block : domTree.getReversePostorder()) {
+        for (BasicBlock successor : block.getSuccessors()) {
+          int state = out.getOrDefault(block, CLEAN);
+          int target = in.getOrDefault(successor, CLEAN);
+          int index = block.getInstructions().size() - 1;
+          if (state == DIRTY && target == STALE) {
+            this.writeBack(block, index);
+            break;
+          } else if (state == STALE && target != STALE) {
+            this.reload(block, index);
+            break;
+          }
+        }
+      }
+      slots.add(slot);
+      fields.add(name);
+      this.removedAccesses += fieldAccesses.size();
+    }
+    if (slots.isEmpty()) {
+      return;
+    }
+    this.mem2reg.promote(function, slots);
+    // The addresses the replaced loads and stores computed and the reloads that are never used
+    IRUtils.removeDeadInstructions(function);
+    this.forwardedFields.put(function, fields);
+  }
+
+  // Goes through the block starting with the given state of the slot and returns its state at the end of the block.
+  // With insert set, also writes the field back and reads it again where needed
+  private int sync(BasicBlock block,int state,Set<Instruction> loads,Set<Instruction> stores,boolean insert) {
+    ArrayList<Instruction> instructions = block.getInstructions();
+    for (int i = 0;i < instructions.size();i++) {
+      Instruction instruction = instructions.get(i);
+      if (stores.contains(instruction)) {
+        state = DIRTY;
+      } else if (loads.contains(instruction)) {
+        if (state == STALE && insert) {
+          i = this.reload(block, i);
+        }
+        state = state == STALE ? CLEAN : state;
+      } else if (instruction instanceof CallInstruction) {
+        Function callee = ((CallInstruction)instruction).getCalledFunction();
+        boolean isAllocation = callee != null && callee == this.gcAlloc;
+        boolean isMethod = !isAllocation && !this.runtimeFunctions.contains(callee);
+        // The collector only reads the fields that hold pointers
+        if (state == DIRTY && (isMethod || (isAllocation && this.slot.getAllocatedType().endsWith("*")))) {
+          if (insert) {
+            i = this.writeBack(block, i);
+          }
+          state = CLEAN;
+        }
+        if (isMethod) {
+          state = STALE;
+        }
+      } else if (instruction instanceof ReturnInstruction && state == DIRTY && insert) {
+        i = this.writeBack(block, i);
+      }
+    }
+    return state;
+  }
+
+  // The state of the slot where the predecessors of the block meet. The slot is stale at the start of the method and where
+  // it is stale at the end of any predecessor, and the dirty predecessors write the field back at their end. Only a loop
+  // that calls no method reads a stale field again at the end of the blocks before it, to keep it in a register in the loop
+  private int getInState(BasicBlock block,Map<BasicBlock,Integer> out,DominatorTree domTree) {
+    boolean isHeader = false;
+    boolean stale = false;
+    boolean staleBackEdge = false;
+    boolean allStale = true;
+    int state = CLEAN;
+    for (BasicBlock predecessor : domTree.getPredecessors(block)) {
+      boolean isBackEdge = domTree.dominates(block, predecessor);
+      isHeader |= isBackEdge;
+      // The back edges are not known until the loop was visited once
+      if (!out.containsKey(predecessor)) {
+        continue;
+      }
+      if (out.get(predecessor) == STALE) {
+        stale = true;
+        staleBackEdge |= isBackEdge;
+      } else {
+        allStale = false;
+        state = Math.max(state, out.get(predecessor));
+      }
+    }
+    if (allStale || staleBackEdge || (stale && !isHeader)) {
+      return STALE;
+    }
+    return state;
+  }
+
+  // Stores the value of the slot to the field before the instruction at the index. Returns the new index of the instruction
+  private int writeBack(BasicBlock block,int index) {
+    String name = this.slot.getName() + ".wb" + this.syncs++;
+    Instruction value = new LoadInstruction(this.slot.getAllocatedType(), this.slot, name);
+    block.insert(index++, value);
+    Value field = this.getField(block, index, name);
+    index += this.slot.getAllocatedType().equals("i8") ? 1 : 2;
+    block.insert(index++, new StoreInstruction(value, field));
+    return index;
+  }
+
+  // Loads the field into the slot before the instruction at the index. Returns the new index of the instruction
+  private int reload(BasicBlock block,int index) {
+    String name = this.slot.getName() + ".re" + this.syncs++;
+    Value field = this.getField(block, index, name);
+    index += this.slot.getAllocatedType().equals("i8") ? 1 : 2;
+    Instruction value = new LoadInstruction(this.slot.getAllocatedType(), field, name);
+    block.insert(index++, value);
+    block.insert(index++, new StoreInstruction(value, this.slot));
+    return index;
+  }
+
+  // Inserts the computation of the address of the field before the instruction at the index, as the IR generation does
+  private Value getField(BasicBlock block,int index,String name) {
+    String type = this.slot.getAllocatedType();
+    Instruction address = new GetElementPtrInstruction("i8", "i8*", this.self, new Value[] { ConstantInt.getInt((int)this.offset) }, name + ".addr");
+    block.insert(index, address);
+    if (type.equals("i8")) {
+      return address;
+    }
+    Instruction field = new CastInstruction(Opcode.BITCAST, address, type + "*", name + ".ptr");
+    block.insert(index + 1, field);
+    return field;
+  }
+
+  // Name of the field of the method's class (or of one of its parents) at the offset, which is after the vtable pointer
+  private String getFieldName(Function function,long offset) {
+    String className = function.getFunctionName().substring(0, function.getFunctionName().indexOf('.'));
+    for (Class cl = this.symbolTable.getClass(className);cl != null;cl = cl.getParentClass()) {
+      for (Variable field : cl.getVariablesList()) {
+        if (field.getOffset() + 8 == offset) {
+          return field.getName();
+        }
+      }
+    }
+    return String.valueOf(offset);
+  }
+
+  // Prints the fields kept in registers in every method
+  public void printReport(PrintStream out) {
+    for (Map.Entry<Function,ArrayList<String>> entry : this.forwardedFields.entrySet()) {
+      out.println("Fields in registers " + entry.getKey().getFunctionName() + " : " + String.join(", ", entry.getValue()));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import components.helpers.SymbolTable;
+import components.prototypes.Class;
+import components.prototypes.Variable;
+
+// Reorders the fields of every class so that each one is at an offset that is a multiple of its size and the objects
+// take as few bytes as possible. The fields of the parent classes keep their offsets, so an object of a class can still
+// be used as an object of its parents. The fields of the class go after them, largest first, and the smaller ones fill
+// the gaps that the alignment of the larger ones leaves
+public class FieldLayout {
+  private Map<Class,Integer> sizesBefore;
+
+  public FieldLayout() {
+    this.sizesBefore = new LinkedHashMap<Class,Integer>();
+  }
+
+  // Classes are laid out in declaration order, so every parent is laid out before its subclasses
+  public void run(SymbolTable symbolTable) {
+    for (Class cl : symbolTable.getClassList()) {
+      if (!cl.isMainClass()) {
+        this.sizesBefore.put(cl, cl.getSize());
+        this.layout(cl);
+      }
+    }
+  }
+
+  private void layout(Class cl) {
+    Class parentClass = cl.getParentClass();
+    int start = parentClass == null || parentClass.isMainClass() ? 0 : parentClass.getFieldsSize();
+    ArrayList<Variable> fields = new ArrayList<Variable>(cl.getVariablesList());
+    // Stable, so fields of the same size keep their declaration order
+    fields.sort((a, b) -> b.getSize() - a.getSize());
+    BitSet used = new BitSet();
+    int end = start;
+    int offset = start;
+    int lastSize = 0;
+    for (Variable field : fields) {
+      int size = field.getSize();
+      if (size != lastSize) {
+        // Every field placed so far is larger and aligned to a multiple of this size, so stepping by it finds the gaps
+        offset = align(start, size);
+        lastSize = size;
+      }
+      while (used.nextSetBit(offset) >= 0 && used.nextSetBit(offset) < offset + size) {
+        offset += size;
+      }
+      field.setOffset(offset);
+      used.set(offset, offset + size);
+      end = Math.max(end, offset + size);
+      offset += size;
+    }
+    cl.setFieldsSize(end);
+  }
+
+  private static int align(int offset,int alignment) {
+    return (offset + alignment - 1) / alignment * alignment;
+  }
+
+  public void printReport(PrintStream out) {
+    for (Map.Entry<Class,Integer> entry : this.sizesBefore.entrySet()) {
+      out.println("Object size " + entry.getKey().getName() + " : " + entry.getValue() + " -> " + entry.getKey().getSize() + " bytes");
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package components.passes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.BasicBlock;
+import components.ir.BranchInstruction;
+import components.ir.CallInstruction;
+import components.ir.CastInstruction;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.GetElementPtrInstruction;
+import components.ir.GlobalVariable;
+import components.ir.Instruction;
+import components.ir.LoadInstruction;
+import components.ir.Opcode;
+import components.ir.PhiInstruction;
+import components.ir.Value;
+
+// Clean up utilities shared by the optimization passes
+public class IRUtils {
+
+  // Returns the value under a chain of bitcasts
+  public static Value stripCasts(Value value) {
+    while (value instanceof CastInstruction && ((CastInstruction)value).getOpcode() == Opcode.BITCAST) {
+      value = ((CastInstruction)value).getValue();
+    }
+    return value;
+  }
+
+  // Offset of a field (getelementptr i8, i8* object, i32 offset) or -1
+  public static long getFieldOffset(Value pointer) {
+    if (!(pointer instanceof GetElementPtrInstruction)) {
+      return -1;
+    }
+    GetElementPtrInstruction gep = (GetElementPtrInstruction)pointer;
+    if (!gep.getSourceElementType().equals("i8") || gep.getIndexCount() != 1 || !(gep.getIndex(0) instanceof ConstantInt)) {
+      return -1;
+    }
+    return ((ConstantInt)gep.getIndex(0)).getValue();
+  }
+
+  // A call of calloc or gc_alloc, or the load of the arena's next free byte that starts an allocation from the arena
+  public static boolean isAllocation(Value value) {
+    if (value instanceof CallInstruction) {
+      Function callee = ((CallInstruction)value).getCalledFunction();
+      return callee != null && (callee.getFunctionName().equals("calloc") || callee.getFunctionName().equals("gc_alloc"));
+    }
+    return value instanceof LoadInstruction && ((LoadInstruction)value).getPointer() instanceof GlobalVariable && ((GlobalVariable)((LoadInstruction)value).getPointer()).getName().equals("@.arena_next");
+  }
+
+  // Blocks that can't be reached are never executed, so they are removed along with the phi entries that come from them.
+  // Returns whether any block was removed
+  public static boolean removeUnreachableBlocks(Function function,DominatorTree domTree) {
+    if (domTree.getReversePostorder().size() == function.getBlocks().size()) {
+      return false;
+    }
+    function.getBlocks().removeIf(block -> !domTree.isReachable(block));
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction instanceof PhiInstruction) {
+          PhiInstruction phi = (PhiInstruction)instruction;
+          for (int i = phi.getIncomingCount() - 1;i >= 0;i--) {
+            if (!domTree.isReachable(phi.getIncomingBlock(i))) {
+              phi.removeIncoming(i);
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  public static boolean removeUnreachableBlocks(Function function) {
+    return removeUnreachableBlocks(function, new DominatorTree(function));
+  }
+
+  // Removes the instructions without side effects whose result is never used. Returns the number of removed instructions
+  public static int removeDeadInstructions(Function function) {
+    Map<Value,Integer> uses = new HashMap<Value,Integer>();
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        for (Value operand : instruction.getOperands()) {
+          if (operand instanceof Instruction) {
+            uses.merge(operand, 1, Integer::sum);
+          }
+        }
+      }
+    }
+    // Removing an instruction releases its operands, which may become dead as well
+    Set<Instruction> dead = new HashSet<Instruction>();
+    ArrayList<Instruction> worklist = new ArrayList<Instruction>();
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (!instruction.hasSideEffects() && !uses.containsKey(instruction)) {
+          dead.add(instruction);
+          worklist.add(instruction);
+        }
+      }
+    }
+    while (!worklist.isEmpty()) {
+      Instruction instruction = worklist.remove(worklist.size() - 1);
+      for (Value operand : instruction.getOperands()) {
+        if (operand instanceof Instruction && uses.merge(operand, -1, Integer::sum) == 0 && !((Instruction)operand).hasSideEffects() && dead.add((Instruction)operand)) {
+          worklist.add((Instruction)operand);
+        }
+      }
+    }
+    if (!dead.isEmpty()) {
+      for (BasicBlock block : function.getBlocks()) {
+        block.getInstructions().removeIf(instruction -> dead.contains(instruction));
+      }
+    }
+    return dead.size();
+  }
+
+  // Replaces every use of a value in the function
+  public static void replaceAllUses(Function function,Value from,Value to) {
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        instruction.replaceUsesOf(from, to);
+      }
+    }
+  }
+
+  // Appends a block to its predecessor when the predecessor jumps unconditionally to it and is its only predecessor.
+  // Returns the number of merged blocks
+  public static int mergeBlocks(Function function) {
+    Map<BasicBlock,Integer> predecessorCount = new HashMap<BasicBlock,Integer>();
+    for (BasicBlock block : function.getBlocks()) {
+      // A block branching twice to the same successor counts once, as in the phis
+      for (BasicBlock successor : new HashSet<BasicBlock>(block.getSuccessors())) {
+        predecessorCount.merge(successor, 1, Integer::sum);
+      }
+    }
+    Set<BasicBlock> merged = new HashSet<BasicBlock>();
+    for (BasicBlock block : function.getBlocks()) {
+      if (merged.contains(block)) {
+        continue;
+      }
+      Instruction terminator;
+      while ((terminator = block.getTerminator()) instanceof BranchInstruction && !((BranchInstruction)terminator).isConditional()) {
+        BasicBlock successor = ((BranchInstruction)terminator).getSuccessor(0);
+        if (successor == block || successor == function.getEntryBlock() || predecessorCount.get(successor) != 1) {
+          break;
+        }
+        block.getInstructions().remove(block.getInstructions().size() - 1);
+        for (Instruction instruction : successor.getInstructions()) {
+          if (instruction instanceof PhiInstruction) {
+            // A phi with a single predecessor is just the value coming from it
+            replaceAllUses(function, instruction, ((PhiInstruction)instruction).getIncomingValue(0));
+          } else {
+            block.append(instruction);
+          }
+        }
+        // The successors of the merged block now come from this block
+        for (BasicBlock next : successor.getSuccessors()) {
+          for (Instruction instruction : next.getInstructions()) {
+            if (!(instruction instanceof PhiInstruction)) {
+              break;
+            }
+            PhiInstruction phi = (PhiInstruction)instruction;
+            for (int i = 0;i < phi.getIncomingCount();i++) {
+              if (phi.getIncomingBlock(i) == successor) {
+                phi.setIncomingBlock(i, block);
+              }
+            }
+          }
+        }
+        merged.add(successor);
+      }
+    }
+    if (!merged.isEmpty()) {
+      function.getBlocks().removeIf(block -> merged.contains(block));
+    }
+    return merged.size();
+  }
+}
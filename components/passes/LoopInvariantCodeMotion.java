@@ -0,0 +1,254 @@
+package components.passes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.AllocaInstruction;
+import components.ir.Argument;
+import components.ir.BasicBlock;
+import components.ir.BinaryInstruction;
+import components.ir.BranchInstruction;
+import components.ir.CallInstruction;
+import components.ir.CastInstruction;
+import components.ir.CompareInstruction;
+import components.ir.ConstantInt;
+import components.ir.Function;
+import components.ir.GetElementPtrInstruction;
+import components.ir.GlobalVariable;
+import components.ir.Instruction;
+import components.ir.LoadInstruction;
+import components.ir.Module;
+import components.ir.StoreInstruction;
+import components.ir.Value;
+
+// Moves the computations of a loop whose result is the same in every iteration to the block before the loop.
+// A loop is the set of blocks of the back edges to a block that dominates them (its header), and is only optimized when the
+// header has a single predecessor outside of the loop that jumps unconditionally to it (the preheader, which the code of a
+// while always has). Address computations, casts and arithmetic whose operands are defined outside of the loop are hoisted,
+// and so are two kinds of loads when no store or call in the loop can change the loaded memory:
+// - fields of this (getelementptr i8, i8* %this, i32 offset), which can be loaded even if the loop body never runs
+// - array lengths loaded by the header, which runs whenever the preheader does
+// Inner loops are optimized first, so what they hoist can be hoisted out of the outer loops too. The hoisted instructions
+// that compute the same value as one hoisted before them to the same preheader are replaced by it
+public class LoopInvariantCodeMotion {
+  private Set<Function> runtimeFunctions;
+  private Map<String,int[]> hoistedCounts; // Addresses, field loads and array lengths hoisted out of every loop, by loop
+  // Per function state
+  private Map<Value,Value> replacements;
+  private Map<BasicBlock,Map<String,Instruction>> hoistedValues;
+
+  public LoopInvariantCodeMotion(Module module) {
+    // Calls of the runtime functions only change the runtime's globals, never fields or arrays
+    this.runtimeFunctions = new HashSet<Function>();
+    for (String name : new String[] { "calloc", "print_int", "throw_oob", "throw_nsz", "throw_null", "arena_refill", "gc_alloc", "gc_enter" }) {
+      if (module.getFunction(name) != null) {
+        this.runtimeFunctions.add(module.getFunction(name));
+      }
+    }
+    this.hoistedCounts = new LinkedHashMap<String,int[]>();
+  }
+
+  // Only main and the methods (named Class.method) are optimized, the runtime functions are left as they were generated
+  public void run(Module module) {
+    for (Function function : module.getFunctions()) {
+      if (!function.isDeclaration() && (function.getFunctionName().equals("main") || function.getFunctionName().contains("."))) {
+        this.run(function);
+      }
+    }
+  }
+
+  public void run(Function function) {
+    DominatorTree domTree = new DominatorTree(function);
+    // Blocks of every loop by header, found from the back edges
+    Map<BasicBlock,Set<BasicBlock>> loops = new LinkedHashMap<BasicBlock,Set<BasicBlock>>();
+    for (BasicBlock block : domTree.getReversePostorder()) {
+      for (BasicBlock successor : block.getSuccessors()) {
+        if (domTree.dominates(successor, block)) {
+          addLoopBlocks(loops.computeIfAbsent(successor, header -> new HashSet<BasicBlock>()), successor, block, domTree);
+        }
+      }
+    }
+    if (loops.isEmpty()) {
+      return;
+    }
+    ArrayList<BasicBlock> headers = new ArrayList<BasicBlock>(loops.keySet());
+    // Inner loops have fewer blocks than the loops around them
+    headers.sort((a, b) -> loops.get(a).size() - loops.get(b).size());
+    this.replacements = new HashMap<Value,Value>();
+    this.hoistedValues = new HashMap<BasicBlock,Map<String,Instruction>>();
+    for (BasicBlock header : headers) {
+      this.hoist(function, header, loops.get(header), domTree);
+    }
+    if (this.replacements.isEmpty()) {
+      return;
+    }
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        this.replaceOperands(instruction);
+      }
+    }
+  }
+
+  // Adds the blocks that reach the back edge from latch to header without going through the header
+  private static void addLoopBlocks(Set<BasicBlock> loop,BasicBlock header,BasicBlock latch,DominatorTree domTree) {
+    loop.add(header);
+    ArrayList<BasicBlock> worklist = new ArrayList<BasicBlock>();
+    if (loop.add(latch)) {
+      worklist.add(latch);
+    }
+    while (!worklist.isEmpty()) {
+      for (BasicBlock predecessor : domTree.getPredecessors(worklist.remove(worklist.size() - 1))) {
+        if (loop.add(predecessor)) {
+          worklist.add(predecessor);
+        }
+      }
+    }
+  }
+
+  private void hoist(Function function,BasicBlock header,Set<BasicBlock> loop,DominatorTree domTree) {
+    BasicBlock preheader = null;
+    for (BasicBlock predecessor : domTree.getPredecessors(header)) {
+      if (!loop.contains(predecessor)) {
+        if (preheader != null) {
+          return;
+        }
+        preheader = predecessor;
+      }
+    }
+    if (preheader == null || !(preheader.getTerminator() instanceof BranchInstruction) || ((BranchInstruction)preheader.getTerminator()).isConditional()) {
+      return;
+    }
+    // What the loop writes to
+    Set<Long> storedFields = new HashSet<Long>();
+    boolean storesUnknown = false;
+    boolean storesLengths = false;
+    for (BasicBlock block : loop) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction instanceof CallInstruction && !this.runtimeFunctions.contains(((CallInstruction)instruction).getCalledFunction())) {
+          storesUnknown = true;
+        } else if (instruction instanceof StoreInstruction) {
+          Value pointer = IRUtils.stripCasts(((StoreInstruction)instruction).getPointer());
+          // The stack, the runtime's globals and the objects and arrays allocated in the loop are not read by the hoisted loads
+          if (pointer instanceof AllocaInstruction || pointer instanceof GlobalVariable || IRUtils.isAllocation(pointer)) {
+            continue;
+          }
+          if (pointer instanceof GetElementPtrInstruction && IRUtils.isAllocation(IRUtils.stripCasts(((GetElementPtrInstruction)pointer).getPointer()))) {
+            continue;
+          }
+          if (pointer instanceof GetElementPtrInstruction) {
+            long offset = IRUtils.getFieldOffset(pointer);
+            if (offset >= 0) {
+              storedFields.add(offset);
+            } else if (!isElementPointer((GetElementPtrInstruction)pointer)) {
+              storesUnknown = true;
+            }
+          } else {
+            storesLengths = true;
+          }
+        }
+      }
+    }
+    // The pointers of the lengths the header loads
+    Set<Value> headerLengths = new HashSet<Value>();
+    for (Instruction instruction : header.getInstructions()) {
+      if (instruction instanceof LoadInstruction && isLengthLoad((LoadInstruction)instruction)) {
+        headerLengths.add(IRUtils.stripCasts(((LoadInstruction)instruction).getPointer()));
+      }
+    }
+    Map<String,Instruction> hoisted = this.hoistedValues.computeIfAbsent(preheader, block -> new HashMap<String,Instruction>());
+    Value self = function.getArguments().isEmpty() || !function.getArguments().get(0).getName().equals("%this") ? null : function.getArguments().get(0);
+    int[] counts = new int[3];
+    for (BasicBlock block : domTree.getReversePostorder()) {
+      if (!loop.contains(block)) {
+        continue;
+      }
+      ArrayList<Instruction> instructions = block.getInstructions();
+      for (int i = 0;i < instructions.size();i++) {
+        Instruction instruction = instructions.get(i);
+        this.replaceOperands(instruction);
+        int kind = -1;
+        if (instruction instanceof GetElementPtrInstruction || instruction instanceof CastInstruction || instruction instanceof BinaryInstruction || instruction instanceof CompareInstruction) {
+          kind = 0;
+        } else if (instruction instanceof LoadInstruction && !storesUnknown) {
+          Value pointer = IRUtils.stripCasts(((LoadInstruction)instruction).getPointer());
+          if (pointer instanceof GetElementPtrInstruction && ((GetElementPtrInstruction)pointer).getPointer() == self) {
+            long offset = IRUtils.getFieldOffset(pointer);
+            kind = offset >= 0 && !storedFields.contains(offset) ? 1 : -1;
+          } else if (isLengthLoad((LoadInstruction)instruction) && headerLengths.contains(pointer) && !storesLengths) {
+            kind = 2;
+          }
+        }
+        if (kind < 0 || !this.isInvariant(instruction, loop)) {
+          continue;
+        }
+        instructions.remove(i--);
+        counts[kind]++;
+        String key = valueKey(instruction);
+        if (hoisted.containsKey(key)) {
+          this.replacements.put(instruction, hoisted.get(key));
+          continue;
+        }
+        hoisted.put(key, instruction);
+        preheader.insert(preheader.getInstructions().size() - 1, instruction);
+      }
+    }
+    this.hoistedCounts.put(function.getFunctionName() + " " + header.getLabel(), counts);
+  }
+
+  private boolean isInvariant(Instruction instruction,Set<BasicBlock> loop) {
+    for (Value operand : instruction.getOperands()) {
+      if (operand instanceof Instruction && loop.contains(((Instruction)operand).getParent())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void replaceOperands(Instruction instruction) {
+    for (int i = 0;i < instruction.getOperands().size();i++) {
+      Value operand = instruction.getOperand(i);
+      if (this.replacements.containsKey(operand)) {
+        instruction.setOperand(i, this.replacements.get(operand));
+      }
+    }
+  }
+
+  // Elements of int[] and packed boolean[] arrays are addressed in i32 and i64 units and those of boolean[] with a non
+  // constant index, while fields are always addressed in bytes with a constant offset
+  private static boolean isElementPointer(GetElementPtrInstruction gep) {
+    return !gep.getSourceElementType().equals("i8") || (gep.getIndexCount() == 1 && !(gep.getIndex(0) instanceof ConstantInt));
+  }
+
+  // The length of an array is the i32 at its address
+  private static boolean isLengthLoad(LoadInstruction load) {
+    Value pointer = IRUtils.stripCasts(load.getPointer());
+    return load.getType().equals("i32") && !(pointer instanceof GetElementPtrInstruction) && !(pointer instanceof AllocaInstruction) && !(pointer instanceof GlobalVariable) && !(pointer instanceof Argument && pointer.getName().equals("%this"));
+  }
+
+  // Two hoisted instructions with the same key compute the same value
+  private static String valueKey(Instruction instruction) {
+    StringBuilder key = new StringBuilder(instruction.getOpcode().getMnemonic()).append(' ').append(instruction.getType());
+    if (instruction instanceof CompareInstruction) {
+      key.append(' ').append(((CompareInstruction)instruction).getPredicate().getMnemonic());
+    } else if (instruction instanceof GetElementPtrInstruction) {
+      key.append(' ').append(((GetElementPtrInstruction)instruction).getSourceElementType());
+    }
+    for (Value operand : instruction.getOperands()) {
+      key.append(", ").append(operand.getType()).append(' ').append(operand.getName());
+    }
+    return key.toString();
+  }
+
+  // Prints what was hoisted out of every loop
+  public void printReport(PrintStream out) {
+    for (Map.Entry<String,int[]> entry : this.hoistedCounts.entrySet()) {
+      int[] counts = entry.getValue();
+      out.println("Loop " + entry.getKey() + " : " + counts[0] + " addresses, " + counts[1] + " field loads, " + counts[2] + " array lengths hoisted");
+    }
+  }
+}
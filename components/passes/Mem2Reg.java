@@ -0,0 +1,272 @@
+package components.passes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import components.ir.AllocaInstruction;
+import components.ir.BasicBlock;
+import components.ir.ConstantInt;
+import components.ir.ConstantNull;
+import components.ir.Function;
+import components.ir.Instruction;
+import components.ir.LoadInstruction;
+import components.ir.Module;
+import components.ir.PhiInstruction;
+import components.ir.StoreInstruction;
+import components.ir.Value;
+
+// Promotes the stack slots of locals and arguments to SSA registers.
+// An alloca of the entry block is promoted when it is only used as the pointer of loads and stores (so its address never escapes).
+// Phis are placed on the iterated dominance frontiers of the blocks that store to the slot and the loads are then
+// replaced with the reaching definition while walking the dominator tree.
+public class Mem2Reg {
+  private int promoted;
+
+  public Mem2Reg() {
+    this.promoted = 0;
+  }
+
+  // Number of stack slots promoted so far
+  public int getPromotedCount() {
+    return this.promoted;
+  }
+
+  public void run(Module module) {
+    for (Function function : module.getFunctions()) {
+      if (!function.isDeclaration()) {
+        this.run(function);
+      }
+    }
+  }
+
+  public void run(Function function) {
+    this.promote(function, this.findPromotableAllocas(function));
+  }
+
+  // Promotes the given allocas of the entry block, which must only be used as the pointer of loads and stores
+  public void promote(Function function,ArrayList<AllocaInstruction> allocas) {
+    if (allocas.isEmpty()) {
+      return;
+    }
+    DominatorTree domTree = new DominatorTree(function);
+    if (IRUtils.removeUnreachableBlocks(function, domTree)) {
+      domTree = new DominatorTree(function);
+    }
+    Map<PhiInstruction,AllocaInstruction> phis = this.insertPhis(allocas, domTree);
+    Map<Value,Value> replacements = this.rename(function, allocas, phis, domTree);
+    this.removeDeadPhis(function, phis, replacements);
+    // Rewrite every remaining use of a removed load or phi with the value that replaced it
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        for (int i = 0;i < instruction.getOperands().size();i++) {
+          Value operand = instruction.getOperand(i);
+          if (replacements.containsKey(operand)) {
+            instruction.setOperand(i, resolve(operand, replacements));
+          }
+        }
+      }
+    }
+    // Finally drop the promoted slots
+    function.getEntryBlock().getInstructions().removeAll(new HashSet<Instruction>(allocas));
+    this.promoted += allocas.size();
+  }
+
+  private ArrayList<AllocaInstruction> findPromotableAllocas(Function function) {
+    ArrayList<AllocaInstruction> allocas = new ArrayList<AllocaInstruction>();
+    for (Instruction instruction : function.getEntryBlock().getInstructions()) {
+      if (instruction instanceof AllocaInstruction) {
+        allocas.add((AllocaInstruction)instruction);
+      }
+    }
+    // Any use other than the pointer of a load or a store lets the address escape
+    Set<Value> escaping = new HashSet<Value>();
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        for (int i = 0;i < instruction.getOperands().size();i++) {
+          Value operand = instruction.getOperand(i);
+          if (!(operand instanceof AllocaInstruction)) {
+            continue;
+          }
+          boolean isPointer = instruction instanceof LoadInstruction || instruction instanceof StoreInstruction && i == 1;
+          if (!isPointer) {
+            escaping.add(operand);
+          }
+        }
+      }
+    }
+    allocas.removeAll(escaping);
+    return allocas;
+  }
+
+  private Map<PhiInstruction,AllocaInstruction> insertPhis(ArrayList<AllocaInstruction> allocas,DominatorTree domTree) {
+    Map<PhiInstruction,AllocaInstruction> phis = new HashMap<PhiInstruction,AllocaInstruction>();
+    Set<AllocaInstruction> promotable = new HashSet<AllocaInstruction>(allocas);
+    // Blocks that store to every slot
+    Map<AllocaInstruction,ArrayList<BasicBlock>> definingBlocks = new HashMap<AllocaInstruction,ArrayList<BasicBlock>>();
+    for (AllocaInstruction alloca : allocas) {
+      definingBlocks.put(alloca, new ArrayList<BasicBlock>());
+    }
+    for (BasicBlock block : domTree.getReversePostorder()) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction instanceof StoreInstruction && promotable.contains(((StoreInstruction)instruction).getPointer())) {
+          ArrayList<BasicBlock> blocks = definingBlocks.get(((StoreInstruction)instruction).getPointer());
+          if (blocks.isEmpty() || blocks.get(blocks.size() - 1) != block) {
+            blocks.add(block);
+          }
+        }
+      }
+    }
+    for (AllocaInstruction alloca : allocas) {
+      String valueType = alloca.getAllocatedType();
+      int phiCounter = 0;
+      Set<BasicBlock> hasPhi = new HashSet<BasicBlock>();
+      ArrayList<BasicBlock> worklist = new ArrayList<BasicBlock>(definingBlocks.get(alloca));
+      Set<BasicBlock> inWorklist = new HashSet<BasicBlock>(worklist);
+      while (!worklist.isEmpty()) {
+        BasicBlock block = worklist.remove(worklist.size() - 1);
+        for (BasicBlock frontierBlock : domTree.getFrontier(block)) {
+          if (hasPhi.add(frontierBlock)) {
+            PhiInstruction phi = new PhiInstruction(valueType, alloca.getName() + "." + phiCounter++);
+            frontierBlock.insert(0, phi);
+            phis.put(phi, alloca);
+            // The phi is a new definition of the slot
+            if (inWorklist.add(frontierBlock)) {
+              worklist.add(frontierBlock);
+            }
+          }
+        }
+      }
+    }
+    return phis;
+  }
+
+  // Removes the loads and stores of the promoted slots. Returns the value that replaces every removed load
+  private Map<Value,Value> rename(Function function,ArrayList<AllocaInstruction> allocas,Map<PhiInstruction,AllocaInstruction> phis,DominatorTree domTree) {
+    Map<Value,Value> replacements = new HashMap<Value,Value>();
+    Map<AllocaInstruction,Integer> indices = new HashMap<AllocaInstruction,Integer>();
+    Value[] initialValues = new Value[allocas.size()];
+    for (int i = 0;i < allocas.size();i++) {
+      indices.put(allocas.get(i), i);
+      // Reading a variable before assigning it yields the zero value of its type
+      String valueType = allocas.get(i).getAllocatedType();
+      initialValues[i] = valueType.endsWith("*") ? new ConstantNull(valueType) : new ConstantInt(valueType, 0);
+    }
+    // Preorder walk of the dominator tree with an explicit stack. Every block starts with the values reaching the end of its immediate dominator
+    ArrayList<BasicBlock> blockStack = new ArrayList<BasicBlock>();
+    ArrayList<Value[]> valuesStack = new ArrayList<Value[]>();
+    blockStack.add(function.getEntryBlock());
+    valuesStack.add(initialValues);
+    while (!blockStack.isEmpty()) {
+      BasicBlock block = blockStack.remove(blockStack.size() - 1);
+      Value[] values = valuesStack.remove(valuesStack.size() - 1);
+      // The kept instructions are copied to a new list instead of removing the others one by one
+      ArrayList<Instruction> kept = new ArrayList<Instruction>(block.getInstructions().size());
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction instanceof LoadInstruction && indices.containsKey(((LoadInstruction)instruction).getPointer())) {
+          replacements.put(instruction, values[indices.get(((LoadInstruction)instruction).getPointer())]);
+          continue;
+        }
+        if (instruction instanceof StoreInstruction && indices.containsKey(((StoreInstruction)instruction).getPointer())) {
+          values[indices.get(((StoreInstruction)instruction).getPointer())] = ((StoreInstruction)instruction).getValue();
+          continue;
+        }
+        if (instruction instanceof PhiInstruction && phis.containsKey(instruction)) {
+          values[indices.get(phis.get(instruction))] = instruction;
+        }
+        kept.add(instruction);
+      }
+      block.getInstructions().clear();
+      block.getInstructions().addAll(kept);
+      // Fill the incoming values of the phis of the successors
+      for (BasicBlock successor : block.getSuccessors()) {
+        for (Instruction instruction : successor.getInstructions()) {
+          if (!(instruction instanceof PhiInstruction)) {
+            break;
+          }
+          AllocaInstruction alloca = phis.get(instruction);
+          if (alloca != null && ((PhiInstruction)instruction).getIncomingValueFor(block) == null) {
+            ((PhiInstruction)instruction).addIncoming(values[indices.get(alloca)], block);
+          }
+        }
+      }
+      for (BasicBlock child : domTree.getChildren(block)) {
+        blockStack.add(child);
+        valuesStack.add(values.clone());
+      }
+    }
+    return replacements;
+  }
+
+  // The phis placed on the frontiers are not pruned, so the ones that no instruction needs are removed here.
+  // Phis whose incoming values are all the same value (or the phi itself) are replaced with that value
+  private void removeDeadPhis(Function function,Map<PhiInstruction,AllocaInstruction> phis,Map<Value,Value> replacements) {
+    // A phi is live if a non phi instruction uses it, directly or through other phis
+    Set<PhiInstruction> live = new LinkedHashSet<PhiInstruction>();
+    ArrayList<PhiInstruction> worklist = new ArrayList<PhiInstruction>();
+    for (BasicBlock block : function.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (phis.containsKey(instruction)) {
+          continue;
+        }
+        for (Value operand : instruction.getOperands()) {
+          Value value = resolve(operand, replacements);
+          if (phis.containsKey(value) && live.add((PhiInstruction)value)) {
+            worklist.add((PhiInstruction)value);
+          }
+        }
+      }
+    }
+    while (!worklist.isEmpty()) {
+      PhiInstruction phi = worklist.remove(worklist.size() - 1);
+      for (Value operand : phi.getOperands()) {
+        Value value = resolve(operand, replacements);
+        if (phis.containsKey(value) && live.add((PhiInstruction)value)) {
+          worklist.add((PhiInstruction)value);
+        }
+      }
+    }
+    // Replacing a trivial phi can make the phis that use it trivial as well
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (PhiInstruction phi : live) {
+        if (replacements.containsKey(phi)) {
+          continue;
+        }
+        Value same = null;
+        boolean trivial = true;
+        for (Value operand : phi.getOperands()) {
+          Value value = resolve(operand, replacements);
+          if (value == phi || value == same) {
+            continue;
+          }
+          if (same != null) {
+            trivial = false;
+            break;
+          }
+          same = value;
+        }
+        if (trivial && same != null) {
+          replacements.put(phi, same);
+          changed = true;
+        }
+      }
+    }
+    for (BasicBlock block : function.getBlocks()) {
+      block.getInstructions().removeIf(instruction -> phis.containsKey(instruction) && (!live.contains(instruction) || replacements.containsKey(instruction)));
+    }
+  }
+
+  // Follows a chain of replaced values to the value that is actually defined
+  private static Value resolve(Value value,Map<Value,Value> replacements) {
+    Value replacement;
+    while ((replacement = replacements.get(value)) != null) {
+      value = replacement;
+    }
+    return value;
+  }
+}
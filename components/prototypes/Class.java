@@ -1,11 +1,15 @@
 package components.prototypes;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import components.helpers.ErrorCode;
+import components.helpers.SemanticException;
 import components.helpers.Utils;
+import components.types.ClassType;
 
 public class Class {
   private Class parentClass;
@@ -16,7 +20,13 @@ public class Class {
   private Map<String,Method> methodsMap;
   private ArrayList<Method> vtable;
   private boolean isMain;
+  private int id;
+  private Scope scope;
+  private ClassType type;
   protected int varOffset;
+  // The fields and methods of the class and its parents, set by freeze. A method of the class hides the one it overrides
+  private LookupTable<Variable> allVariables;
+  private LookupTable<Method> allMethods;
 
   public Class(String name,boolean isMainClass) {
     this.name = name;
@@ -27,7 +37,12 @@ public class Class {
     this.methodsMap = new HashMap<String,Method>();
     this.vtable = new ArrayList<Method>();
     this.isMain = isMainClass;
+    this.id = 0;
+    this.scope = new Scope(this, null);
+    this.type = null;
     this.varOffset = 0;
+    this.allVariables = null;
+    this.allMethods = null;
   }
 
   public Class(String name,Class parentClass,boolean isMainClass) {
@@ -49,6 +64,27 @@ public class Class {
     return this.parentClass;
   }
 
+  // Position of the class in the symbol table, in declaration order
+  public int getId() {
+    return this.id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  public Scope getScope() {
+    return this.scope;
+  }
+
+  // Created on first use, once the ids of the class and its parents are set
+  public ClassType getType() {
+    if (this.type == null) {
+      this.type = new ClassType(this);
+    }
+    return this.type;
+  }
+
   public ArrayList<Variable> getVariablesList() {
     return this.variables;
   }
@@ -66,32 +102,53 @@ public class Class {
     return this.varOffset + 8;
   }
 
+  // Bytes taken by the fields of the class and its parents
+  public int getFieldsSize() {
+    return this.varOffset;
+  }
+
+  public void setFieldsSize(int fieldsSize) {
+    this.varOffset = fieldsSize;
+  }
+
   public void insertVariable(String type,String name) throws Exception {
     // Check if a variable with the same name was already declared in this class
     if (!this.variablesMap.containsKey(name)) {
       Variable newVariable = new Variable(type, name,this.varOffset);
+      newVariable.setIndex(this.variables.size());
       this.variables.add(newVariable);
       this.variablesMap.put(name, newVariable);
       this.varOffset += Utils.getTypeSize(newVariable.getType());
     } else {
-      throw new Exception("Duplicate field " + this.name + "." + name);
+      throw new SemanticException(ErrorCode.DUPLICATE_VARIABLE, "Duplicate field " + this.name + "." + name);
     }
   }
 
-  public int getVariableOffset(String varName) {
-    if (!this.variablesMap.containsKey(varName)) {
-      return this.parentClass != null ? this.parentClass.getVariableOffset(varName) : null;
-    } else {
-      return this.variablesMap.get(varName).getOffset();
+  // Flattens the fields and methods of the class and its parents in one table each, so that looking up a name takes a
+  // single probe at any depth of the hierarchy. Called once the symbol table is complete, after freezing the parent
+  public void freeze() {
+    Map<String,Variable> variables = new HashMap<String,Variable>();
+    Map<String,Method> methods = new HashMap<String,Method>();
+    if (this.parentClass != null) {
+      this.parentClass.allVariables.forEach(variables::put);
+      this.parentClass.allMethods.forEach(methods::put);
     }
+    variables.putAll(this.variablesMap);
+    methods.putAll(this.methodsMap);
+    this.allVariables = new LookupTable<Variable>(variables);
+    this.allMethods = new LookupTable<Method>(methods);
   }
 
   protected boolean hasMethod(String name) {
     return this.methodsMap.containsKey(name);
   }
 
-  // Search for a method with a specific name on parent classes and also this class
+  // Search for a method with a specific name on parent classes and also this class.
+  // Once the class is frozen this is a single lookup, which finds the method of the class before the one it overrides
   public Method getMethodRecursively(String name) {
+    if (this.allMethods != null) {
+      return this.allMethods.get(name);
+    }
     Method method;
     // Search the parent class if exists
     if (this.parentClass != null && (method = this.parentClass.getMethodRecursively(name)) != null) {
@@ -102,13 +159,13 @@ public class Class {
   }
 
   public Method getMethod(String name) {
-    return this.methodsMap.containsKey(name) ? this.methodsMap.get(name) : null;
+    return this.methodsMap.get(name);
   }
 
   private void addNewMethod(String returnType, String name,ArrayList<Variable> args,Method parentMethod) throws Exception {
     // Check if parent method(if exists) has the same amount of arguments
     if (parentMethod != null && parentMethod.argc() != args.size()) {
-      throw new Exception("'" + this.name + "." + name + "' does not have the same amount of arguments with '" + parentMethod.getOwnClass().getName() + "." + parentMethod.getName() + "'");
+      throw new SemanticException(ErrorCode.INCOMPATIBLE_OVERRIDE, "'" + this.name + "." + name + "' does not have the same amount of arguments with '" + parentMethod.getOwnClass().getName() + "." + parentMethod.getName() + "'");
     }
     // Initialize method
     Method newMethod = new Method(returnType, name,this);
@@ -117,7 +174,7 @@ public class Class {
       newMethod.insertArgument(args.get(i));
       // Check for argument type match with parent method
       if (parentMethod != null && !parentMethod.getNthArgument(i).getType().equals(args.get(i).getType())) {
-        throw new Exception("Argument '" + args.get(i).getType() + " " + args.get(i).getName() + "' of '" + this.name + "." + newMethod.getName() + "' does not match argument '" + parentMethod.getNthArgument(i).getType() + " " + parentMethod.getNthArgument(i).getName() + "' of '" + parentMethod.getOwnClass().getName() + "." + parentMethod.getName() + "'");
+        throw new SemanticException(ErrorCode.INCOMPATIBLE_OVERRIDE, "Argument '" + args.get(i).getType() + " " + args.get(i).getName() + "' of '" + this.name + "." + newMethod.getName() + "' does not match argument '" + parentMethod.getNthArgument(i).getType() + " " + parentMethod.getNthArgument(i).getName() + "' of '" + parentMethod.getOwnClass().getName() + "." + parentMethod.getName() + "'");
       }
     }
     this.methods.add(newMethod);
@@ -152,58 +209,43 @@ public class Class {
         if (method.getReturnType().equals(returnType)) {
           this.addNewMethod(returnType, name,args,method);
         } else {
-          throw new Exception("The return type of " + this.name + "." + name + "() is incompatible with " + method.getOwnClass().getName() + "." + method.getName() + "()");
+          throw new SemanticException(ErrorCode.INCOMPATIBLE_OVERRIDE, "The return type of " + this.name + "." + name + "() is incompatible with " + method.getOwnClass().getName() + "." + method.getName() + "()");
         }
       } else {
-        throw new Exception("Duplicate method " + method.getOwnClass().getName() + "." + method.getName() + "(" + argsToString(args) + ")");
+        throw new SemanticException(ErrorCode.DUPLICATE_METHOD, "Duplicate method " + method.getOwnClass().getName() + "." + method.getName() + "(" + argsToString(args) + ")");
       }
     }
   }
 
-  public int getMethodOffset(String methodName) {
-    if (!this.methodsMap.containsKey(methodName)) {
-      return this.parentClass != null ? this.parentClass.getMethodOffset(methodName) : null;
-    } else {
-      return this.methodsMap.get(methodName).getOffset();
-    }
-  }
-
   public Variable getVariable(String name) {
-    if (this.parentClass == null) {
+    if (this.allVariables != null) {
+      return this.allVariables.get(name);
+    } else if (this.parentClass == null) {
       return this.variablesMap.containsKey(name) ? this.variablesMap.get(name) : null;
     } else {
       return this.variablesMap.containsKey(name) ? this.variablesMap.get(name) : this.parentClass.getVariable(name);
     }
   }
 
-  private void printVariableOffsets() {
+  private void printVariableOffsets(PrintStream out) {
     this.variables.forEach(var -> {
-        System.out.println(this.name + "." + var.getName() + " : " + var.getOffset());
+        out.println(this.name + "." + var.getName() + " : " + var.getOffset());
     });
   }
 
-  private void printMethodOffsets() {
+  private void printMethodOffsets(PrintStream out) {
     this.methods.forEach(method -> {
       if (this.parentClass == null || this.parentClass != null && !this.parentClass.hasMethod(method.getName())) {
-        System.out.println(this.name + "." + method.getName() + " : " + method.getOffset());
+        out.println(this.name + "." + method.getName() + " : " + method.getOffset());
       }
     });
   }
 
   // Check if given type matches this class's type or any of it's parents classes types
-  public boolean checkType(String type) {
-    if (type.equals(this.name)) {
-      return true;
-    } else {
-      // Search parent class
-      return this.parentClass != null ? this.parentClass.checkType(type) : false;
-    }
-  }
-
-  public void printOffsetTable() {
+  public void printOffsetTable(PrintStream out) {
     // Print variable offsets
-    this.printVariableOffsets();
+    this.printVariableOffsets(out);
     // Print method offsets
-    this.printMethodOffsets();
+    this.printMethodOffsets(out);
   }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package components.prototypes;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Immutable hash table from names to values with open addressing. It is built once from a map and only read after,
+// so a lookup is an array probe at the slot of the name's hash, which almost always holds the name or is empty
+class LookupTable<V> {
+  private String[] keys;
+  private Object[] values;
+  private int mask;
+
+  LookupTable(Map<String,V> entries) {
+    // At most half full, so runs of occupied slots stay short
+    int capacity = 2;
+    while (capacity < 2 * entries.size()) {
+      capacity <<= 1;
+    }
+    this.keys = new String[capacity];
+    this.values = new Object[capacity];
+    this.mask = capacity - 1;
+    for (Map.Entry<String,V> entry : entries.entrySet()) {
+      int slot = slot(entry.getKey());
+      while (this.keys[slot] != null) {
+        slot = (slot + 1) & this.mask;
+      }
+      this.keys[slot] = entry.getKey();
+      this.values[slot] = entry.getValue();
+    }
+  }
+
+  private int slot(String key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & this.mask;
+  }
+
+  // Returns null if there is no entry with the name
+  @SuppressWarnings("unchecked")
+  V get(String name) {
+    int slot = slot(name);
+    String key;
+    while ((key = this.keys[slot]) != null) {
+      if (key == name || key.equals(name)) {
+        return (V)this.values[slot];
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  void forEach(BiConsumer<String,V> action) {
+    for (int slot = 0;slot < this.keys.length;slot++) {
+      if (this.keys[slot] != null) {
+        action.accept(this.keys[slot], (V)this.values[slot]);
+      }
+    }
+  }
+}
@@ -4,6 +4,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import components.helpers.ErrorCode;
+import components.helpers.SemanticException;
+import components.types.Type;
+
 public class Method {
   private String returnType;
   private String name;
@@ -13,6 +17,8 @@ public class Method {
   private Map<String,Variable> variables;
   private ArrayList<Variable> variablesList;
   private int offset;
+  private Scope scope;
+  private Type resolvedReturnType;
 
   public Method(String returnType,String name,Class ownClass) {
     this.returnType = returnType;
@@ -23,12 +29,23 @@ public class Method {
     this.variables = new HashMap<String,Variable>();
     this.variablesList = new ArrayList<Variable>();
     this.offset = 0;
+    this.scope = new Scope(ownClass, this);
+    this.resolvedReturnType = null;
   }
 
   public String getReturnType() {
     return this.returnType;
   }
 
+  // Type object of the return type, set by the symbol table the first time it is needed
+  public Type getResolvedReturnType() {
+    return this.resolvedReturnType;
+  }
+
+  public void setResolvedReturnType(Type resolvedReturnType) {
+    this.resolvedReturnType = resolvedReturnType;
+  }
+
   public String getName() {
     return this.name;
   }
@@ -45,13 +62,23 @@ public class Method {
     this.offset = offset;
   }
 
+  public Scope getScope() {
+    return this.scope;
+  }
+
+  // Number of arguments and locals
+  public int getVariableCount() {
+    return this.argumnents.size() + this.variablesList.size();
+  }
+
   public void insertArgument(Variable arg) throws Exception{
     // Check if argument with the same name was already declared
     if (!this.argumentsMap.containsKey(arg.getName())) {
+      arg.setIndex(this.argumnents.size());
       this.argumnents.add(arg);
       this.argumentsMap.put(arg.getName(), arg);
     } else {
-      throw new Exception("Duplicate local variable " + name + " in method " + this.ownClass.getName() + "." + this.name);
+      throw new SemanticException(ErrorCode.DUPLICATE_VARIABLE, "Duplicate local variable " + name + " in method " + this.ownClass.getName() + "." + this.name);
     }
   }
 
@@ -61,10 +88,11 @@ public class Method {
 
   public void insertVariable(Variable var) throws Exception{
     if (!this.argumentsMap.containsKey(var.getName()) && !this.variables.containsKey(var.getName())) {
+      var.setIndex(this.getVariableCount());
       this.variables.put(var.getName(), var);
       this.variablesList.add(var);
     } else {
-      throw new Exception("Duplicate local variable " + var.getName() + " in method " + this.ownClass.getName() + "." + this.name);
+      throw new SemanticException(ErrorCode.DUPLICATE_VARIABLE, "Duplicate local variable " + var.getName() + " in method " + this.ownClass.getName() + "." + this.name);
     }
   }
 
@@ -77,12 +105,7 @@ public class Method {
   }
 
   public Variable getVariable(String name) {
-    if (this.variables.containsKey(name)) {
-      return this.variables.get(name);
-    } else if (this.argumentsMap.containsKey(name)) {
-      return this.argumentsMap.get(name);
-    } else {
-      return null;
-    }
+    Variable var = this.variables.get(name);
+    return var != null ? var : this.argumentsMap.get(name);
   }
 }
\ No newline at end of file
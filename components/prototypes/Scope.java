@@ -0,0 +1,38 @@
+package components.prototypes;
+
+// Scope of the statements of a class (the main class) or a method. Every class and every method owns exactly one scope
+// object, which the visitors pass around instead of a "Class:method" string
+public class Scope {
+  private Class ownClass;
+  private Method method;
+
+  public Scope(Class ownClass,Method method) {
+    this.ownClass = ownClass;
+    this.method = method;
+  }
+
+  public Class getOwnClass() {
+    return this.ownClass;
+  }
+
+  // Returns null in the scope of a class
+  public Method getMethod() {
+    return this.method;
+  }
+
+  // Searches the locals and the arguments of the method first and then the fields of the class and its parents
+  public Variable lookup(String name) {
+    if (this.method != null) {
+      Variable var = this.method.getVariable(name);
+      if (var != null) {
+        return var;
+      }
+    }
+    return this.ownClass.getVariable(name);
+  }
+
+  // Printed as the old scope strings in error messages (Class or Class:method)
+  public String toString() {
+    return this.method == null ? this.ownClass.getName() : this.ownClass.getName() + ":" + this.method.getName();
+  }
+}
@@ -1,23 +1,32 @@
 package components.prototypes;
 
 import components.helpers.Utils;
+import components.types.Type;
 
 public class Variable {
   private String type;
   private String name;
   private int size;
   private int offset;
+  private int index;
+  private boolean isField;
+  private Type resolvedType;
 
   public Variable(String type,String name) {
     this.type = type;
     this.name = name;
     this.size = Utils.getTypeSize(type);
     this.offset = 0;
+    this.index = 0;
+    this.isField = false;
+    this.resolvedType = null;
   }
 
+  // Field of a class
   public Variable(String type,String name,int offset) {
     this(type, name);
     this.offset = offset;
+    this.isField = true;
   }
 
   public String getType() {
@@ -35,4 +44,30 @@ public class Variable {
   public int getOffset() {
     return this.offset;
   }
+
+  public void setOffset(int offset) {
+    this.offset = offset;
+  }
+
+  // Position of the variable in its method (arguments first, then locals) or in the fields of its class
+  public int getIndex() {
+    return this.index;
+  }
+
+  public void setIndex(int index) {
+    this.index = index;
+  }
+
+  public boolean isField() {
+    return this.isField;
+  }
+
+  // Type object of the variable, set by the symbol table the first time it is needed
+  public Type getResolvedType() {
+    return this.resolvedType;
+  }
+
+  public void setResolvedType(Type resolvedType) {
+    this.resolvedType = resolvedType;
+  }
 }
\ No newline at end of file
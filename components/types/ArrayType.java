@@ -0,0 +1,14 @@
+package components.types;
+
+public class ArrayType extends Type {
+  private Type elementType;
+
+  ArrayType(Type elementType) {
+    super(elementType.getName() + "[]");
+    this.elementType = elementType;
+  }
+
+  public Type getElementType() {
+    return this.elementType;
+  }
+}
@@ -0,0 +1,33 @@
+package components.types;
+
+import java.util.BitSet;
+
+import components.prototypes.Class;
+
+// Type of the objects of a class. The ids of the class and of all its ancestors are kept in a bitset,
+// so checking whether it is a subtype of another class is a single lookup instead of a walk up the hierarchy
+public class ClassType extends Type {
+  private Class cl;
+  private BitSet ancestors;
+
+  public ClassType(Class cl) {
+    super(cl.getName());
+    this.cl = cl;
+    Class parentClass = cl.getParentClass();
+    if (parentClass != null) {
+      ClassType parentType = parentClass.getType();
+      this.ancestors = (BitSet)parentType.ancestors.clone();
+    } else {
+      this.ancestors = new BitSet();
+    }
+    this.ancestors.set(cl.getId());
+  }
+
+  public Class getClassObj() {
+    return this.cl;
+  }
+
+  public boolean isSubtypeOf(Type other) {
+    return other instanceof ClassType && this.ancestors.get(((ClassType)other).cl.getId());
+  }
+}
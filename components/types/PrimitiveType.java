@@ -0,0 +1,8 @@
+package components.types;
+
+public class PrimitiveType extends Type {
+
+  PrimitiveType(String name) {
+    super(name);
+  }
+}
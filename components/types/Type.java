@@ -0,0 +1,33 @@
+package components.types;
+
+// Type of a MiniJava expression. There is a single instance of every type (primitive and array types are the
+// constants below and every class has its own ClassType), so types are compared with ==
+public abstract class Type {
+  public static final PrimitiveType INT = new PrimitiveType("int");
+  public static final PrimitiveType BOOLEAN = new PrimitiveType("boolean");
+  public static final PrimitiveType STRING = new PrimitiveType("String");
+  public static final ArrayType INT_ARRAY = new ArrayType(INT);
+  public static final ArrayType BOOLEAN_ARRAY = new ArrayType(BOOLEAN);
+  public static final ArrayType STRING_ARRAY = new ArrayType(STRING);
+  // Type of an expression with an error that was already reported. It matches every type, so the error is reported once
+  public static final PrimitiveType ERROR = new PrimitiveType("<error>");
+
+  private String name;
+
+  protected Type(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  // Whether a value of this type can be assigned to a variable of the other type
+  public boolean isSubtypeOf(Type other) {
+    return this == other;
+  }
+
+  public String toString() {
+    return this.name;
+  }
+}
@@ -0,0 +1,275 @@
+package components.visitors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import components.ir.*;
+import components.ir.Module;
+import components.prototypes.Class;
+import components.prototypes.Variable;
+
+// Runtime of the mark-sweep garbage collector, generated in the module of the program.
+// Every object and array is allocated by gc_alloc with a header of 4 words before the address the program sees:
+// the header of the previously allocated object, the pointer map of the object (null for arrays, which never hold
+// pointers), the size in bytes and the mark link. The pointer map of a class is an i32 array with the number of its
+// pointer fields followed by their offsets. The roots are found in the shadow stack: every function with pointers to
+// keep alive links a frame to @.gc_top with gc_enter, made of the previous frame, the number of slots and the slots.
+// A collection runs when an allocation would take the heap over twice the bytes that survived the last one (4MB at
+// least). It pushes every non null slot on the mark stack, which is linked through the mark links of the headers (a
+// marked object has a non null mark link, @.gc_end at the bottom of the stack), scans the fields of the popped objects
+// and then frees every object that was not marked
+class GcRuntime {
+  private static final int HEADER_SIZE = 32;
+  private static final int MIN_THRESHOLD = 1 << 22;
+
+  private Module module;
+  private IRBuilder builder;
+  private GlobalVariable top;
+  private GlobalVariable objects;
+  private GlobalVariable gray;
+  private GlobalVariable end;
+  private GlobalVariable allocated;
+  private GlobalVariable threshold;
+  private Function alloc;
+  private Function enter;
+  private Function push;
+  private Function collect;
+  private Map<Class,Constant> pointerMaps;
+
+  public GcRuntime(Module module,IRBuilder builder,Function calloc) {
+    this.module = module;
+    this.builder = builder;
+    this.pointerMaps = new HashMap<Class,Constant>();
+    this.top = module.addGlobal(".gc_top", new ConstantNull("i8**"), false);
+    this.objects = module.addGlobal(".gc_objects", new ConstantNull("i8*"), false);
+    this.gray = module.addGlobal(".gc_gray", new ConstantNull("i8*"), false);
+    this.end = module.addGlobal(".gc_end", new ConstantInt("i8", 0), false);
+    this.allocated = module.addGlobal(".gc_allocated", new ConstantInt("i64", 0), false);
+    this.threshold = module.addGlobal(".gc_threshold", new ConstantInt("i64", MIN_THRESHOLD), false);
+    Function free = module.addFunction("void", "free");
+    free.addArgument("i8*", null);
+    this.push = module.addFunction("void", "gc_push");
+    this.collect = module.addFunction("void", "gc_collect");
+    this.alloc = module.addFunction("i8*", "gc_alloc");
+    this.enter = module.addFunction("void", "gc_enter");
+    this.generatePush();
+    this.generateCollect(free);
+    this.generateAlloc(calloc);
+    this.generateEnter();
+  }
+
+  // gc_alloc(i64 bytes, i8* pointer map): returns the address of bytes zeroed bytes, bytes being a multiple of 8
+  public Function getAlloc() {
+    return this.alloc;
+  }
+
+  // gc_enter(i8** frame, i64 slots): clears the slots of the frame and links it to the shadow stack
+  public Function getEnter() {
+    return this.enter;
+  }
+
+  // The frame of the innermost function, restored to the previous frame by the functions when they return
+  public GlobalVariable getTop() {
+    return this.top;
+  }
+
+  // Pointer map of objects of a class: the offsets of the fields that hold objects or arrays, inherited ones included
+  public Constant pointerMap(Class cl) {
+    if (this.pointerMaps.containsKey(cl)) {
+      return this.pointerMaps.get(cl);
+    }
+    ArrayList<Constant> offsets = new ArrayList<Constant>();
+    offsets.add(null);
+    for (Class current = cl;current != null;current = current.getParentClass()) {
+      for (Variable field : current.getVariablesList()) {
+        if (!field.getType().equals("int") && !field.getType().equals("boolean")) {
+          offsets.add(ConstantInt.getInt(field.getOffset() + 8));
+        }
+      }
+    }
+    Constant map = new ConstantNull("i8*");
+    if (offsets.size() > 1) {
+      offsets.set(0, ConstantInt.getInt(offsets.size() - 1));
+      map = new ConstantBitcast(this.module.addGlobal("." + cl.getName() + "_ptrmap", new ConstantArray("i32", offsets), true), "i8*");
+    }
+    this.pointerMaps.put(cl, map);
+    return map;
+  }
+
+  private Value header(Value pointer,int word) {
+    Value header = this.builder.cast(Opcode.BITCAST, this.builder.gep("i8", "i8*", pointer, ConstantInt.getInt(-HEADER_SIZE)), "i8**");
+    return word == 0 ? header : this.builder.gep("i8*", "i8**", header, ConstantInt.getInt(word));
+  }
+
+  private void generatePush() {
+    Value pointer = this.push.addArgument("i8*", "%p");
+    this.builder.setBlock(this.push.addBlock("entry"));
+    BasicBlock unmarked = this.push.addBlock("unmarked");
+    BasicBlock done = this.push.addBlock("done");
+    Value link = this.header(pointer, 3);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.EQ, this.builder.load("i8*", link), new ConstantNull("i8*")), unmarked, done);
+    this.builder.setBlock(unmarked);
+    this.builder.store(this.builder.load("i8*", this.gray), link);
+    this.builder.store(pointer, this.gray);
+    this.builder.br(done);
+    this.builder.setBlock(done);
+    this.builder.ret(null);
+  }
+
+  private void generateCollect(Function free) {
+    this.builder.setBlock(this.collect.addBlock("entry"));
+    Value frame = this.builder.alloca("i8**", "%frame");
+    Value slot = this.builder.alloca("i64", "%slot");
+    Value field = this.builder.alloca("i32", "%field");
+    Value link = this.builder.alloca("i8**", "%link");
+    Value live = this.builder.alloca("i64", "%live");
+    BasicBlock frames = this.collect.addBlock("frames");
+    BasicBlock frameBlock = this.collect.addBlock("frame");
+    BasicBlock slots = this.collect.addBlock("slots");
+    BasicBlock slotBlock = this.collect.addBlock("slot");
+    BasicBlock pushRoot = this.collect.addBlock("push_root");
+    BasicBlock nextFrame = this.collect.addBlock("next_frame");
+    BasicBlock mark = this.collect.addBlock("mark");
+    BasicBlock scan = this.collect.addBlock("scan");
+    BasicBlock fields = this.collect.addBlock("fields");
+    BasicBlock fieldBlock = this.collect.addBlock("field");
+    BasicBlock pushField = this.collect.addBlock("push_field");
+    BasicBlock objectsBlock = this.collect.addBlock("objects");
+    BasicBlock object = this.collect.addBlock("object");
+    BasicBlock freeBlock = this.collect.addBlock("free");
+    BasicBlock keep = this.collect.addBlock("keep");
+    BasicBlock done = this.collect.addBlock("done");
+    BasicBlock grow = this.collect.addBlock("grow");
+    BasicBlock exit = this.collect.addBlock("exit");
+    this.builder.store(this.end, this.gray);
+    this.builder.store(this.builder.load("i8**", this.top), frame);
+    this.builder.br(frames);
+    // Push the slots of every frame of the shadow stack
+    this.builder.setBlock(frames);
+    Value currentFrame = this.builder.load("i8**", frame);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, currentFrame, new ConstantNull("i8**")), frameBlock, mark);
+    this.builder.setBlock(frameBlock);
+    Value slotCount = this.builder.load("i64", this.builder.cast(Opcode.BITCAST, this.builder.gep("i8*", "i8**", currentFrame, ConstantInt.getInt(1)), "i64*"));
+    this.builder.store(new ConstantInt("i64", 0), slot);
+    this.builder.br(slots);
+    this.builder.setBlock(slots);
+    Value slotIndex = this.builder.load("i64", slot);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SLT, slotIndex, slotCount), slotBlock, nextFrame);
+    this.builder.setBlock(slotBlock);
+    Value root = this.builder.load("i8*", this.builder.gep("i8*", "i8**", currentFrame, this.builder.binary(Opcode.ADD, "i64", slotIndex, new ConstantInt("i64", 2))));
+    this.builder.store(this.builder.binary(Opcode.ADD, "i64", slotIndex, new ConstantInt("i64", 1)), slot);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, root, new ConstantNull("i8*")), pushRoot, slots);
+    this.builder.setBlock(pushRoot);
+    this.builder.call("void", this.push, root);
+    this.builder.br(slots);
+    this.builder.setBlock(nextFrame);
+    this.builder.store(this.builder.cast(Opcode.BITCAST, this.builder.load("i8*", currentFrame), "i8**"), frame);
+    this.builder.br(frames);
+    // Pop objects from the mark stack and push the objects their fields point to
+    this.builder.setBlock(mark);
+    Value pointer = this.builder.load("i8*", this.gray);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, pointer, this.end), scan, objectsBlock);
+    this.builder.setBlock(scan);
+    this.builder.store(this.builder.load("i8*", this.header(pointer, 3)), this.gray);
+    Value map = this.builder.load("i8*", this.header(pointer, 1));
+    this.builder.store(ConstantInt.getInt(0), field);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, map, new ConstantNull("i8*")), fields, mark);
+    this.builder.setBlock(fields);
+    Value offsets = this.builder.cast(Opcode.BITCAST, map, "i32*");
+    Value fieldIndex = this.builder.load("i32", field);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SLT, fieldIndex, this.builder.load("i32", offsets)), fieldBlock, mark);
+    this.builder.setBlock(fieldBlock);
+    Value offset = this.builder.load("i32", this.builder.gep("i32", "i32*", offsets, this.builder.binary(Opcode.ADD, "i32", fieldIndex, ConstantInt.getInt(1))));
+    Value child = this.builder.load("i8*", this.builder.cast(Opcode.BITCAST, this.builder.gep("i8", "i8*", pointer, offset), "i8**"));
+    this.builder.store(this.builder.binary(Opcode.ADD, "i32", fieldIndex, ConstantInt.getInt(1)), field);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, child, new ConstantNull("i8*")), pushField, fields);
+    this.builder.setBlock(pushField);
+    this.builder.call("void", this.push, child);
+    this.builder.br(fields);
+    // Free the objects that were not marked and unmark the rest. link is the address of the pointer to the current object
+    this.builder.setBlock(objectsBlock);
+    this.builder.store(this.builder.cast(Opcode.BITCAST, this.objects, "i8**"), link);
+    this.builder.store(new ConstantInt("i64", 0), live);
+    this.builder.br(object);
+    this.builder.setBlock(object);
+    Value currentLink = this.builder.load("i8**", link);
+    Value header = this.builder.load("i8*", currentLink);
+    BasicBlock examine = this.collect.addBlock("examine");
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.NE, header, new ConstantNull("i8*")), examine, done);
+    this.builder.setBlock(examine);
+    Value words = this.builder.cast(Opcode.BITCAST, header, "i8**");
+    Value markLink = this.builder.gep("i8*", "i8**", words, ConstantInt.getInt(3));
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.EQ, this.builder.load("i8*", markLink), new ConstantNull("i8*")), freeBlock, keep);
+    this.builder.setBlock(freeBlock);
+    this.builder.store(this.builder.load("i8*", words), currentLink);
+    this.builder.call("void", free, header);
+    this.builder.br(object);
+    this.builder.setBlock(keep);
+    this.builder.store(new ConstantNull("i8*"), markLink);
+    Value size = this.builder.load("i64", this.builder.cast(Opcode.BITCAST, this.builder.gep("i8*", "i8**", words, ConstantInt.getInt(2)), "i64*"));
+    this.builder.store(this.builder.binary(Opcode.ADD, "i64", this.builder.load("i64", live), size), live);
+    this.builder.store(words, link);
+    this.builder.br(object);
+    // The next collection runs after allocating twice the surviving bytes, and at least MIN_THRESHOLD bytes
+    this.builder.setBlock(done);
+    Value liveBytes = this.builder.load("i64", live);
+    Value nextThreshold = this.builder.binary(Opcode.MUL, "i64", liveBytes, new ConstantInt("i64", 2));
+    this.builder.store(liveBytes, this.allocated);
+    this.builder.store(new ConstantInt("i64", MIN_THRESHOLD), this.threshold);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SGT, nextThreshold, new ConstantInt("i64", MIN_THRESHOLD)), grow, exit);
+    this.builder.setBlock(grow);
+    this.builder.store(nextThreshold, this.threshold);
+    this.builder.br(exit);
+    this.builder.setBlock(exit);
+    this.builder.ret(null);
+  }
+
+  private void generateAlloc(Function calloc) {
+    Value bytes = this.alloc.addArgument("i64", "%bytes");
+    Value map = this.alloc.addArgument("i8*", "%map");
+    this.builder.setBlock(this.alloc.addBlock("entry"));
+    BasicBlock collectBlock = this.alloc.addBlock("collect");
+    BasicBlock allocate = this.alloc.addBlock("allocate");
+    Value total = this.builder.binary(Opcode.ADD, "i64", this.builder.load("i64", this.allocated), bytes);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SGT, total, this.builder.load("i64", this.threshold)), collectBlock, allocate);
+    this.builder.setBlock(collectBlock);
+    this.builder.call("void", this.collect);
+    this.builder.br(allocate);
+    this.builder.setBlock(allocate);
+    this.builder.store(this.builder.binary(Opcode.ADD, "i64", this.builder.load("i64", this.allocated), bytes), this.allocated);
+    // The size is a multiple of 8, so the object is allocated as 8 byte elements to keep the count in an i32
+    Value count = this.builder.cast(Opcode.TRUNC, this.builder.binary(Opcode.LSHR, "i64", this.builder.binary(Opcode.ADD, "i64", bytes, new ConstantInt("i64", HEADER_SIZE)), new ConstantInt("i64", 3)), "i32");
+    Value header = this.builder.call("i8*", calloc, count, ConstantInt.getInt(8));
+    Value words = this.builder.cast(Opcode.BITCAST, header, "i8**");
+    this.builder.store(this.builder.load("i8*", this.objects), words);
+    this.builder.store(map, this.builder.gep("i8*", "i8**", words, ConstantInt.getInt(1)));
+    this.builder.store(bytes, this.builder.cast(Opcode.BITCAST, this.builder.gep("i8*", "i8**", words, ConstantInt.getInt(2)), "i64*"));
+    this.builder.store(header, this.objects);
+    this.builder.ret(this.builder.gep("i8", "i8*", header, ConstantInt.getInt(HEADER_SIZE)));
+  }
+
+  private void generateEnter() {
+    Value frame = this.enter.addArgument("i8**", "%frame");
+    Value slots = this.enter.addArgument("i64", "%slots");
+    this.builder.setBlock(this.enter.addBlock("entry"));
+    Value slot = this.builder.alloca("i64", "%slot");
+    BasicBlock loop = this.enter.addBlock("loop");
+    BasicBlock clear = this.enter.addBlock("clear");
+    BasicBlock link = this.enter.addBlock("link");
+    this.builder.store(this.builder.cast(Opcode.BITCAST, this.builder.load("i8**", this.top), "i8*"), frame);
+    this.builder.store(slots, this.builder.cast(Opcode.BITCAST, this.builder.gep("i8*", "i8**", frame, ConstantInt.getInt(1)), "i64*"));
+    this.builder.store(new ConstantInt("i64", 0), slot);
+    this.builder.br(loop);
+    this.builder.setBlock(loop);
+    Value index = this.builder.load("i64", slot);
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SLT, index, slots), clear, link);
+    this.builder.setBlock(clear);
+    this.builder.store(new ConstantNull("i8*"), this.builder.gep("i8*", "i8**", frame, this.builder.binary(Opcode.ADD, "i64", index, new ConstantInt("i64", 2))));
+    this.builder.store(this.builder.binary(Opcode.ADD, "i64", index, new ConstantInt("i64", 1)), slot);
+    this.builder.br(loop);
+    this.builder.setBlock(link);
+    this.builder.store(frame, this.top);
+    this.builder.ret(null);
+  }
+}
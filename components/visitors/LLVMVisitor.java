@@ -1,18 +1,28 @@
 package components.visitors;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
 import components.prototypes.*;
 import components.prototypes.Class;
+import components.helpers.Annotations;
 import components.helpers.SymbolTable;
 import components.helpers.Utils;
+import components.ir.*;
+import components.ir.Module;
+import components.passes.CallSite;
+import components.types.ClassType;
+import components.types.Type;
 import syntaxtree.*;
 import visitor.GJDepthFirst;
-import java.io.*;
 
-public class LLVMVisitor extends GJDepthFirst<String,String> {
+public class LLVMVisitor extends GJDepthFirst<Value,Scope> {
 
   private SymbolTable symbolTable;
-  private FileWriter fWriter;
-  private int registerCounter;
+  private Module module;
+  private IRBuilder builder;
+  private Value[] locals; // Stack slots of the arguments and local variables of the current function, by variable index
   private int ifLabelCounter;
   private int elseLabelCounter;
   private int endIfLabelCounter;
@@ -20,84 +30,185 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
   private int loopLabelCounter;
   private int endWhileLabelCounter;
   private int otherLabelCounter;
-  private String tmpArguments;
-  private String lastClassType;
-  private String identiferAcceptType; // "load" or "store". it is automatically set to load when visitor finishes accept so you need to set it to store when you need to
-
-  public LLVMVisitor(SymbolTable symbolTable,String outFileName) {
+  private ArrayList<Value> tmpArguments; // Arguments of the MessageSend being generated
+  private Annotations annotations; // Variables, methods and types that the type checker resolved for the nodes
+  private Function calloc;
+  private Function printInt;
+  private Function throwOob;
+  private Function throwNsz;
+  private ArrayList<CallSite> callSites;
+  private boolean packBooleans; // Store the elements of boolean arrays as bits of i64 words instead of one i8 each
+  private boolean fold; // Evaluate the constant expressions and conditions instead of emitting them
+  // Allocate from arenas with a bump pointer instead of calling calloc for every object and array (null if not enabled)
+  private GlobalVariable arenaNext;
+  private GlobalVariable arenaLeft;
+  private Function arenaRefill;
+  private static final int ARENA_SIZE = 1 << 22;
+  // Garbage collection (null if not enabled). The objects and arrays that the current function must keep alive are kept
+  // in the slots of its shadow stack frame: every pointer that an allocation, a call or a field load produces, which would
+  // otherwise only be in a register when a later allocation collects, and the last value stored to every pointer variable
+  private GcRuntime gc;
+  private AllocaInstruction gcFrame;
+  private Value gcSlots;
+  private int gcSlotCount;
+  private Map<Value,Integer> gcVariableSlots; // Slot of every pointer variable, by its stack slot
+
+  public LLVMVisitor(SymbolTable symbolTable) {
+    this(symbolTable, false, false, false, true);
+  }
+
+  public LLVMVisitor(SymbolTable symbolTable,boolean packBooleans,boolean arena,boolean gc,boolean fold) {
     // Initialize data members
-    try {
-      this.fWriter = new FileWriter(outFileName);
-    } catch (IOException ex) {
-      System.out.println(ex.getMessage());
-    }
-    // Default action for identifier accept
-    this.identiferAcceptType = "load";
+    this.module = new Module();
+    this.builder = new IRBuilder();
+    this.builder.setFolding(fold);
+    this.fold = fold;
+    this.locals = new Value[0];
+    this.callSites = new ArrayList<CallSite>();
     this.symbolTable = symbolTable;
-    this.registerCounter = this.ifLabelCounter = this.elseLabelCounter = this.endIfLabelCounter = this.whileLabelCounter = this.loopLabelCounter = this.endWhileLabelCounter = this.otherLabelCounter = 0;
-    // Generate and emit LLVM vtables
-    for (int clIndex = 0;clIndex < this.symbolTable.getClassList().size();clIndex++) {
-      Class cl = this.symbolTable.getClassList().get(clIndex);
-      String vtableLLVM = "@." + cl.getName() + "_vtable = global [" + Integer.toString(cl.getVtable().size()) + " x i8*] [";
-      for (int methodIndex = 0;methodIndex < cl.getVtable().size();methodIndex++) {
-        Method method = cl.getVtable().get(methodIndex);
-        if (methodIndex > 0) {
-          vtableLLVM += ",";
-        }
-        vtableLLVM += "i8* bitcast (" + Utils.llvmType(method.getReturnType()) + " (i8*";
-        if (method.argc() > 0) {
-          vtableLLVM += ",";
+    this.annotations = symbolTable.getAnnotations();
+    this.packBooleans = packBooleans;
+    this.ifLabelCounter = this.elseLabelCounter = this.endIfLabelCounter = this.whileLabelCounter = this.loopLabelCounter = this.endWhileLabelCounter = this.otherLabelCounter = 0;
+    // Declare the library functions and generate the runtime helper functions
+    this.calloc = this.module.addFunction("i8*", "calloc");
+    this.calloc.addArgument("i32", null);
+    this.calloc.addArgument("i32", null);
+    Function printf = this.module.addFunction("i32", "printf");
+    printf.addArgument("i8*", null);
+    printf.setVarArg(true);
+    Function exit = this.module.addFunction("void", "exit");
+    exit.addArgument("i32", null);
+    GlobalVariable intFormat = this.module.addGlobal("_cint", new ConstantString("%d\n"), true);
+    GlobalVariable oobMessage = this.module.addGlobal("_cOOB", new ConstantString("Out of bounds\n"), true);
+    GlobalVariable nszMessage = this.module.addGlobal("_cNSZ", new ConstantString("Negative size\n"), true);
+    GlobalVariable nullMessage = this.module.addGlobal("_cNULL", new ConstantString("Null pointer\n"), true);
+    this.printInt = this.module.addFunction("void", "print_int");
+    Value i = this.printInt.addArgument("i32", "%i");
+    this.builder.setBlock(this.printInt.addBlock("entry"));
+    this.builder.call("i32", printf, this.builder.cast(Opcode.BITCAST, intFormat, "i8*"), i);
+    this.builder.ret(null);
+    this.throwOob = this.module.addFunction("void", "throw_oob");
+    this.builder.setBlock(this.throwOob.addBlock("entry"));
+    this.builder.call("i32", printf, this.builder.cast(Opcode.BITCAST, oobMessage, "i8*"));
+    this.builder.call("void", exit, ConstantInt.getInt(1));
+    this.builder.ret(null);
+    this.throwNsz = this.module.addFunction("void", "throw_nsz");
+    this.builder.setBlock(this.throwNsz.addBlock("entry"));
+    this.builder.call("i32", printf, this.builder.cast(Opcode.BITCAST, nszMessage, "i8*"));
+    this.builder.call("void", exit, ConstantInt.getInt(1));
+    this.builder.ret(null);
+    // Called by the direct calls that devirtualization makes, which no longer load the vtable of a null receiver
+    Function throwNull = this.module.addFunction("void", "throw_null");
+    this.builder.setBlock(throwNull.addBlock("entry"));
+    this.builder.call("i32", printf, this.builder.cast(Opcode.BITCAST, nullMessage, "i8*"));
+    this.builder.call("void", exit, ConstantInt.getInt(1));
+    this.builder.ret(null);
+    if (arena) {
+      this.generateArena();
+    }
+    if (gc) {
+      this.gc = new GcRuntime(this.module, this.builder, this.calloc);
+      this.gcVariableSlots = new HashMap<Value,Integer>();
+    }
+    // Declare a function for every method so that the vtables can refer to them
+    this.module.addFunction("i32", "main");
+    for (Class cl : this.symbolTable.getClassList()) {
+      for (Method method : cl.getMethodsList()) {
+        Function function = this.module.addFunction(Utils.llvmType(method.getReturnType()), cl.getName() + "." + method.getName());
+        function.addArgument("i8*", "%this");
+        for (int argIndex = 0;argIndex < method.argc();argIndex++) {
+          Variable arg = method.getNthArgument(argIndex);
+          function.addArgument(Utils.llvmType(arg.getType()), "%." + arg.getName());
         }
-        for (int i = 0;i < method.argc();i++) {
-          if (i > 0) {
-            vtableLLVM += ",";
-          }
-          vtableLLVM += Utils.llvmType(method.getNthArgument(i).getType());
+      }
+    }
+    // Generate LLVM vtables
+    for (Class cl : this.symbolTable.getClassList()) {
+      ArrayList<Constant> entries = new ArrayList<Constant>();
+      for (Method method : cl.getVtable()) {
+        entries.add(new ConstantBitcast(this.getFunction(method), "i8*"));
+      }
+      this.module.addGlobal("." + cl.getName() + "_vtable", new ConstantArray("i8*", entries), false);
+    }
+    // Generate the pointer maps up front, since code reused from the compilation cache refers to them without generating them
+    if (this.gc != null) {
+      for (Class cl : this.symbolTable.getClassList()) {
+        if (!cl.isMainClass()) {
+          this.gc.pointerMap(cl);
         }
-        vtableLLVM += ")* @" + method.getOwnClass().getName() + "." + method.getName() + " to i8*)";
       }
-      vtableLLVM += "]";
-      emit(vtableLLVM);
     }
-    emit("\n");
-    // Write helper methods to output .ll
-    emit("declare i8* @calloc(i32, i32)");
-    emit("declare i32 @printf(i8*, ...)");
-    emit("declare void @exit(i32)\n");
-    emit("@_cint = constant [4 x i8] c\"%d\\0a\\00\"");
-    emit("@_cOOB = constant [15 x i8] c\"Out of bounds\\0a\\00\"");
-    emit("@_cNSZ = constant [15 x i8] c\"Negative size\\0a\\00\"");
-    emit("define void @print_int(i32 %i) {");
-    emit("\t%_str = bitcast [4 x i8]* @_cint to i8*");
-    emit("\tcall i32 (i8*, ...) @printf(i8* %_str, i32 %i)");
-    emit("\tret void");
-    emit("}\n");
-    emit("define void @throw_oob() {");
-    emit("\t%_str = bitcast [15 x i8]* @_cOOB to i8*");
-    emit("\tcall i32 (i8*, ...) @printf(i8* %_str)");
-    emit("\tcall void @exit(i32 1)");
-    emit("\tret void");
-    emit("}\n");
-    emit("define void @throw_nsz() {");
-    emit("\t%_str = bitcast [15 x i8]* @_cNSZ to i8*");
-    emit("\tcall i32 (i8*, ...) @printf(i8* %_str)");
-    emit("\tcall void @exit(i32 1)");
-    emit("\tret void");
-    emit("}\n");
-  }
-
-  private void emit(String code) {
-    try {
-      this.fWriter.write(code + "\n");
-    } catch (IOException ex) {
-      System.out.println(ex.getMessage());
+  }
+
+  // The current arena is kept in two globals: the next free byte and how many bytes are left in it. The refill function
+  // takes a new zeroed arena from calloc, of ARENA_SIZE bytes or of the requested size if that is larger. The rest of the
+  // previous arena is given up, since nothing is ever freed
+  private void generateArena() {
+    this.arenaNext = this.module.addGlobal(".arena_next", new ConstantNull("i8*"), false);
+    this.arenaLeft = this.module.addGlobal(".arena_left", new ConstantInt("i64", 0), false);
+    this.arenaRefill = this.module.addFunction("void", "arena_refill");
+    Value size = this.arenaRefill.addArgument("i64", "%size");
+    this.builder.setBlock(this.arenaRefill.addBlock("entry"));
+    BasicBlock large = this.arenaRefill.addBlock("large");
+    BasicBlock refill = this.arenaRefill.addBlock("refill");
+    BasicBlock entry = this.builder.getBlock();
+    this.builder.condBr(this.builder.icmp(CompareInstruction.Predicate.SGT, size, new ConstantInt("i64", ARENA_SIZE)), large, refill);
+    this.builder.setBlock(large);
+    this.builder.br(refill);
+    this.builder.setBlock(refill);
+    PhiInstruction arenaSize = this.builder.phi("i64");
+    arenaSize.addIncoming(new ConstantInt("i64", ARENA_SIZE), entry);
+    arenaSize.addIncoming(size, large);
+    // Sizes are multiples of 8, so the arena is allocated as 8 byte elements to keep the count in an i32
+    Value count = this.builder.cast(Opcode.TRUNC, this.builder.binary(Opcode.LSHR, "i64", arenaSize, new ConstantInt("i64", 3)), "i32");
+    this.builder.store(this.builder.call("i8*", this.calloc, count, ConstantInt.getInt(8)), this.arenaNext);
+    this.builder.store(arenaSize, this.arenaLeft);
+    this.builder.ret(null);
+  }
+
+  // Allocates count zeroed elements of the given size. From the arena if enabled: when the bytes, rounded up to a multiple
+  // of 8, fit in the current arena the allocation only moves its pointer, otherwise the arena is refilled first
+  // With garbage collection the memory comes from gc_alloc, with the pointer map of the object (null for arrays)
+  private Value allocate(Value count,int elementSize,Constant pointerMap) {
+    if (this.arenaNext == null && this.gc == null) {
+      return this.builder.call("i8*", this.calloc, count, ConstantInt.getInt(elementSize));
+    }
+    Value bytes;
+    if (count instanceof ConstantInt) {
+      bytes = new ConstantInt("i64", (((ConstantInt)count).getValue() * elementSize + 7) & -8);
+    } else {
+      bytes = this.builder.binary(Opcode.MUL, "i64", this.builder.cast(Opcode.ZEXT, count, "i64"), new ConstantInt("i64", elementSize));
+      bytes = this.builder.binary(Opcode.AND, "i64", this.builder.binary(Opcode.ADD, "i64", bytes, new ConstantInt("i64", 7)), new ConstantInt("i64", -8));
+    }
+    if (this.gc != null) {
+      return this.root(this.builder.call("i8*", this.gc.getAlloc(), bytes, pointerMap != null ? pointerMap : new ConstantNull("i8*")));
     }
+    BasicBlock refillLabel = new_block("if");
+    BasicBlock allocLabel = new_block("endif");
+    Value full = this.builder.icmp(CompareInstruction.Predicate.SLT, this.builder.load("i64", this.arenaLeft), bytes);
+    this.builder.condBr(full, refillLabel, allocLabel);
+    startBlock(refillLabel);
+    this.builder.call("void", this.arenaRefill, bytes);
+    this.builder.br(allocLabel);
+    startBlock(allocLabel);
+    Value pointer = this.builder.load("i8*", this.arenaNext);
+    this.builder.store(this.builder.gep("i8", "i8*", pointer, bytes), this.arenaNext);
+    this.builder.store(this.builder.binary(Opcode.SUB, "i64", this.builder.load("i64", this.arenaLeft), bytes), this.arenaLeft);
+    return pointer;
+  }
+
+  // The generated program. It is complete after the visitor has accepted the Goal
+  public Module getModule() {
+    return this.module;
   }
 
-  private String new_temp() {
-    String reg = "%_" + this.registerCounter;
-    this.registerCounter++;
-    return reg;
+  // The virtual calls of the program with the static type of their receivers
+  public ArrayList<CallSite> getCallSites() {
+    return this.callSites;
+  }
+
+  private Function getFunction(Method method) {
+    return this.module.getFunction(method.getOwnClass().getName() + "." + method.getName());
   }
 
   private String new_label(String type) {
@@ -135,15 +246,95 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     return label;
   }
 
+  // Creates a block that is not yet placed in the function. It is placed with startBlock when code generation reaches it
+  private BasicBlock new_block(String type) {
+    return new BasicBlock(new_label(type), this.builder.getFunction());
+  }
+
+  // Places a block created by new_block at the end of the current function and continues emitting there
+  private void startBlock(BasicBlock block) {
+    this.builder.getFunction().getBlocks().add(block);
+    this.builder.setBlock(block);
+  }
+
+  // Starts the body of a function and allocates a stack slot for every variable.
+  // Registers and labels are numbered per function, so the code of a method does not depend on the methods before it
+  private void startFunction(Function function,int variableCount) {
+    this.builder.resetRegisterNames();
+    this.ifLabelCounter = this.elseLabelCounter = this.endIfLabelCounter = this.whileLabelCounter = this.loopLabelCounter = this.endWhileLabelCounter = this.otherLabelCounter = 0;
+    this.builder.setBlock(function.addBlock("entry"));
+    this.locals = new Value[variableCount];
+    if (this.gc != null) {
+      // The number of slots is set when the function ends
+      this.gcFrame = this.builder.alloca("i8*", "%.gc_frame");
+      this.gcSlots = this.builder.cast(Opcode.BITCAST, this.gcFrame, "i8**");
+      this.gcSlotCount = 0;
+      this.gcVariableSlots.clear();
+    }
+  }
+
+  // Links the shadow stack frame of the function at its start and unlinks it before returning. Functions that have
+  // no pointers to keep alive don't get a frame
+  private void endFunction(Value returnValue) {
+    if (this.gc != null) {
+      ArrayList<Instruction> entry = this.builder.getFunction().getEntryBlock().getInstructions();
+      if (this.gcSlotCount == 0) {
+        entry.remove(this.gcFrame);
+        entry.remove(this.gcSlots);
+      } else {
+        // The frame holds the previous frame and the number of slots before the slots
+        this.gcFrame.setAllocatedType("[" + (this.gcSlotCount + 2) + " x i8*]");
+        ArrayList<Value> arguments = new ArrayList<Value>();
+        arguments.add(this.gcSlots);
+        arguments.add(new ConstantInt("i64", this.gcSlotCount));
+        this.builder.getFunction().getEntryBlock().insert(entry.indexOf(this.gcSlots) + 1, new CallInstruction("void", this.gc.getEnter(), arguments, null));
+        Value previousFrame = this.builder.load("i8*", this.gcSlots);
+        this.builder.store(this.builder.cast(Opcode.BITCAST, previousFrame, "i8**"), this.gc.getTop());
+      }
+    }
+    this.builder.ret(returnValue);
+  }
+
+  private static boolean isPointerType(String type) {
+    return !type.equals("int") && !type.equals("boolean");
+  }
+
+  private void allocateLocal(Variable var) {
+    this.locals[var.getIndex()] = this.builder.alloca(Utils.llvmType(var.getType()), "%" + var.getName());
+    if (this.gc != null && isPointerType(var.getType())) {
+      this.gcVariableSlots.put(this.locals[var.getIndex()], this.gcSlotCount++);
+    }
+  }
+
+  // Stores to a variable, and to its slot in the frame if it is a pointer
+  private void storeVariable(Value value,Value address) {
+    this.builder.store(value, address);
+    if (this.gc != null && this.gcVariableSlots.containsKey(address)) {
+      this.storeSlot(value, this.gcVariableSlots.get(address));
+    }
+  }
+
+  private void storeSlot(Value value,int slot) {
+    Value pointer = this.builder.gep("i8*", "i8**", this.gcSlots, ConstantInt.getInt(slot + 2));
+    this.builder.store(value.getType().equals("i8*") ? value : this.builder.cast(Opcode.BITCAST, value, "i8*"), pointer);
+  }
+
+  // Keeps a new pointer alive until the function returns
+  private Value root(Value value) {
+    if (this.gc != null) {
+      this.storeSlot(value, this.gcSlotCount++);
+    }
+    return value;
+  }
+
   /**
     * f0 -> MainClass()
     * f1 -> ( TypeDeclaration() )*
     * f2 -> <EOF>
     */
-  public String visit(Goal n, String argu) throws Exception {
+  public Value visit(Goal n, Scope argu) throws Exception {
     n.f0.accept(this,argu);
     n.f1.accept(this,argu);
-    this.fWriter.close();
     return null;
   }
 
@@ -167,21 +358,21 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f16 -> "}"
     * f17 -> "}"
     */
-  public String visit(MainClass n, String argu) throws Exception {
-    emit("define i32 @main() {");
-    String className = n.f1.accept(this,"name_only");
-    // Emit var declarations
+  public Value visit(MainClass n, Scope argu) throws Exception {
+    String className = n.f1.f0.toString();
     Class mainClass = this.symbolTable.getClass(className);
+    startFunction(this.module.getFunction("main"), mainClass.getVariablesList().size());
+    // Emit var declarations
     for (int i = 0;i < mainClass.getVariablesList().size();i++) {
       Variable var = mainClass.getVariablesList().get(i);
       // Ignore String[] args cause this type is not currently supported by minijava
-      if (var.getType() != "String[]") {
-        emit("\t%" + var.getName() + " = alloca " + Utils.llvmType(var.getType()));
+      if (!var.getType().equals("String[]")) {
+        allocateLocal(var);
       }
     }
     // Accept statements
-    n.f15.accept(this,className);
-    emit("\tret i32 0\n}\n");
+    n.f15.accept(this,mainClass.getScope());
+    this.endFunction(ConstantInt.getInt(0));
     return null;
   }
 
@@ -193,9 +384,9 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f4 -> ( MethodDeclaration() )*
     * f5 -> "}"
     */
-  public String visit(ClassDeclaration n, String argu) throws Exception {
-    String className = n.f1.accept(this,"name_only");
-    n.f4.accept(this,className);
+  public Value visit(ClassDeclaration n, Scope argu) throws Exception {
+    String className = n.f1.f0.toString();
+    n.f4.accept(this,this.symbolTable.getClass(className).getScope());
     return null;
   }
 
@@ -209,9 +400,9 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f6 -> ( MethodDeclaration() )*
     * f7 -> "}"
     */
-  public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
-    String className = n.f1.accept(this,"name_only");
-    n.f6.accept(this,className);
+  public Value visit(ClassExtendsDeclaration n, Scope argu) throws Exception {
+    String className = n.f1.f0.toString();
+    n.f6.accept(this,this.symbolTable.getClass(className).getScope());
     return null;
   }
 
@@ -230,36 +421,27 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f11 -> ";"
     * f12 -> "}"
     */
-  public String visit(MethodDeclaration n, String argu) throws Exception {
-    // Get method's class from arguments
-    Class cl = this.symbolTable.getClass(argu);
-    // Get method
-    String methodName = n.f2.accept(this,"name_only");
-    Method method = cl.getMethod(methodName);
-    // Emit method declaration
-    String methodArgs = "";
-    for (int i = 0;i < method.argc();i++) {
-      Variable arg = method.getNthArgument(i);
-      methodArgs += ", " + Utils.llvmType(arg.getType()) + " %." + arg.getName();
-    }
-    emit("define " + Utils.llvmType(method.getReturnType()) + " @" + cl.getName() + "." + method.getName() + "(i8* %this" + methodArgs + ") {");
+  public Value visit(MethodDeclaration n, Scope argu) throws Exception {
+    // Get method from the scope of its class
+    String methodName = n.f2.f0.toString();
+    Method method = argu.getOwnClass().getMethod(methodName);
+    Function function = this.getFunction(method);
+    startFunction(function, method.getVariableCount());
     // Emit statements for arguments local memory allocation
+    // The receiver and the arguments are kept alive by the frame of the caller, so their slots start empty
     for (int i = 0;i < method.argc();i++) {
-      Variable arg = method.getNthArgument(i);
-      emit("\t%" + arg.getName() + " = " + "alloca " + Utils.llvmType(arg.getType()));
-      emit("\tstore " + Utils.llvmType(arg.getType()) + " %." + arg.getName() + ", " + Utils.llvmType(arg.getType()) + "* %" + arg.getName());
+      allocateLocal(method.getNthArgument(i));
+      this.builder.store(function.getArguments().get(i + 1), this.locals[i]);
     }
     // Emit var declarations
     for (int i = 0;i < method.getVariablesList().size();i++) {
-      Variable var = method.getVariablesList().get(i);
-      emit("\t%" + var.getName() + " = alloca " + Utils.llvmType(var.getType()));
+      allocateLocal(method.getVariablesList().get(i));
     }
     // Declare statements
-    n.f8.accept(this,argu + ":" + methodName);
-    // Return statement 
-    String retExpr = n.f10.accept(this,argu + ":" + methodName);
-    emit("\tret " + Utils.llvmType(method.getReturnType()) + " " + retExpr);
-    emit("}\n");
+    n.f8.accept(this,method.getScope());
+    // Return statement
+    Value retExpr = n.f10.accept(this,method.getScope());
+    this.endFunction(retExpr);
     return null;
   }
 
@@ -269,28 +451,12 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f2 -> Expression()
     * f3 -> ";"
     */
-  public String visit(AssignmentStatement n, String argu) throws Exception {
-    String id = n.f0.accept(this,"name_only");
-    String[] args = argu.split(":");
-    // Load and get variable specified by the Identifier depending on the scope
-    Variable idVar;
-    // Scope is method
-    if (args.length == 2) {
-      // Try to get variable from method's scope
-      idVar = this.symbolTable.getClass(args[0]).getMethod(args[1]).getVariable(id);
-      if (idVar == null) {
-        idVar = this.symbolTable.getClass(args[0]).getVariable(id);
-      }
-    } else {
-      // Scope is class(field)
-      idVar = this.symbolTable.getClass(args[0]).getVariable(id);
-    }
-    // Generate expression(accept returns either a register that contains the result of the generated expression or a literal(integer or 0 for false or 1 for true))
-    String expr = n.f2.accept(this,argu);
+  public Value visit(AssignmentStatement n, Scope argu) throws Exception {
+    // Generate expression(accept returns either a register that contains the result of the generated expression or a constant)
+    Value expr = n.f2.accept(this,argu);
     // Get address of left operand to store to
-    this.identiferAcceptType = "store";
-    String idAddr = n.f0.accept(this,argu);
-    emit("\tstore " + Utils.llvmType(idVar.getType()) + " " + expr + ", " + Utils.llvmType(idVar.getType()) + "* " + idAddr);
+    Value idAddr = this.variableAddress(this.annotations.getVariable(n.f0.f0), argu);
+    this.storeVariable(expr, idAddr);
     return null;
   }
 
@@ -303,80 +469,83 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f5 -> Expression()
     * f6 -> ";"
     */
-  public String visit(ArrayAssignmentStatement n, String argu) throws Exception {
-    // Create the labels
-    String oobLabel = new_label("if");
-    String nonOobLabel = new_label("endif"); 
-    String[] args = argu.split(":");
-    String arrayName = n.f0.accept(this,"name_only");
-    // Get array variable specified by the Identifier depending on the scope (needed to get it's type)
-    Variable array;
-    // Scope is method
-    if (args.length == 2) {
-      // Try to get variable from method's scope
-      array = this.symbolTable.getClass(args[0]).getMethod(args[1]).getVariable(arrayName);
-      if (array == null) {
-        array = this.symbolTable.getClass(args[0]).getVariable(arrayName);
-      }
-    } else {
-      // Scope is class(field)
-      array = this.symbolTable.getClass(args[0]).getVariable(arrayName);
-    }
+  public Value visit(ArrayAssignmentStatement n, Scope argu) throws Exception {
     // Load the address of the array
-    String address = n.f0.accept(this,argu);
-    // Bitcast the array address to i32* if the array is of type boolean[] and load the size of the array
-    String size;
-    if (array.getType() == "boolean[]") {
-      String bitcastedAddress = new_temp();
-      emit("\t" + bitcastedAddress + " = bitcast i8* " + address + " to i32*");
-      size = new_temp();
-      emit("\t" + size + " = load i32, i32* " + bitcastedAddress);
+    Value address = n.f0.accept(this,argu);
+    Type arrayType = this.annotations.getType(n.f1);
+    // Get array index
+    Value index = n.f2.accept(this,argu);
+    // Check the bounds and get pointer to the element
+    Value pointer = this.arrayElementPointer(address, arrayType, index);
+    // Get right operand
+    Value rOperand = n.f5.accept(this,argu);
+    // Store right operand's result to the array
+    if (arrayType == Type.BOOLEAN_ARRAY && this.packBooleans) {
+      // Clear the bit of the element in its word and set it to the right operand
+      Value mask = this.bitMask(index);
+      Value word = this.builder.load("i64", pointer);
+      Value cleared = this.builder.binary(Opcode.AND, "i64", word, this.builder.binary(Opcode.XOR, "i64", mask, new ConstantInt("i64", -1)));
+      Value bit = this.builder.binary(Opcode.SHL, "i64", this.builder.cast(Opcode.ZEXT, rOperand, "i64"), this.bitIndex(index));
+      this.builder.store(this.builder.binary(Opcode.OR, "i64", cleared, bit), pointer);
+    } else if (arrayType == Type.BOOLEAN_ARRAY) {
+      // Zero extend right operand from i1 to i8
+      Value finalRoperand = this.builder.cast(Opcode.ZEXT, rOperand, "i8");
+      this.builder.store(finalRoperand, pointer);
     } else {
-      size = new_temp();
-      emit("\t" + size + " = load i32, i32* " + address);
+      this.builder.store(rOperand, pointer);
     }
-    // Get array index
-    String index = n.f2.accept(this,argu);
+    return null;
+  }
+
+  // Loads the size of the given array
+  private Value arrayLength(Value address,Type arrayType) {
+    // Bitcast the array address to i32* if the array is of type boolean[]
+    if (arrayType == Type.BOOLEAN_ARRAY) {
+      address = this.builder.cast(Opcode.BITCAST, address, "i32*");
+    }
+    return this.builder.load("i32", address);
+  }
+
+  // Emits the bounds check of an array access and returns the pointer to the accessed element
+  private Value arrayElementPointer(Value address,Type arrayType,Value index) {
+    // Create the labels
+    BasicBlock oobLabel = new_block("if");
+    BasicBlock nonOobLabel = new_block("endif");
+    // Load the size of the array
+    Value size = this.arrayLength(address, arrayType);
     // Check that the index is greater than zero
-    String comparison1 = new_temp();
-    emit("\t" + comparison1 + " = icmp sge i32 " + index + ", 0");
+    Value comparison1 = this.builder.icmp(CompareInstruction.Predicate.SGE, index, ConstantInt.getInt(0));
     // Check that the index is less than the size of the array
-    String comparison2 = new_temp();
-    emit("\t" + comparison2 + " = icmp slt i32 " + index + ", " + size);
+    Value comparison2 = this.builder.icmp(CompareInstruction.Predicate.SLT, index, size);
     // Check that both of theese conditions hold
-    String comparison = new_temp();
-    emit("\t" + comparison + " = and i1 " + comparison1 + ", " + comparison2);
-    emit("\tbr i1 " + comparison + ", label %" + nonOobLabel + ", label %" + oobLabel);
-    emit("\t" + oobLabel + ":");
-    emit("\tcall void @throw_oob()");
-    emit("\tbr label %" + nonOobLabel);
-    emit("\t" + nonOobLabel + ":");
+    Value comparison = this.builder.binary(Opcode.AND, "i1", comparison1, comparison2);
+    this.builder.condBr(comparison, nonOobLabel, oobLabel);
+    startBlock(oobLabel);
+    this.builder.call("void", this.throwOob);
+    this.builder.br(nonOobLabel);
+    startBlock(nonOobLabel);
     // Add 1 or 4 to the index depending on the array's type to ignore the size
-    String finalIndex = new_temp();
-    if (array.getType() == "boolean[]") {
-      emit("\t" + finalIndex + " = add i32 4, " + index);
-    } else {
-      emit("\t" + finalIndex + " = add i32 1, " + index);
-    }
-    // Get pointer to the i + 1 (or i + 4 if type is boolean[]) element of the array 
-    String pointer = new_temp();
-    if (array.getType() == "boolean[]") {
-      emit("\t" + pointer + " = getelementptr i8, i8* " + address + ", i32 " + finalIndex);
+    // and get pointer to the i + 1 (or i + 4 if type is boolean[]) element of the array
+    if (arrayType == Type.BOOLEAN_ARRAY && this.packBooleans) {
+      // Packed arrays have a header of one i64 word (the size and 4 unused bytes) followed by a word for every 64 elements
+      Value finalIndex = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(1), this.builder.binary(Opcode.LSHR, "i32", index, ConstantInt.getInt(6)));
+      return this.builder.gep("i64", "i64*", this.builder.cast(Opcode.BITCAST, address, "i64*"), finalIndex);
+    } else if (arrayType == Type.BOOLEAN_ARRAY) {
+      Value finalIndex = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(4), index);
+      return this.builder.gep("i8", "i8*", address, finalIndex);
     } else {
-      emit("\t" + pointer + " = getelementptr i32, i32* " + address + ", i32 " + finalIndex);
+      Value finalIndex = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(1), index);
+      return this.builder.gep("i32", "i32*", address, finalIndex);
     }
-    // Get right operand
-    String rOperand = n.f5.accept(this,argu);
-    // Store right operand's result to the array
-    if (array.getType() == "boolean[]") {
-      // Zero extend right operand from i1 to i8
-      String finalRoperand = new_temp();
-      emit("\t" + finalRoperand + " = zext i1 " + rOperand + " to i8");
-      emit("\tstore i8 " + finalRoperand + ", i8* " + pointer);
-    } else {
-      emit("\tstore i32 " + rOperand + ", i32* " + pointer);
-    }
-    return null;
+  }
+
+  // Position of the bit of an element of a packed boolean array in its word
+  private Value bitIndex(Value index) {
+    return this.builder.cast(Opcode.ZEXT, this.builder.binary(Opcode.AND, "i32", index, ConstantInt.getInt(63)), "i64");
+  }
+
+  private Value bitMask(Value index) {
+    return this.builder.binary(Opcode.SHL, "i64", new ConstantInt("i64", 1), this.bitIndex(index));
   }
 
   /**
@@ -388,19 +557,28 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f5 -> "else"
     * f6 -> Statement()
     */
-  public String visit(IfStatement n, String argu) throws Exception {
-    String condition = n.f2.accept(this,argu);
-    String ifLabel = new_label("if");
-    String elseLabel = new_label("else");
-    String endLabel = new_label("endif");
-    emit("\tbr i1 " + condition + ", label %" + ifLabel + ", label %" + elseLabel);
-    emit("\t" + ifLabel + ":");
+  public Value visit(IfStatement n, Scope argu) throws Exception {
+    Value condition = n.f2.accept(this,argu);
+    if (this.fold && condition instanceof ConstantInt) {
+      // Only the branch that is taken is generated
+      if (((ConstantInt)condition).getValue() != 0) {
+        n.f4.accept(this,argu);
+      } else {
+        n.f6.accept(this,argu);
+      }
+      return null;
+    }
+    BasicBlock ifLabel = new_block("if");
+    BasicBlock elseLabel = new_block("else");
+    BasicBlock endLabel = new_block("endif");
+    this.builder.condBr(condition, ifLabel, elseLabel);
+    startBlock(ifLabel);
     n.f4.accept(this,argu);
-    emit("\tbr label %" + endLabel);
-    emit("\t" + elseLabel + ":");
+    this.builder.br(endLabel);
+    startBlock(elseLabel);
     n.f6.accept(this,argu);
-    emit("\tbr label %" + endLabel);
-    emit("\t" + endLabel + ":");
+    this.builder.br(endLabel);
+    startBlock(endLabel);
     return null;
   }
 
@@ -411,18 +589,24 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f3 -> ")"
     * f4 -> Statement()
     */
-  public String visit(WhileStatement n, String argu) throws Exception {
-    String loopLabel = new_label("while");
-    String loopBodyLabel = new_label("loop");
-    String endLabel = new_label("endwhile");
-    emit("\tbr label %" + loopLabel);
-    emit("\t" + loopLabel + ":");
-    String condition = n.f2.accept(this,argu);
-    emit("\tbr i1 " + condition + ", label %" + loopBodyLabel + ", label %" + endLabel);
-    emit("\t" + loopBodyLabel + ":");
+  public Value visit(WhileStatement n, Scope argu) throws Exception {
+    BasicBlock loopLabel = new_block("while");
+    BasicBlock loopBodyLabel = new_block("loop");
+    BasicBlock endLabel = new_block("endwhile");
+    this.builder.br(loopLabel);
+    startBlock(loopLabel);
+    Value condition = n.f2.accept(this,argu);
+    if (this.fold && condition instanceof ConstantInt && ((ConstantInt)condition).getValue() == 0) {
+      // The body is never executed
+      this.builder.br(endLabel);
+      startBlock(endLabel);
+      return null;
+    }
+    this.builder.condBr(condition, loopBodyLabel, endLabel);
+    startBlock(loopBodyLabel);
     n.f4.accept(this,argu);
-    emit("\tbr label %" + loopLabel);
-    emit("\t" + endLabel + ":");
+    this.builder.br(loopLabel);
+    startBlock(endLabel);
     return null;
   }
 
@@ -433,9 +617,9 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f3 -> ")"
     * f4 -> ";"
     */
-  public String visit(PrintStatement n, String argu) throws Exception {
-    String expr = n.f2.accept(this,argu);
-    emit("\tcall void (i32) @print_int(i32 " + expr + ")");
+  public Value visit(PrintStatement n, Scope argu) throws Exception {
+    Value expr = n.f2.accept(this,argu);
+    this.builder.call("void", this.printInt, expr);
     return null;
   }
 
@@ -444,21 +628,28 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "&&"
     * f2 -> Clause()
     */
-  public String visit(AndExpression n, String argu) throws Exception {
+  public Value visit(AndExpression n, Scope argu) throws Exception {
     // Generate expr1
-    String expr1 = n.f0.accept(this, argu);
-    String label1 = new_label("and");
-    String label2 = new_label("and");
-    String label3 = new_label("and");
-    emit("\tbr i1 " + expr1 + ", label %" + label2 + ", label %" + label1);
-    emit("\t" + label1 + ":");
-    emit("\tbr label %" + label3);
-    emit("\t" + label2 + ":");
-    String expr2 = n.f2.accept(this,argu);
-    emit("\tbr label %" + label3);
-    emit("\t" + label3 + ":");
-    String result = new_temp();
-    emit("\t" + result + " = phi i1 [0, %" + label1 + "], [" + expr2 + ", %" + label2 + "]");
+    Value expr1 = n.f0.accept(this, argu);
+    if (this.fold && expr1 instanceof ConstantInt) {
+      // false && expr2 is false without evaluating expr2, true && expr2 is expr2
+      return ((ConstantInt)expr1).getValue() == 0 ? expr1 : n.f2.accept(this,argu);
+    }
+    BasicBlock label1 = new_block("and");
+    BasicBlock label2 = new_block("and");
+    BasicBlock label3 = new_block("and");
+    this.builder.condBr(expr1, label2, label1);
+    startBlock(label1);
+    this.builder.br(label3);
+    startBlock(label2);
+    Value expr2 = n.f2.accept(this,argu);
+    // expr2 may have opened new blocks, so the phi has to refer to the block it ended in
+    BasicBlock expr2Label = this.builder.getBlock();
+    this.builder.br(label3);
+    startBlock(label3);
+    PhiInstruction result = this.builder.phi("i1");
+    result.addIncoming(ConstantInt.getBoolean(false), label1);
+    result.addIncoming(expr2, expr2Label);
     return result;
   }
 
@@ -467,12 +658,10 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "<"
     * f2 -> PrimaryExpression()
     */
-  public String visit(CompareExpression n, String argu) throws Exception {
-    String expr1 = n.f0.accept(this,argu);
-    String expr2 = n.f2.accept(this,argu);
-    String result = new_temp();
-    emit("\t" + result + " = icmp slt i32 " + expr1 + ", " + expr2);
-    return result;
+  public Value visit(CompareExpression n, Scope argu) throws Exception {
+    Value expr1 = n.f0.accept(this,argu);
+    Value expr2 = n.f2.accept(this,argu);
+    return this.builder.icmp(CompareInstruction.Predicate.SLT, expr1, expr2);
   }
 
   /**
@@ -480,12 +669,10 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "+"
     * f2 -> PrimaryExpression()
     */
-  public String visit(PlusExpression n, String argu) throws Exception {
-    String expr1 = n.f0.accept(this,argu);
-    String expr2 = n.f2.accept(this,argu);
-    String result = new_temp();
-    emit("\t" + result + " = add i32 " + expr1 + ", " + expr2);
-    return result;
+  public Value visit(PlusExpression n, Scope argu) throws Exception {
+    Value expr1 = n.f0.accept(this,argu);
+    Value expr2 = n.f2.accept(this,argu);
+    return this.builder.binary(Opcode.ADD, "i32", expr1, expr2);
   }
 
   /**
@@ -493,12 +680,10 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "-"
     * f2 -> PrimaryExpression()
     */
-  public String visit(MinusExpression n, String argu) throws Exception {
-    String expr1 = n.f0.accept(this,argu);
-    String expr2 = n.f2.accept(this,argu);
-    String result = new_temp();
-    emit("\t" + result + " = sub i32 " + expr1 + ", " + expr2);
-    return result;
+  public Value visit(MinusExpression n, Scope argu) throws Exception {
+    Value expr1 = n.f0.accept(this,argu);
+    Value expr2 = n.f2.accept(this,argu);
+    return this.builder.binary(Opcode.SUB, "i32", expr1, expr2);
   }
 
    /**
@@ -506,12 +691,10 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "*"
     * f2 -> PrimaryExpression()
     */
-  public String visit(TimesExpression n, String argu) throws Exception {
-    String expr1 = n.f0.accept(this,argu);
-    String expr2 = n.f2.accept(this,argu);
-    String result = new_temp();
-    emit("\t" + result + " = mul i32 " + expr1 + ", " + expr2);
-    return result;
+  public Value visit(TimesExpression n, Scope argu) throws Exception {
+    Value expr1 = n.f0.accept(this,argu);
+    Value expr2 = n.f2.accept(this,argu);
+    return this.builder.binary(Opcode.MUL, "i32", expr1, expr2);
   }
 
   /**
@@ -520,63 +703,27 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f2 -> PrimaryExpression()
     * f3 -> "]"
     */
-  public String visit(ArrayLookup n, String argu) throws Exception {
-    // Create the labels
-    String oobLabel = new_label("if");
-    String nonOobLabel = new_label("endif"); 
+  public Value visit(ArrayLookup n, Scope argu) throws Exception {
     // Load the address of the array
-    String address = n.f0.accept(this,argu);
-    // Bitcast the array address to i32* if the array is of type boolean[] and load the size of the array
-    String size;
-    String arrType = this.lastClassType;
-    if (arrType == "boolean[]") {
-      String bitcastedAddress = new_temp();
-      emit("\t" + bitcastedAddress + " = bitcast i8* " + address + " to i32*");
-      size = new_temp();
-      emit("\t" + size + " = load i32, i32* " + bitcastedAddress);
-    } else {
-      size = new_temp();
-      emit("\t" + size + " = load i32, i32* " + address);
-    }
+    Value address = n.f0.accept(this,argu);
+    Type arrType = this.annotations.getType(n.f1);
     // Get array index
-    String index = n.f2.accept(this,argu);
-    // Check that the index is greater than zero
-    String comparison1 = new_temp();
-    emit("\t" + comparison1 + " = icmp sge i32 " + index + ", 0");
-    // Check that the index is less than the size of the array
-    String comparison2 = new_temp();
-    emit("\t" + comparison2 + " = icmp slt i32 " + index + ", " + size);
-    // Check that both of theese conditions hold
-    String comparison = new_temp();
-    emit("\t" + comparison + " = and i1 " + comparison1 + ", " + comparison2);
-    emit("\tbr i1 " + comparison + ", label %" + nonOobLabel + ", label %" + oobLabel);
-    emit("\t" + oobLabel + ":");
-    emit("\tcall void @throw_oob()");
-    emit("\tbr label %" + nonOobLabel);
-    emit("\t" + nonOobLabel + ":");
-    // Add 1 or 4 to the index depending on the array's type to ignore the size
-    String finalIndex = new_temp();
-    if (arrType == "boolean[]") {
-      emit("\t" + finalIndex + " = add i32 4, " + index);
-    } else {
-      emit("\t" + finalIndex + " = add i32 1, " + index);
-    }
-    // Get pointer to the i + 1 (or i + 4 if type is boolean[]) element of the array 
-    String pointer = new_temp();
-    String result = new_temp();
+    Value index = n.f2.accept(this,argu);
+    // Check the bounds and get pointer to the element
+    Value pointer = this.arrayElementPointer(address, arrType, index);
     // Load value from array
-    if (arrType == "boolean[]") {
-      emit("\t" + pointer + " = getelementptr i8, i8* " + address + ", i32 " + finalIndex);
-      emit("\t" + result + " = load i8, i8* " + pointer);
+    if (arrType == Type.BOOLEAN_ARRAY && this.packBooleans) {
+      // Test the bit of the element in its word
+      Value word = this.builder.load("i64", pointer);
+      Value bit = this.builder.binary(Opcode.AND, "i64", word, this.bitMask(index));
+      return this.builder.icmp(CompareInstruction.Predicate.NE, bit, new ConstantInt("i64", 0));
+    } else if (arrType == Type.BOOLEAN_ARRAY) {
+      Value result = this.builder.load("i8", pointer);
       // Truncate i8 result to i1 for usage as a boolean variable to logical statements
-      String finalResult = new_temp();
-      emit("\t" + finalResult + " = trunc i8 " + result + " to i1");
-      result = finalResult;
+      return this.builder.cast(Opcode.TRUNC, result, "i1");
     } else {
-      emit("\t" + pointer + " = getelementptr i32, i32* " + address + ", i32 " + finalIndex);
-      emit("\t" + result + " = load i32, i32* " + pointer);
+      return this.builder.load("i32", pointer);
     }
-    return result;
   }
 
   /**
@@ -584,19 +731,11 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> "."
     * f2 -> "length"
     */
-  public String visit(ArrayLength n, String argu) throws Exception {
+  public Value visit(ArrayLength n, Scope argu) throws Exception {
     // Load the address of the array
-    String address = n.f0.accept(this,argu);
-    // Bitcast the array address to i32* if the array is of type boolean[]
-    if (this.lastClassType == "boolean[]") {
-      String bitcastedAddress = new_temp();
-      emit("\t" + bitcastedAddress + " = bitcast i8* " + address + " to i32*");
-      address = bitcastedAddress;
-    } 
+    Value address = n.f0.accept(this,argu);
     // Load the size of the array
-    String size = new_temp();
-    emit("\t" + size + " = load i32, i32* " + address);
-    return size;
+    return this.arrayLength(address, this.annotations.getType(n.f1));
   }
 
   /**
@@ -607,148 +746,113 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f4 -> ( ExpressionList() )?
     * f5 -> ")"
     */
-  public String visit(MessageSend n, String argu) throws Exception {
+  public Value visit(MessageSend n, Scope argu) throws Exception {
     // Load the object's pointer
-    String objPtr = n.f0.accept(this,argu);
-    Class classCalled = this.symbolTable.getClass(this.lastClassType);
+    Value objPtr = n.f0.accept(this,argu);
+    Class classCalled = ((ClassType)this.annotations.getType(n.f1)).getClassObj();
     // Do the required bitcasts, so that we can access the vtable pointer
-    String bitcastedPtr = new_temp();
-    emit("\t" + bitcastedPtr + " = bitcast i8* " + objPtr + " to i8***");
+    Value bitcastedPtr = this.builder.cast(Opcode.BITCAST, objPtr, "i8***");
     // Load vtable pointer
-    String vtablePtr = new_temp();
-    emit("\t" + vtablePtr + " = load i8**, i8*** " + bitcastedPtr);
+    Value vtablePtr = this.builder.load("i8**", bitcastedPtr);
     // Get the called method
-    String methodName = n.f2.accept(this,"name_only");
-    Method calledMethod = classCalled.getMethod(methodName);
-    if (calledMethod == null) {
-      calledMethod = classCalled.getMethodRecursively(methodName);
-    }
+    Method calledMethod = this.annotations.getMethod(n.f2.f0);
     // Get pointer to the called method from the vtable
-    String vtableEntryPtr = new_temp();
-    emit("\t" + vtableEntryPtr + " = getelementptr i8*, i8** " + vtablePtr + ", i32 " + calledMethod.getOffset()/8);
+    Value vtableEntryPtr = this.builder.gep("i8*", "i8**", vtablePtr, ConstantInt.getInt(calledMethod.getOffset()/8));
     // Get the actual function pointer
-    String funcPtr = new_temp();
-    emit("\t" + funcPtr + " = load i8*, i8** " + vtableEntryPtr);
-    // Generate argument types list
-    String argumentTypesList = "";
-    for (int i = 0;i < calledMethod.argc();i++) {
-      argumentTypesList += "," + Utils.llvmType(calledMethod.getNthArgument(i).getType());
-    }
+    Value funcPtr = this.builder.load("i8*", vtableEntryPtr);
     // Cast the function pointer from i8* to a function ptr type that matches its signature.
-    String castedFuncPtr = new_temp();
-    emit("\t" + castedFuncPtr + " = bitcast i8* " + funcPtr + " to " + Utils.llvmType(calledMethod.getReturnType()) + " (i8*" + argumentTypesList + ")*");
-    // Generate called arguments
-    String llvmCalledArguments = "";
+    Value castedFuncPtr = this.builder.cast(Opcode.BITCAST, funcPtr, this.getFunction(calledMethod).getType());
+    // Generate called arguments. The receiver object is the first argument
+    ArrayList<Value> llvmCalledArguments = new ArrayList<Value>();
+    llvmCalledArguments.add(objPtr);
+    // The arguments are collected in the list of this call, so calls nested in the arguments don't overwrite them
     if (n.f4.present()) {
-      String[] calledArguments = n.f4.accept(this,argu).split(",");
-      for(int i = 0;i < calledMethod.argc();i++) {
-        llvmCalledArguments += ", " + Utils.llvmType(calledMethod.getNthArgument(i).getType()) + " " + calledArguments[i];
-      }
+      ArrayList<Value> outerArguments = this.tmpArguments;
+      this.tmpArguments = llvmCalledArguments;
+      n.f4.accept(this,argu);
+      this.tmpArguments = outerArguments;
     }
-    // Perform the call - note the first argument is the receiver object.
-    String retValue = new_temp();
-    emit("\t" + retValue + " = call " + Utils.llvmType(calledMethod.getReturnType()) + " " + castedFuncPtr + "(i8* " + objPtr + llvmCalledArguments + ")");
-    this.lastClassType = calledMethod.getReturnType();
-    return retValue;
+    // Perform the call
+    CallInstruction retValue = this.builder.call(Utils.llvmType(calledMethod.getReturnType()), castedFuncPtr, llvmCalledArguments);
+    this.callSites.add(new CallSite(retValue, classCalled, calledMethod));
+    return isPointerType(calledMethod.getReturnType()) ? this.root(retValue) : retValue;
   }
 
   /**
     * f0 -> Expression()
     * f1 -> ExpressionTail()
     */
-  public String visit(ExpressionList n, String argu) throws Exception {
-    this.tmpArguments = n.f0.accept(this,argu);
+  public Value visit(ExpressionList n, Scope argu) throws Exception {
+    this.tmpArguments.add(n.f0.accept(this,argu));
     n.f1.accept(this, argu);
-    return this.tmpArguments;
+    return null;
   }
 
   /**
     * f0 -> ","
     * f1 -> Expression()
     */
-  public String visit(ExpressionTerm n, String argu) throws Exception {
-    this.tmpArguments += n.f0.accept(this,argu) + n.f1.accept(this,argu);
+  public Value visit(ExpressionTerm n, Scope argu) throws Exception {
+    this.tmpArguments.add(n.f1.accept(this,argu));
     return null;
   }
 
+  /**
+    * f0 -> <INTEGER_LITERAL>
+    */
+  public Value visit(IntegerLiteral n, Scope argu) throws Exception {
+    return ConstantInt.getInt(Integer.parseInt(n.f0.toString()));
+  }
+
   /**
     * f0 -> "true"
     */
-  public String visit(TrueLiteral n, String argu) throws Exception {
-    return "1";
+  public Value visit(TrueLiteral n, Scope argu) throws Exception {
+    return ConstantInt.getBoolean(true);
   }
 
    /**
     * f0 -> "false"
     */
-  public String visit(FalseLiteral n, String argu) throws Exception {
-    return "0";
+  public Value visit(FalseLiteral n, Scope argu) throws Exception {
+    return ConstantInt.getBoolean(false);
   }
 
   /**
     * f0 -> <IDENTIFIER>
     */
-  public String visit(Identifier n, String argu) throws Exception {
-    String id = n.f0.accept(this,argu);
-    if (argu.equals("name_only")) {
-      return id;
-    }
-    String[] args = argu.split(":");
-    Variable idVar;
-    boolean scopeIsClass = false;
-    // Get variable specified by the Identifier depending on the scope
-    if (args.length == 2) {
-      // Scope is inside method
-      idVar = this.symbolTable.getClass(args[0]).getMethod(args[1]).getVariable(id);
-      if (idVar == null) {
-        // Not found in method's scope so search the classe's scope
-        idVar = this.symbolTable.getClass(args[0]).getVariable(id);
-        scopeIsClass = true;
-      }
-    } else {
-      // Scope is inside class (field)
-      idVar = this.symbolTable.getClass(args[0]).getVariable(id);
-      scopeIsClass = true;
-    }
-    this.lastClassType = idVar.getType();
-    // If classe's scope is main class then work as it is method cause main class doesn't have any fields or other functions but only the main function
-    // and so all the variables are in main function's scope
-    if (scopeIsClass && this.symbolTable.getClass(args[0]).isMainClass()) {
-      scopeIsClass = false;
-    }
-    // If variable's scope is inside class we need to get it's address 
-    String varAddress;
-    if (scopeIsClass) {
-      String pointer = new_temp();
+  public Value visit(Identifier n, Scope argu) throws Exception {
+    // Get variable specified by the Identifier, as the type checker resolved it
+    Variable idVar = this.annotations.getVariable(n.f0);
+    Value value = this.builder.load(Utils.llvmType(idVar.getType()), this.variableAddress(idVar, argu));
+    // A field can be changed by the calls made before the value is used
+    return isField(idVar, argu) && isPointerType(idVar.getType()) ? this.root(value) : value;
+  }
+
+  // If classe's scope is main class then work as it is method cause main class doesn't have any fields or other functions but only the main function
+  // and so all the variables are in main function's scope
+  private static boolean isField(Variable idVar,Scope argu) {
+    return idVar.isField() && !argu.getOwnClass().isMainClass();
+  }
+
+  // Address of a variable to load from or store to
+  private Value variableAddress(Variable idVar,Scope argu) {
+    // If variable's scope is inside class we need to get it's address
+    if (isField(idVar, argu)) {
       // Get a pointer to the variable's field of this aka &this->varName
-      emit("\t" + pointer + " = getelementptr i8, i8* %this, i32 " + (idVar.getOffset() + 8));
+      Value pointer = this.builder.gep("i8", "i8*", this.builder.getFunction().getArguments().get(0), ConstantInt.getInt(idVar.getOffset() + 8));
       // Perform the necessary bitcasts
-      String bitcastedPtr = new_temp();
-      emit("\t" + bitcastedPtr + " = bitcast i8* " + pointer + " to " + Utils.llvmType(idVar.getType()) + "*");
-      varAddress = bitcastedPtr;
-    } else {
-      // If variable's scope is inside method it's address is in the form %varName because they are allocated with alloca function
-      varAddress = "%" + idVar.getName();
-    }
-    // If we want to load this variable somewhere load and return it here in a register
-    if (this.identiferAcceptType.equals("load")) {
-      String r = this.new_temp();
-      emit("\t" + r + " = load " + Utils.llvmType(idVar.getType()) + ", " + Utils.llvmType(idVar.getType()) + "* " + varAddress);
-      return r;
-    } else {
-      // Reset default identifier accept type
-      this.identiferAcceptType = "load";
-      // If we want to store to it somewhere else just return it's address
-      return varAddress;
+      return this.builder.cast(Opcode.BITCAST, pointer, Utils.llvmType(idVar.getType()) + "*");
     }
+    // If variable's scope is inside method it's address is the stack slot allocated at the start of the function
+    return this.locals[idVar.getIndex()];
   }
 
   /**
     * f0 -> "this"
     */
-  public String visit(ThisExpression n, String argu) throws Exception {
-    this.lastClassType = argu.split(":")[0];
-    return "%this";
+  public Value visit(ThisExpression n, Scope argu) throws Exception {
+    return this.builder.getFunction().getArguments().get(0);
   }
 
   /**
@@ -758,35 +862,54 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f3 -> Expression()
     * f4 -> "]"
     */
-  public String visit(BooleanArrayAllocationExpression n, String argu) throws Exception {
-    // Create labels
-    String negSizeLabel = new_label("if");
-    String nonNegativeSizeLabel = new_label("endif");
+  public Value visit(BooleanArrayAllocationExpression n, Scope argu) throws Exception {
     // Get array's declared size
-    String arraySize = n.f3.accept(this,argu);
+    Value arraySize = n.f3.accept(this,argu);
+    if (this.packBooleans) {
+      return this.packedBooleanArray(arraySize);
+    }
+    // Create labels
+    BasicBlock negSizeLabel = new_block("if");
+    BasicBlock nonNegativeSizeLabel = new_block("endif");
     // Here the size needs 4 extra bytes to be stored because this is boolean array(aka i8*)
     // Create a register to store the final size (array's size + 4 extra bytes to store array's size)
-    String finalSize = new_temp();
-    emit("\t" + finalSize + " = add i32 4, " + arraySize);
+    Value finalSize = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(4), arraySize);
     // Check that the size of the array is >= 4 (because we added 4)
-    String sizeCheckResult = new_temp();
-    emit("\t" + sizeCheckResult + " = icmp sge i32 " + finalSize + ", 4");
+    Value sizeCheckResult = this.builder.icmp(CompareInstruction.Predicate.SGE, finalSize, ConstantInt.getInt(4));
     // Negative size detected
-    emit("\tbr i1 " + sizeCheckResult + ", label %" + nonNegativeSizeLabel + ", label %" + negSizeLabel);
-    emit("\t" + negSizeLabel + ":");
-    emit("\tcall void @throw_nsz()");
+    this.builder.condBr(sizeCheckResult, nonNegativeSizeLabel, negSizeLabel);
+    startBlock(negSizeLabel);
+    this.builder.call("void", this.throwNsz);
     // Positive size
-    emit("\tbr label %" + nonNegativeSizeLabel);
-    emit("\t" + nonNegativeSizeLabel + ":");
+    this.builder.br(nonNegativeSizeLabel);
+    startBlock(nonNegativeSizeLabel);
     // Allocate menory for the array
-    String arrayPointer = new_temp();
-    emit("\t" + arrayPointer + " = call i8* @calloc(i32 " + finalSize + ", i32 1)");
+    Value arrayPointer = this.allocate(finalSize, 1, null);
     // Cast the returned array pointer to i32* (integer type) to store the size
-    String castedPointer= new_temp();
-    emit("\t" + castedPointer + " = bitcast i8* " + arrayPointer + " to i32*");
+    Value castedPointer = this.builder.cast(Opcode.BITCAST, arrayPointer, "i32*");
     // Store the size of the array to the first position
-    emit("\tstore i32 " + arraySize + ", i32* " + castedPointer);
-    this.lastClassType = "boolean[]";
+    this.builder.store(arraySize, castedPointer);
+    return arrayPointer;
+  }
+
+  // Allocates a boolean array of i64 words with a bit for every element, after a header word whose first 4 bytes hold the size
+  private Value packedBooleanArray(Value arraySize) {
+    BasicBlock negSizeLabel = new_block("if");
+    BasicBlock nonNegativeSizeLabel = new_block("endif");
+    // Check that the size of the array is >= 0
+    Value sizeCheckResult = this.builder.icmp(CompareInstruction.Predicate.SGE, arraySize, ConstantInt.getInt(0));
+    this.builder.condBr(sizeCheckResult, nonNegativeSizeLabel, negSizeLabel);
+    startBlock(negSizeLabel);
+    this.builder.call("void", this.throwNsz);
+    this.builder.br(nonNegativeSizeLabel);
+    startBlock(nonNegativeSizeLabel);
+    // (size + 63) / 64 words, unsigned so that it does not overflow for the largest sizes, and the header word
+    Value words = this.builder.binary(Opcode.LSHR, "i32", this.builder.binary(Opcode.ADD, "i32", arraySize, ConstantInt.getInt(63)), ConstantInt.getInt(6));
+    Value finalSize = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(1), words);
+    Value arrayPointer = this.allocate(finalSize, 8, null);
+    // Store the size of the array to the first position
+    Value castedPointer = this.builder.cast(Opcode.BITCAST, arrayPointer, "i32*");
+    this.builder.store(arraySize, castedPointer);
     return arrayPointer;
   }
 
@@ -797,34 +920,29 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f3 -> Expression()
     * f4 -> "]"
     */
-  public String visit(IntegerArrayAllocationExpression n, String argu) throws Exception {
+  public Value visit(IntegerArrayAllocationExpression n, Scope argu) throws Exception {
     // Create labels
-    String negSizeLabel = new_label("if");
-    String nonNegativeSizeLabel = new_label("endif");
+    BasicBlock negSizeLabel = new_block("if");
+    BasicBlock nonNegativeSizeLabel = new_block("endif");
     // Get array's declared size
-    String arraySize = n.f3.accept(this,argu);
+    Value arraySize = n.f3.accept(this,argu);
     // Create a register to store the final size (array's size + 1 integer to store array's size)
-    String finalSize = new_temp();
-    emit("\t" + finalSize + " = add i32 1, " + arraySize);
+    Value finalSize = this.builder.binary(Opcode.ADD, "i32", ConstantInt.getInt(1), arraySize);
     // Check that the size of the array is >= 1 (because we added 1)
-    String sizeCheckResult = new_temp();
-    emit("\t" + sizeCheckResult + " = icmp sge i32 " + finalSize + ", 1");
+    Value sizeCheckResult = this.builder.icmp(CompareInstruction.Predicate.SGE, finalSize, ConstantInt.getInt(1));
     // Negative size detected
-    emit("\tbr i1 " + sizeCheckResult + ", label %" + nonNegativeSizeLabel + ", label %" + negSizeLabel);
-    emit("\t" + negSizeLabel + ":");
-    emit("\tcall void @throw_nsz()");
+    this.builder.condBr(sizeCheckResult, nonNegativeSizeLabel, negSizeLabel);
+    startBlock(negSizeLabel);
+    this.builder.call("void", this.throwNsz);
     // Positive size
-    emit("\tbr label %" + nonNegativeSizeLabel);
-    emit("\t" + nonNegativeSizeLabel + ":");
+    this.builder.br(nonNegativeSizeLabel);
+    startBlock(nonNegativeSizeLabel);
     // Allocate menory for the array
-    String arrayPointer = new_temp();
-    emit("\t" + arrayPointer + " = call i8* @calloc(i32 " + finalSize + ", i32 4)");
+    Value arrayPointer = this.allocate(finalSize, 4, null);
     // Cast the returned array pointer
-    String castedPointer= new_temp();
-    emit("\t" + castedPointer + " = bitcast i8* " + arrayPointer + " to i32*");
+    Value castedPointer = this.builder.cast(Opcode.BITCAST, arrayPointer, "i32*");
     // Store the size of the array to the first position
-    emit("\tstore i32 " + arraySize + ", i32* " + castedPointer);
-    this.lastClassType = "int[]";
+    this.builder.store(arraySize, castedPointer);
     return castedPointer;
   }
 
@@ -834,34 +952,29 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f2 -> "("
     * f3 -> ")"
     */
-  public String visit(AllocationExpression n, String argu) throws Exception {
+  public Value visit(AllocationExpression n, Scope argu) throws Exception {
     // Get identifier class type
-    Class classType = this.symbolTable.getClass(n.f1.accept(this,"name_only"));
+    Class classType = this.symbolTable.getClass(n.f1.f0.toString());
     // Allocate memory on heap for the object
-    String objPtr = new_temp();
-    emit("\t" + objPtr + " = call i8* @calloc(i32 1, i32 " + classType.getSize() + ")");
+    Value objPtr = this.allocate(ConstantInt.getInt(1), classType.getSize(), this.gc != null ? this.gc.pointerMap(classType) : null);
     // Set vtable pointer
     // Bitcast the pointer to i8*** to setup the vtable
-    String bitcastedPtr = new_temp();
-    emit("\t" + bitcastedPtr + " = bitcast i8* " + objPtr + " to i8***");
+    Value bitcastedPtr = this.builder.cast(Opcode.BITCAST, objPtr, "i8***");
     // Get the address of the vtable (the first element of the Base_vtable)
-    String vtableAddr = new_temp();
-    emit("\t" + vtableAddr + " = getelementptr [" + classType.getVtable().size() + " x i8*], [" + classType.getVtable().size() + " x i8*]* @." + classType.getName() + "_vtable, i32 0, i32 0");
+    GlobalVariable vtable = this.module.getGlobal("." + classType.getName() + "_vtable");
+    Value vtableAddr = this.builder.gep(vtable.getValueType(), "i8**", vtable, ConstantInt.getInt(0), ConstantInt.getInt(0));
     // Set the vtable to the correct address (object's bitcasted addresse's first element).
-    emit("\tstore i8** " + vtableAddr + ", i8*** " + bitcastedPtr);
-    this.lastClassType = classType.getName();
+    this.builder.store(vtableAddr, bitcastedPtr);
     return objPtr;
   }
-  
+
   /**
     * f0 -> "!"
     * f1 -> Clause()
     */
-  public String visit(NotExpression n, String argu) throws Exception {
-    String expr = n.f1.accept(this,argu);
-    String result = new_temp();
-    emit("\t" + result + " = xor i1 1, " + expr);
-    return result;
+  public Value visit(NotExpression n, Scope argu) throws Exception {
+    Value expr = n.f1.accept(this,argu);
+    return this.builder.binary(Opcode.XOR, "i1", ConstantInt.getBoolean(true), expr);
   }
 
   /**
@@ -869,11 +982,7 @@ public class LLVMVisitor extends GJDepthFirst<String,String> {
     * f1 -> Expression()
     * f2 -> ")"
     */
-  public String visit(BracketExpression n, String argu) throws Exception {
+  public Value visit(BracketExpression n, Scope argu) throws Exception {
     return n.f1.accept(this, argu);
   }
-
-  public String visit(NodeToken n, String argu) throws Exception { 
-    return n.toString(); 
-  }
-}
\ No newline at end of file
+}
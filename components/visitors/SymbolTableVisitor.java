@@ -1,18 +1,50 @@
 package components.visitors;
 
+import components.helpers.Diagnostics;
+import components.helpers.ErrorCode;
+import components.helpers.SemanticException;
 import components.helpers.SymbolTable;
+import components.prototypes.Scope;
 import syntaxtree.*;
 import visitor.GJDepthFirst;
 
-public class SymbolTableVisitor extends GJDepthFirst<String,String> {
+public class SymbolTableVisitor extends GJDepthFirst<String,Scope> {
 
   private SymbolTable symbolTable;
+  private Diagnostics diagnostics; // null stops at the first error
 
   public SymbolTableVisitor(SymbolTable st) {
+    this(st, null);
+  }
+
+  // Reports the errors to diagnostics and goes on with the next declaration
+  public SymbolTableVisitor(SymbolTable st,Diagnostics diagnostics) {
     this.symbolTable = st;
+    this.diagnostics = diagnostics;
+  }
+
+  // Reports the error at the token when errors are collected, throws it otherwise
+  private void recover(SemanticException ex,NodeToken token) throws Exception {
+    if (this.diagnostics == null) {
+      throw ex;
+    }
+    this.diagnostics.report(token, ex.getCode(), ex.getMessage());
   }
 
 
+  /**
+    * f0 -> MainClass()
+    * f1 -> ( TypeDeclaration() )*
+    * f2 -> <EOF>
+    */
+  public String visit(Goal n, Scope argu) throws Exception {
+    n.f0.accept(this,argu);
+    n.f1.accept(this,argu);
+    // Every class is declared, so their lookup tables can be built
+    this.symbolTable.freeze();
+    return null;
+  }
+
   /** f0 -> "class" 
    *  f1 -> Identifier() 
    *  f2 -> "{"  f3 -> "public" 
@@ -31,15 +63,20 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
    *  f16 -> "}" 
    *  f17 -> "}" 
    * */
-  public String visit(MainClass n, String argu) throws Exception{
+  public String visit(MainClass n, Scope argu) throws Exception{
     // Read class name
     String mainClassName = n.f1.accept(this,null);
     this.symbolTable.insertClass(mainClassName,true);
+    Scope scope = this.symbolTable.getClass(mainClassName).getScope();
     // Read args variable as String[] and insert it in main class
     String argsVarName = n.f11.accept(this,null);
-    this.symbolTable.varDeclaration("String[]", argsVarName, mainClassName);
+    try {
+      this.symbolTable.varDeclaration("String[]", argsVarName, scope);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f11.f0);
+    }
     // Read all variable declarations
-    n.f14.accept(this,mainClassName);
+    n.f14.accept(this,scope);
     return null;
   }
 
@@ -51,14 +88,21 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f4 -> ( MethodDeclaration() )*
     * f5 -> "}"
   */
-  public String visit(ClassDeclaration n, String argu) throws Exception{
+  public String visit(ClassDeclaration n, Scope argu) throws Exception{
     // Read class name
     String className = n.f1.accept(this,null);
-    this.symbolTable.insertClass(className,false);
+    try {
+      this.symbolTable.insertClass(className,false);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f1.f0);
+      this.diagnostics.reject(n);
+      return null;
+    }
+    Scope scope = this.symbolTable.getClass(className).getScope();
     // Read all variable declarations
-    n.f3.accept(this,className);
+    n.f3.accept(this,scope);
     // Read all method declarations
-    n.f4.accept(this,className);
+    n.f4.accept(this,scope);
     return null;
   }
 
@@ -72,16 +116,43 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f6 -> ( MethodDeclaration() )*
     * f7 -> "}"
   */
-  public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
+  public String visit(ClassExtendsDeclaration n, Scope argu) throws Exception {
     // Read class name
     String className = n.f1.accept(this,null);
     // Read parent class name
     String parentClassName = n.f3.accept(this,null);
-    this.symbolTable.insertClass(className,parentClassName,false);
+    try {
+      this.symbolTable.insertClass(className,parentClassName,false);
+    } catch (SemanticException ex) {
+      if (ex.getCode() == ErrorCode.UNDEFINED_TYPE) {
+        this.recover(ex, n.f3.f0);
+        // Go on as if the class had no parent
+        return this.declareWithoutParent(n, className);
+      }
+      this.recover(ex, n.f1.f0);
+      this.diagnostics.reject(n);
+      return null;
+    }
+    Scope scope = this.symbolTable.getClass(className).getScope();
     // Read all variable declarations
-    n.f5.accept(this,className);
+    n.f5.accept(this,scope);
     // Read all method declarations
-    n.f6.accept(this,className);
+    n.f6.accept(this,scope);
+    return null;
+  }
+
+  // Declares a class whose parent is not declared as a class without a parent
+  private String declareWithoutParent(ClassExtendsDeclaration n,String className) throws Exception {
+    try {
+      this.symbolTable.insertClass(className,false);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f1.f0);
+      this.diagnostics.reject(n);
+      return null;
+    }
+    Scope scope = this.symbolTable.getClass(className).getScope();
+    n.f5.accept(this,scope);
+    n.f6.accept(this,scope);
     return null;
   }
 
@@ -90,10 +161,14 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f1 -> Identifier()
     * f2 -> ";"
   */
-  public String visit(VarDeclaration n, String argu) throws Exception {
+  public String visit(VarDeclaration n, Scope argu) throws Exception {
     String type = n.f0.accept(this,null);
     String name = n.f1.accept(this,null);
-    this.symbolTable.varDeclaration(type, name, argu);
+    try {
+      this.symbolTable.varDeclaration(type, name, argu);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f1.f0);
+    }
     return type + " " + name;
   }
 
@@ -112,15 +187,22 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f11 -> ";"
     * f12 -> "}"
     */
-  public String visit(MethodDeclaration n, String argu) throws Exception {
+  public String visit(MethodDeclaration n, Scope argu) throws Exception {
     String returnType = n.f1.accept(this,null);
     String name = n.f2.accept(this,null);
     // Read all parameter declarations 
-    n.f4.accept(this,argu + ":" + name);
+    n.f4.accept(this,argu);
     // Insert method to last class
-    this.symbolTable.methodDeclaration(returnType, name,argu);
+    Scope scope;
+    try {
+      scope = this.symbolTable.methodDeclaration(returnType, name,argu);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f2.f0);
+      this.diagnostics.reject(n);
+      return returnType + " " + name;
+    }
     // Read all variable declarations
-    n.f7.accept(this,argu + ":" + name);
+    n.f7.accept(this,scope);
     return returnType + " " + name;
   }
 
@@ -128,7 +210,7 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f0 -> Type()
     * f1 -> Identifier()
   */
-  public String visit(FormalParameter n, String argu) throws Exception {
+  public String visit(FormalParameter n, Scope argu) throws Exception {
     String type = n.f0.accept(this,null);
     String name = n.f1.accept(this,null);
     this.symbolTable.formalParameterDeclaration(type, name);
@@ -140,7 +222,7 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f1 -> "["
     * f2 -> "]"
   */
-  public String visit(BooleanArrayType n, String argu) throws Exception {
+  public String visit(BooleanArrayType n, Scope argu) throws Exception {
     return "boolean[]";
   }
 
@@ -149,11 +231,11 @@ public class SymbolTableVisitor extends GJDepthFirst<String,String> {
     * f1 -> "["
     * f2 -> "]"
     */
-  public String visit(IntegerArrayType n, String argu) throws Exception {
+  public String visit(IntegerArrayType n, Scope argu) throws Exception {
     return "int[]";
   }
 
-  public String visit(NodeToken n, String argu) throws Exception { 
+  public String visit(NodeToken n, Scope argu) throws Exception { 
     return n.toString(); 
   }
 }
\ No newline at end of file
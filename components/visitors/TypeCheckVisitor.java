@@ -1,17 +1,61 @@
 package components.visitors;
 
+import java.util.ArrayList;
+
+import components.helpers.Diagnostics;
+import components.helpers.ErrorCode;
+import components.helpers.SemanticException;
 import components.helpers.SymbolTable;
 import components.helpers.Utils;
+import components.prototypes.Method;
+import components.prototypes.Scope;
+import components.prototypes.Variable;
+import components.types.Type;
 import syntaxtree.*;
 import visitor.GJDepthFirst;
 
-public class TypeCheckVisitor extends GJDepthFirst<String,String> {
+public class TypeCheckVisitor extends GJDepthFirst<Type,Scope> {
 
   private SymbolTable symbolTable;
-  private String tmpArguments; // Used for MessageSend
+  private ArrayList<Type> tmpArguments; // Types of the arguments of the MessageSend being checked
+  private Diagnostics diagnostics; // null stops at the first error
 
   public TypeCheckVisitor(SymbolTable symbolTable) {
+    this(symbolTable, null);
+  }
+
+  // Reports the errors to diagnostics and goes on checking. An expression with an error gets Type.ERROR, which
+  // matches every type, so the expressions that contain it don't report the same error again
+  public TypeCheckVisitor(SymbolTable symbolTable,Diagnostics diagnostics) {
     this.symbolTable = symbolTable;
+    this.diagnostics = diagnostics;
+  }
+
+  // Reports the error at the token and returns Type.ERROR when errors are collected, throws it otherwise
+  private Type error(NodeToken token,ErrorCode code,String message) throws Exception {
+    if (this.diagnostics == null) {
+      throw new SemanticException(code, message);
+    }
+    this.diagnostics.report(token, code, message);
+    return Type.ERROR;
+  }
+
+  private Type recover(SemanticException ex,NodeToken token) throws Exception {
+    return this.error(token, ex.getCode(), ex.getMessage());
+  }
+
+  // Whether the type is the expected one. An expression with an error that was already reported may be of any type
+  private static boolean is(Type type,Type expected) {
+    return type == expected || type == Type.ERROR;
+  }
+
+  // Token of a type that names a class, the only kind of type that may not be declared
+  private static NodeToken classNameToken(syntaxtree.Type type) {
+    return ((Identifier)type.f0.choice).f0;
+  }
+
+  private boolean isRejected(Node declaration) {
+    return this.diagnostics != null && this.diagnostics.isRejected(declaration);
   }
 
   /** f0 -> "class" 
@@ -32,13 +76,14 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
    *  f16 -> "}" 
    *  f17 -> "}" 
    * */
-  public String visit(MainClass n, String argu) throws Exception{
+  public Type visit(MainClass n, Scope argu) throws Exception{
     // Read class name
-    String mainClassName = n.f1.accept(this,null);
+    String mainClassName = n.f1.f0.toString();
+    Scope scope = this.symbolTable.getClass(mainClassName).getScope();
     // Read all variable declarations to check declared classes
-    n.f14.accept(this,mainClassName);
+    n.f14.accept(this,scope);
     // Typecheck the statements
-    n.f15.accept(this,mainClassName);
+    n.f15.accept(this,scope);
     return null;
   }
 
@@ -50,13 +95,17 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f4 -> ( MethodDeclaration() )*
     * f5 -> "}"
   */
-  public String visit(ClassDeclaration n, String argu) throws Exception{
+  public Type visit(ClassDeclaration n, Scope argu) throws Exception{
+    if (this.isRejected(n)) {
+      return null;
+    }
     // Read class name
-    String className = n.f1.accept(this,null);
+    String className = n.f1.f0.toString();
+    Scope scope = this.symbolTable.getClass(className).getScope();
     // Read all variable declarations to check declared classes
-    n.f3.accept(this,className);
+    n.f3.accept(this,scope);
     // Typecheck to all methods
-    n.f4.accept(this,className);
+    n.f4.accept(this,scope);
     return null;
   }
 
@@ -70,13 +119,17 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f6 -> ( MethodDeclaration() )*
     * f7 -> "}"
   */
-  public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
+  public Type visit(ClassExtendsDeclaration n, Scope argu) throws Exception {
+    if (this.isRejected(n)) {
+      return null;
+    }
     // Read class name
-    String className = n.f1.accept(this,null);
+    String className = n.f1.f0.toString();
+    Scope scope = this.symbolTable.getClass(className).getScope();
     // Read all variable declarations to check declared classes
-    n.f5.accept(this,className);
+    n.f5.accept(this,scope);
     // Typecheck to all methods
-    n.f6.accept(this,className);
+    n.f6.accept(this,scope);
     return null;
   }
 
@@ -85,10 +138,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> Identifier()
     * f2 -> ";"
   */
-  public String visit(VarDeclaration n, String argu) throws Exception {
-    String name = n.f1.accept(this,null);
-    String scope = argu + ":" + name;
-    this.symbolTable.checkVarDeclaration(scope);
+  public Type visit(VarDeclaration n, Scope argu) throws Exception {
+    String name = n.f1.f0.toString();
+    try {
+      this.symbolTable.checkVarDeclaration(name, argu);
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f1.f0);
+    }
     return null;
   }
   
@@ -107,21 +163,43 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f11 -> ";"
     * f12 -> "}"
   */
-  public String visit(MethodDeclaration n, String argu) throws Exception {
-    String returnType = n.f1.accept(this,null);
-    String name = n.f2.accept(this,null);
-    // Read all parameter declarations 
-    n.f4.accept(this,argu + ":" + name);
+  public Type visit(MethodDeclaration n, Scope argu) throws Exception {
+    if (this.isRejected(n)) {
+      return null;
+    }
+    String name = n.f2.f0.toString();
+    Method method = argu.getOwnClass().getMethod(name);
+    Scope scope = method.getScope();
+    // Check the declared classes of the return type and the parameters
+    try {
+      this.symbolTable.checkReturnType(method);
+    } catch (SemanticException ex) {
+      this.recover(ex, classNameToken(n.f1));
+    }
+    n.f4.accept(this,scope);
     // Read all variable declarations
-    n.f7.accept(this,argu + ":" + name);
+    n.f7.accept(this,scope);
     // Typecheck all the statements
-    n.f8.accept(this,argu + ":" + name);
+    n.f8.accept(this,scope);
     // Typecheck return type
-    String exprType = this.symbolTable.getExpressionType(n.f10.accept(this,argu + ":" + name), argu + ":" + name);
-    if (!this.symbolTable.checkTypeMatch(exprType, returnType)) {
-      throw new Exception("Return type mismatch: cannot convert from " + exprType +" to " + returnType + " in method " + argu + "." + name);
+    Type exprType = n.f10.accept(this,scope);
+    if (!this.symbolTable.checkTypeMatch(exprType, this.symbolTable.getReturnType(method))) {
+      this.error(n.f9, ErrorCode.RETURN_MISMATCH, "Return type mismatch: cannot convert from " + exprType +" to " + method.getReturnType() + " in method " + argu + "." + name);
     }
-    return returnType + " " + name;
+    return null;
+  }
+
+  /**
+    * f0 -> Type()
+    * f1 -> Identifier()
+    */
+  public Type visit(FormalParameter n, Scope argu) throws Exception {
+    try {
+      this.symbolTable.checkArgumentDeclaration(argu.getMethod().getVariable(n.f1.f0.toString()));
+    } catch (SemanticException ex) {
+      this.recover(ex, classNameToken(n.f0));
+    }
+    return null;
   }
 
   /**
@@ -130,12 +208,11 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f2 -> Expression()
     * f3 -> ";"
     */
-  public String visit(AssignmentStatement n, String argu) throws Exception {
-    String identifierType = this.symbolTable.getExpressionType(n.f0.accept(this,argu), argu);
-    String expr = n.f2.accept(this,argu);
-    String exprType = this.symbolTable.getExpressionType(expr, argu);
+  public Type visit(AssignmentStatement n, Scope argu) throws Exception {
+    Type identifierType = n.f0.accept(this,argu);
+    Type exprType = n.f2.accept(this,argu);
     if (!this.symbolTable.checkTypeMatch(exprType, identifierType)) {
-      throw new Exception("Assignment type mismatch: cannot convert from " + exprType + " to " + identifierType);
+      this.error(n.f1, ErrorCode.TYPE_MISMATCH, "Assignment type mismatch: cannot convert from " + exprType + " to " + identifierType);
     }
     return null;
   }
@@ -149,24 +226,23 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f5 -> Expression()
     * f6 -> ";"
     */
-  public String visit(ArrayAssignmentStatement n, String argu) throws Exception {
+  public Type visit(ArrayAssignmentStatement n, Scope argu) throws Exception {
     // Check array type (like array lookup)
-    String arrayType = this.symbolTable.getExpressionType(n.f0.accept(this,argu), argu);
-    if (arrayType.equals("int[]") || arrayType.equals("boolean[]")) {
-      // Check index type
-      String indexType = this.symbolTable.getExpressionType(n.f2.accept(this,argu), argu);
-      if (!indexType.equals("int")) {
-        throw new Exception("ArrayAssignment index error: " + indexType + " cannot be converted to int");
-      }
-    } else {
-      throw new Exception("The type of the array variable must be an array type but it resolved to " + arrayType);
+    Type arrayType = n.f0.accept(this,argu);
+    if (arrayType != Type.INT_ARRAY && arrayType != Type.BOOLEAN_ARRAY && arrayType != Type.ERROR) {
+      arrayType = this.error(n.f0.f0, ErrorCode.NOT_AN_ARRAY, "The type of the array variable must be an array type but it resolved to " + arrayType);
+    }
+    this.symbolTable.getAnnotations().setType(n.f1, arrayType);
+    // Check index type
+    Type indexType = n.f2.accept(this,argu);
+    if (!is(indexType, Type.INT)) {
+      this.error(n.f1, ErrorCode.INDEX_TYPE, "ArrayAssignment index error: " + indexType + " cannot be converted to int");
     }
     // Continue like in assignment statement
-    String identifierType = arrayType.equals("int[]")  ? "int" : "boolean";
-    String expr = n.f5.accept(this,argu);
-    String exprType = this.symbolTable.getExpressionType(expr, argu);
+    Type identifierType = arrayType == Type.INT_ARRAY ? Type.INT : arrayType == Type.BOOLEAN_ARRAY ? Type.BOOLEAN : Type.ERROR;
+    Type exprType = n.f5.accept(this,argu);
     if (!this.symbolTable.checkTypeMatch(exprType, identifierType)) {
-      throw new Exception("Assignment type mismatch: cannot convert from " + exprType + " to " + identifierType);
+      this.error(n.f4, ErrorCode.TYPE_MISMATCH, "Assignment type mismatch: cannot convert from " + exprType + " to " + identifierType);
     }
     return null;
   }
@@ -180,11 +256,11 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f5 -> "else"
     * f6 -> Statement()
     */
-  public String visit(IfStatement n, String argu) throws Exception {
+  public Type visit(IfStatement n, Scope argu) throws Exception {
     // Check expression type
-    String exprType = this.symbolTable.getExpressionType(n.f2.accept(this,argu), argu);
-    if (!exprType.equals("boolean")) {
-      throw new Exception("If statements can only be booleans. " + exprType + " given.");
+    Type exprType = n.f2.accept(this,argu);
+    if (!is(exprType, Type.BOOLEAN)) {
+      this.error(n.f0, ErrorCode.CONDITION_TYPE, "If statements can only be booleans. " + exprType + " given.");
     }
     // Check it's statements
     n.f4.accept(this,argu);
@@ -199,11 +275,11 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f3 -> ")"
     * f4 -> Statement()
     */
-  public String visit(WhileStatement n, String argu) throws Exception {
+  public Type visit(WhileStatement n, Scope argu) throws Exception {
     // Check expression type
-    String exprType = this.symbolTable.getExpressionType(n.f2.accept(this,argu), argu);
-    if (!exprType.equals("boolean")) {
-      throw new Exception("While statements can only be booleans. " + exprType + " given.");
+    Type exprType = n.f2.accept(this,argu);
+    if (!is(exprType, Type.BOOLEAN)) {
+      this.error(n.f0, ErrorCode.CONDITION_TYPE, "While statements can only be booleans. " + exprType + " given.");
     }
     // Check it's statements
     n.f4.accept(this,argu);
@@ -217,12 +293,12 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f3 -> ")"
     * f4 -> ";"
     */
-  public String visit(PrintStatement n, String argu) throws Exception {
-    String exprType = this.symbolTable.getExpressionType(n.f2.accept(this,argu), argu);
-    if (!exprType.equals("int")) {
-      throw new Exception("System.out.println() statement only accepts integers. " + exprType + " given.");
+  public Type visit(PrintStatement n, Scope argu) throws Exception {
+    Type exprType = n.f2.accept(this,argu);
+    if (!is(exprType, Type.INT)) {
+      this.error(n.f0, ErrorCode.PRINT_TYPE, "System.out.println() statement only accepts integers. " + exprType + " given.");
     }
-    return "int";
+    return Type.INT;
   }
 
   /**
@@ -230,13 +306,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "&&"
     * f2 -> Clause()
     */
-  public String visit(AndExpression n, String argu) throws Exception {
-    String clause1Type = this.symbolTable.getExpressionType(n.f0.accept(this, argu), argu);
-    String clause2Type = this.symbolTable.getExpressionType(n.f2.accept(this, argu), argu);
-    if (!clause1Type.equals("boolean") || !clause2Type.equals("boolean")) {
-      throw new Exception("The operator && is undefined for the argument type(s) " + clause1Type + ", " + clause2Type);
+  public Type visit(AndExpression n, Scope argu) throws Exception {
+    Type clause1Type = n.f0.accept(this, argu);
+    Type clause2Type = n.f2.accept(this, argu);
+    if (!is(clause1Type, Type.BOOLEAN) || !is(clause2Type, Type.BOOLEAN)) {
+      this.error(n.f1, ErrorCode.OPERAND_TYPE, "The operator && is undefined for the argument type(s) " + clause1Type + ", " + clause2Type);
     }
-    return "boolean";
+    return Type.BOOLEAN;
   }
 
   /**
@@ -244,13 +320,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "<"
     * f2 -> PrimaryExpression()
     */
-  public String visit(CompareExpression n, String argu) throws Exception {
-    String expr1Type = this.symbolTable.getExpressionType(n.f0.accept(this, argu), argu);
-    String expr2Type = this.symbolTable.getExpressionType(n.f2.accept(this, argu), argu);
-    if (!expr1Type.equals("int") || !expr2Type.equals("int")) {
-      throw new Exception("The operator < is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
+  public Type visit(CompareExpression n, Scope argu) throws Exception {
+    Type expr1Type = n.f0.accept(this, argu);
+    Type expr2Type = n.f2.accept(this, argu);
+    if (!is(expr1Type, Type.INT) || !is(expr2Type, Type.INT)) {
+      this.error(n.f1, ErrorCode.OPERAND_TYPE, "The operator < is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
     }
-    return "boolean";
+    return Type.BOOLEAN;
   }
 
   /**
@@ -258,13 +334,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "+"
     * f2 -> PrimaryExpression()
     */
-  public String visit(PlusExpression n, String argu) throws Exception {
-    String expr1Type = this.symbolTable.getExpressionType(n.f0.accept(this, argu), argu);
-    String expr2Type = this.symbolTable.getExpressionType(n.f2.accept(this, argu), argu);
-    if (!expr1Type.equals("int") || !expr2Type.equals("int")) {
-      throw new Exception("The operator + is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
+  public Type visit(PlusExpression n, Scope argu) throws Exception {
+    Type expr1Type = n.f0.accept(this, argu);
+    Type expr2Type = n.f2.accept(this, argu);
+    if (!is(expr1Type, Type.INT) || !is(expr2Type, Type.INT)) {
+      this.error(n.f1, ErrorCode.OPERAND_TYPE, "The operator + is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
     }
-    return "int";
+    return Type.INT;
   }
 
   /**
@@ -272,13 +348,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "-"
     * f2 -> PrimaryExpression()
     */
-  public String visit(MinusExpression n, String argu) throws Exception {
-    String expr1Type = this.symbolTable.getExpressionType(n.f0.accept(this, argu), argu);
-    String expr2Type = this.symbolTable.getExpressionType(n.f2.accept(this, argu), argu);
-    if (!expr1Type.equals("int") || !expr2Type.equals("int")) {
-      throw new Exception("The operator - is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
+  public Type visit(MinusExpression n, Scope argu) throws Exception {
+    Type expr1Type = n.f0.accept(this, argu);
+    Type expr2Type = n.f2.accept(this, argu);
+    if (!is(expr1Type, Type.INT) || !is(expr2Type, Type.INT)) {
+      this.error(n.f1, ErrorCode.OPERAND_TYPE, "The operator - is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
     }
-    return "int";
+    return Type.INT;
   }
 
   /**
@@ -286,13 +362,13 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "*"
     * f2 -> PrimaryExpression()
     */
-  public String visit(TimesExpression n, String argu) throws Exception {
-    String expr1Type = this.symbolTable.getExpressionType(n.f0.accept(this, argu), argu);
-    String expr2Type = this.symbolTable.getExpressionType(n.f2.accept(this, argu), argu);
-    if (!expr1Type.equals("int") || !expr2Type.equals("int")) {
-      throw new Exception("The operator * is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
+  public Type visit(TimesExpression n, Scope argu) throws Exception {
+    Type expr1Type = n.f0.accept(this, argu);
+    Type expr2Type = n.f2.accept(this, argu);
+    if (!is(expr1Type, Type.INT) || !is(expr2Type, Type.INT)) {
+      this.error(n.f1, ErrorCode.OPERAND_TYPE, "The operator * is undefined for the argument type(s) " + expr1Type + ", " + expr2Type);
     }
-    return "int";
+    return Type.INT;
   }
 
   /**
@@ -301,19 +377,19 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f2 -> PrimaryExpression()
     * f3 -> "]"
     */
-  public String visit(ArrayLookup n, String argu) throws Exception {
+  public Type visit(ArrayLookup n, Scope argu) throws Exception {
     // Check array type
-    String arrayType = this.symbolTable.getExpressionType(n.f0.accept(this,argu), argu);
-    if (arrayType.equals("int[]") || arrayType.equals("boolean[]")) {
-      // Check index type
-      String indexType = this.symbolTable.getExpressionType(n.f2.accept(this,argu), argu);
-      if (!indexType.equals("int")) {
-        throw new Exception("ArrayLookup index error: " + indexType + " cannot be converted to int");
-      }
-    } else {
-      throw new Exception("ArrayLookup error: Bad left operand for operator [] of type " + arrayType);
+    Type arrayType = n.f0.accept(this,argu);
+    if (arrayType != Type.INT_ARRAY && arrayType != Type.BOOLEAN_ARRAY && arrayType != Type.ERROR) {
+      arrayType = this.error(n.f1, ErrorCode.NOT_AN_ARRAY, "ArrayLookup error: Bad left operand for operator [] of type " + arrayType);
+    }
+    this.symbolTable.getAnnotations().setType(n.f1, arrayType);
+    // Check index type
+    Type indexType = n.f2.accept(this,argu);
+    if (!is(indexType, Type.INT)) {
+      this.error(n.f1, ErrorCode.INDEX_TYPE, "ArrayLookup index error: " + indexType + " cannot be converted to int");
     }
-    return arrayType.equals("int[]") ? "int" : "boolean";
+    return arrayType == Type.INT_ARRAY ? Type.INT : arrayType == Type.BOOLEAN_ARRAY ? Type.BOOLEAN : Type.ERROR;
   }
 
   /**
@@ -321,14 +397,14 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> "."
     * f2 -> "length"
     */
-  public String visit(ArrayLength n, String argu) throws Exception {
+  public Type visit(ArrayLength n, Scope argu) throws Exception {
     // Check array type
-    String varName = n.f0.accept(this,argu);
-    String arrayType = this.symbolTable.getExpressionType(varName, argu);
-    if (!arrayType.equals("int[]") && !arrayType.equals("boolean[]")) {
-      throw new Exception("The primitive type " + arrayType + " of k does not have a field length ");
+    Type arrayType = n.f0.accept(this,argu);
+    if (arrayType != Type.INT_ARRAY && arrayType != Type.BOOLEAN_ARRAY && arrayType != Type.ERROR) {
+      this.error(n.f2, ErrorCode.NOT_AN_ARRAY, "The primitive type " + arrayType + " of k does not have a field length ");
     }
-    return "int";
+    this.symbolTable.getAnnotations().setType(n.f1, arrayType);
+    return Type.INT;
   }
 
   /**
@@ -339,30 +415,47 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f4 -> ( ExpressionList() )?
     * f5 -> ")"
     */
-  public String visit(MessageSend n, String argu) throws Exception {
-    String expr = n.f0.accept(this,argu);
-    String id = n.f2.accept(this,argu);
-    String args = n.f4.present() ? n.f4.accept(this,argu) : null;
-    return this.symbolTable.checkMessageSend(expr, id, args, argu);
+  public Type visit(MessageSend n, Scope argu) throws Exception {
+    Type exprType = n.f0.accept(this,argu);
+    String id = n.f2.f0.toString();
+    // Every call collects its own arguments, so calls nested in the arguments don't overwrite them
+    ArrayList<Type> args = new ArrayList<Type>();
+    if (n.f4.present()) {
+      ArrayList<Type> outerArguments = this.tmpArguments;
+      this.tmpArguments = args;
+      n.f4.accept(this,argu);
+      this.tmpArguments = outerArguments;
+    }
+    try {
+      Method method = this.symbolTable.checkMessageSend(exprType, this.describe(n.f0, exprType), id, args, argu);
+      if (method == null) {
+        return Type.ERROR;
+      }
+      this.symbolTable.getAnnotations().setType(n.f1, exprType);
+      this.symbolTable.getAnnotations().setMethod(n.f2.f0, method);
+      return this.symbolTable.getReturnType(method);
+    } catch (SemanticException ex) {
+      return this.recover(ex, n.f2.f0);
+    }
   }
 
   /**
     * f0 -> Expression()
     * f1 -> ExpressionTail()
     */
-  public String visit(ExpressionList n, String argu) throws Exception {
-    this.tmpArguments = n.f0.accept(this,argu);
+  public Type visit(ExpressionList n, Scope argu) throws Exception {
+    this.tmpArguments.add(n.f0.accept(this,argu));
     n.f1.accept(this,argu);
-    return this.tmpArguments;
+    return null;
   }
 
   /**
     * f0 -> ","
     * f1 -> Expression()
     */
-  public String visit(ExpressionTerm n, String argu) throws Exception {
-    this.tmpArguments += n.f0.accept(this,argu) + n.f1.accept(this,argu);
-    return this.tmpArguments;
+  public Type visit(ExpressionTerm n, Scope argu) throws Exception {
+    this.tmpArguments.add(n.f1.accept(this,argu));
+    return null;
   }
 
   /**
@@ -372,13 +465,12 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f3 -> Expression()
     * f4 -> "]"
     */
-  public String visit(BooleanArrayAllocationExpression n, String argu) throws Exception {
-    String expr = n.f3.accept(this,argu);
-    String exprType = this.symbolTable.getExpressionType(expr, argu);
-    if (!exprType.equals("int")) {
-      throw new Exception("IntegerArrayAllocationExpressionSizeError: '" + expr + "' is not an integer but " + exprType);
+  public Type visit(BooleanArrayAllocationExpression n, Scope argu) throws Exception {
+    Type exprType = n.f3.accept(this,argu);
+    if (!is(exprType, Type.INT)) {
+      this.error(n.f0, ErrorCode.ARRAY_SIZE_TYPE, "IntegerArrayAllocationExpressionSizeError: '" + this.describe(n.f3, exprType) + "' is not an integer but " + exprType);
     }
-    return "boolean[]";
+    return Type.BOOLEAN_ARRAY;
   }
 
   /**
@@ -388,13 +480,12 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f3 -> Expression()
     * f4 -> "]"
     */
-  public String visit(IntegerArrayAllocationExpression n, String argu) throws Exception {
-    String expr = n.f3.accept(this,argu);
-    String exprType = this.symbolTable.getExpressionType(expr, argu);
-    if (!exprType.equals("int")) {
-      throw new Exception("IntegerArrayAllocationExpressionSizeError: '" + expr + "' is not an integer but " + exprType);
+  public Type visit(IntegerArrayAllocationExpression n, Scope argu) throws Exception {
+    Type exprType = n.f3.accept(this,argu);
+    if (!is(exprType, Type.INT)) {
+      this.error(n.f0, ErrorCode.ARRAY_SIZE_TYPE, "IntegerArrayAllocationExpressionSizeError: '" + this.describe(n.f3, exprType) + "' is not an integer but " + exprType);
     }
-    return "int[]";
+    return Type.INT_ARRAY;
   }
 
   /**
@@ -403,22 +494,26 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f2 -> "("
     * f3 -> ")"
     */
-  public String visit(AllocationExpression n, String argu) throws Exception {
-    String identifier = n.f1.accept(this,argu);
-    this.symbolTable.checkAllocation(identifier);
-    return identifier;
+  public Type visit(AllocationExpression n, Scope argu) throws Exception {
+    String identifier = n.f1.f0.toString();
+    try {
+      this.symbolTable.checkAllocation(identifier);
+    } catch (SemanticException ex) {
+      return this.recover(ex, n.f1.f0);
+    }
+    return this.symbolTable.getClass(identifier).getType();
   }
 
   /**
     * f0 -> "!"
     * f1 -> Clause()
     */
-  public String visit(NotExpression n, String argu) throws Exception {
-    String clauseType = this.symbolTable.getExpressionType(n.f1.accept(this,argu), argu);
-    if (!clauseType.equals("boolean")) {
-      throw new Exception("The operator ! is undefined for the argument type(s) " + clauseType);
+  public Type visit(NotExpression n, Scope argu) throws Exception {
+    Type clauseType = n.f1.accept(this,argu);
+    if (!is(clauseType, Type.BOOLEAN)) {
+      this.error(n.f0, ErrorCode.OPERAND_TYPE, "The operator ! is undefined for the argument type(s) " + clauseType);
     }
-    return "boolean";
+    return Type.BOOLEAN;
   }
 
   /**
@@ -426,29 +521,82 @@ public class TypeCheckVisitor extends GJDepthFirst<String,String> {
     * f1 -> Expression()
     * f2 -> ")"
     */
-  public String visit(BracketExpression n, String argu) throws Exception {
+  public Type visit(BracketExpression n, Scope argu) throws Exception {
     return n.f1.accept(this, argu);
   }
 
   /**
-    * f0 -> "boolean"
-    * f1 -> "["
-    * f2 -> "]"
-  */
-  public String visit(BooleanArrayType n, String argu) throws Exception {
-    return "boolean[]";
+    * f0 -> <INTEGER_LITERAL>
+    */
+  public Type visit(IntegerLiteral n, Scope argu) throws Exception {
+    // Throws if the literal does not fit in an int
+    try {
+      Utils.isNumericType(n.f0.toString());
+    } catch (SemanticException ex) {
+      this.recover(ex, n.f0);
+    }
+    return Type.INT;
   }
 
   /**
-    * f0 -> "int"
-    * f1 -> "["
-    * f2 -> "]"
+    * f0 -> "true"
     */
-  public String visit(IntegerArrayType n, String argu) throws Exception {
-    return "int[]";
+  public Type visit(TrueLiteral n, Scope argu) throws Exception {
+    return Type.BOOLEAN;
   }
 
-  public String visit(NodeToken n, String argu) throws Exception { 
-    return n.toString(); 
+  /**
+    * f0 -> "false"
+    */
+  public Type visit(FalseLiteral n, Scope argu) throws Exception {
+    return Type.BOOLEAN;
+  }
+
+  /**
+    * f0 -> <IDENTIFIER>
+    */
+  public Type visit(Identifier n, Scope argu) throws Exception {
+    // Only visited where the identifier is a variable. Names of classes and methods are read from the tokens
+    try {
+      Variable var = this.symbolTable.getVariable(n.f0.toString(), argu);
+      this.symbolTable.getAnnotations().setVariable(n.f0, var);
+      return this.symbolTable.resolveType(var);
+    } catch (SemanticException ex) {
+      return this.recover(ex, n.f0);
+    }
+  }
+
+  /**
+    * f0 -> "this"
+    */
+  public Type visit(ThisExpression n, Scope argu) throws Exception {
+    return argu.getOwnClass().getType();
+  }
+
+  // Text of an expression in error messages: the identifier or the literal itself or the type of any other expression
+  private String describe(Node n,Type type) {
+    while (n instanceof Expression || n instanceof Clause || n instanceof PrimaryExpression || n instanceof BracketExpression) {
+      if (n instanceof Expression) {
+        n = ((Expression)n).f0.choice;
+      } else if (n instanceof Clause) {
+        n = ((Clause)n).f0.choice;
+      } else if (n instanceof PrimaryExpression) {
+        n = ((PrimaryExpression)n).f0.choice;
+      } else {
+        n = ((BracketExpression)n).f1;
+      }
+    }
+    if (n instanceof Identifier) {
+      return ((Identifier)n).f0.toString();
+    } else if (n instanceof IntegerLiteral) {
+      return ((IntegerLiteral)n).f0.toString();
+    } else if (n instanceof TrueLiteral) {
+      return "true";
+    } else if (n instanceof FalseLiteral) {
+      return "false";
+    } else if (n instanceof ThisExpression) {
+      return "this";
+    }
+    return type.getName();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,6 @@
+class TabbedClass {
+    public static void main(String[] a) {
+        System.out.println(new A().m(1));
+    }
+}
+	class A { public int m(int x) { return x + true; } }
@@ -0,0 +1,13 @@
+class UndefinedParameterType {
+	public static void main(String[] a) {
+		System.out.println(new A().m(new A()));
+	}
+}
+
+class A {
+	public int m(D x) {
+		int y;
+		y = x.foo();
+		return y;
+	}
+}
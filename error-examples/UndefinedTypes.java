@@ -0,0 +1,11 @@
+class UndefinedTypes {
+	public static void main(String[] a) {
+		System.out.println(1);
+	}
+}
+
+class A {
+	public C m(D x) {
+		return x;
+	}
+}
@@ -0,0 +1 @@
+// Lines end with "\r" alone and the classes after the first are indented with tabs, which the lexer counts to the next// multiple of 8. With -cache every class is parsed on its own from its line and column in the fileclass CarriageReturns {    public static void main(String[] a) {        System.out.println(new Counter().run(5));        System.out.println(new Filler().fill(4));    }}	class Counter {		int count;		int[] counts;		public int run(int n) {			int i;			counts = new int[n];			i = 0;			while (i < n) {				counts[i] = i * i;				count = count + (counts[i]);				i = i + 1;			}			return count;		}	} 	class Filler {		int[] values;		public int fill(int n) {			int j;			values = new int[n];			j = 0;			while (j < n) {				values[j] = j + 1;				j = j + 1;			}			return values[(n - 1)];		}	}
\ No newline at end of file
@@ -0,0 +1,9 @@
+// "/**/" starts a formal comment, which goes on to the next "*/": only 2 and 5 are printed
+class Comments {
+    public static void main(String[] a) {
+        /**/ System.out.println(1); /* c */ System.out.println(2);
+        /***/ System.out.println(3); /** **/ System.out.println(4); /**/
+        System.out.println(5); /* a comment
+        on two lines **/
+    }
+}
@@ -0,0 +1,5 @@
+class UnterminatedComment {
+    public static void main(String[] a) {
+        System.out.println(1); /**/ System.out.println(2);
+    }
+}
@@ -0,0 +1,36 @@
+class ShadowedFields {
+	public static void main(String[] a) {
+		System.out.println(new B().run());
+	}
+}
+
+class A {
+	int x;
+
+	public int getX() {
+		return x;
+	}
+
+	public int setX(int v) {
+		x = v;
+		return v;
+	}
+}
+
+class B extends A {
+	int x;
+
+	public int run() {
+		int i;
+		int s;
+		x = 10;
+		i = this.setX(1);
+		s = 0;
+		while (i < 5) {
+			x = x + i;
+			i = this.setX((this.getX()) + 1);
+			s = s + x;
+		}
+		return (s * 100) + (this.getX());
+	}
+}
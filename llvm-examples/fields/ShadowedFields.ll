@@ -0,0 +1,99 @@
+@_cint = constant [4 x i8] c"%d\0a\00"
+@_cOOB = constant [15 x i8] c"Out of bounds\0a\00"
+@_cNSZ = constant [15 x i8] c"Negative size\0a\00"
+@_cNULL = constant [14 x i8] c"Null pointer\0a\00"
+@.B_vtable = global [3 x i8*] [i8* bitcast (i32 (i8*)* @A.getX to i8*), i8* bitcast (i32 (i8*, i32)* @A.setX to i8*), i8* bitcast (i32 (i8*)* @B.run to i8*)]
+
+declare i8* @calloc(i32, i32)
+declare i32 @printf(i8*, ...)
+declare void @exit(i32)
+
+define void @print_int(i32 %i) {
+entry:
+	%_0 = bitcast [4 x i8]* @_cint to i8*
+	%_1 = call i32 (i8*, ...) @printf(i8* %_0, i32 %i)
+	ret void
+}
+
+define void @throw_oob() {
+entry:
+	%_2 = bitcast [15 x i8]* @_cOOB to i8*
+	%_3 = call i32 (i8*, ...) @printf(i8* %_2)
+	call void @exit(i32 1)
+	ret void
+}
+
+define void @throw_nsz() {
+entry:
+	%_5 = bitcast [15 x i8]* @_cNSZ to i8*
+	%_6 = call i32 (i8*, ...) @printf(i8* %_5)
+	call void @exit(i32 1)
+	ret void
+}
+
+define void @throw_null() {
+entry:
+	%_8 = bitcast [14 x i8]* @_cNULL to i8*
+	%_9 = call i32 (i8*, ...) @printf(i8* %_8)
+	call void @exit(i32 1)
+	ret void
+}
+
+define i32 @main() {
+entry:
+	%_0 = call i8* @calloc(i32 1, i32 16)
+	%_1 = bitcast i8* %_0 to i8***
+	%_2 = getelementptr [3 x i8*], [3 x i8*]* @.B_vtable, i32 0, i32 0
+	store i8** %_2, i8*** %_1
+	%_8 = call i32 @B.run(i8* %_0)
+	call void @print_int(i32 %_8)
+	ret i32 0
+}
+
+define i32 @A.getX(i8* %this) {
+entry:
+	%_0 = getelementptr i8, i8* %this, i32 8
+	%_1 = bitcast i8* %_0 to i32*
+	%_2 = load i32, i32* %_1
+	ret i32 %_2
+}
+
+define i32 @A.setX(i8* %this, i32 %.v) {
+entry:
+	%_1 = getelementptr i8, i8* %this, i32 8
+	%_2 = bitcast i8* %_1 to i32*
+	store i32 %.v, i32* %_2
+	ret i32 %.v
+}
+
+define i32 @B.run(i8* %this) {
+entry:
+	%this.x.12.wb0.addr = getelementptr i8, i8* %this, i32 12
+	%this.x.12.wb0.ptr = bitcast i8* %this.x.12.wb0.addr to i32*
+	store i32 10, i32* %this.x.12.wb0.ptr
+	%_7 = call i32 @A.setX(i8* %this, i32 1)
+	%this.x.12.re1.addr = getelementptr i8, i8* %this, i32 12
+	%this.x.12.re1.ptr = bitcast i8* %this.x.12.re1.addr to i32*
+	br label %while_0
+while_0:
+	%s.0 = phi i32 [0, %entry], [%_34, %loop_0]
+	%i.0 = phi i32 [%_7, %entry], [%_29, %loop_0]
+	%_9 = icmp slt i32 %i.0, 5
+	br i1 %_9, label %loop_0, label %end_while_0
+loop_0:
+	%this.x.12.re1 = load i32, i32* %this.x.12.re1.ptr
+	%_14 = add i32 %this.x.12.re1, %i.0
+	store i32 %_14, i32* %this.x.12.re1.ptr
+	%_27 = call i32 @A.getX(i8* %this)
+	%_28 = add i32 %_27, 1
+	%_29 = call i32 @A.setX(i8* %this, i32 %_28)
+	%this.x.12.re3 = load i32, i32* %this.x.12.re1.ptr
+	%_34 = add i32 %s.0, %this.x.12.re3
+	br label %while_0
+end_while_0:
+	%_36 = mul i32 %s.0, 100
+	%_42 = call i32 @A.getX(i8* %this)
+	%_43 = add i32 %_36, %_42
+	ret i32 %_43
+}
+